@@ -0,0 +1,133 @@
+/**
+ * Bounds the number of queries in flight with a limit that adapts to how the endpoint copes (AIMD). Every
+ * fast success raises the limit by roughly one per window of requests, recent latency growing well past
+ * its long term average lowers it slightly and errors halve it. Callers block in acquire() while the limit is reached.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	/**
+	 * Latencies above this multiple of the baseline are taken as a sign the endpoint is queueing our requests.
+	 */
+	private static final double LATENCY_TOLERANCE = 2.0;
+
+	private static final double LATENCY_BACKOFF = 0.9;
+	private static final double ERROR_BACKOFF = 0.5;
+
+	private int minLimit;
+	private int maxLimit;
+
+	/**
+	 * Current limit. Kept fractional so that it can grow by less than one request at a time.
+	 */
+	private double limit;
+
+	private int inFlight = 0;
+
+	/**
+	 * Latency averaged over a long window of requests in milliseconds. It follows lasting changes of the
+	 * endpoint but not a sudden build up of queued requests.
+	 */
+	private double baselineLatency = -1;
+
+	/**
+	 * Latency averaged over the last few requests in milliseconds.
+	 */
+	private double smoothedLatency = -1;
+
+	/**
+	 * When the limit was last lowered. The limit is lowered at most once per smoothed latency, so that a burst
+	 * of failures caused by the same congestion only counts once.
+	 */
+	private long lastDecrease = 0;
+
+	/**
+	 * @param initialLimit Number of concurrent requests to start with.
+	 * @param minLimit Lowest the limit can go.
+	 * @param maxLimit Highest the limit can go.
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit){
+
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+
+	}
+
+	/**
+	 * Wait until a request may be sent.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public synchronized void acquire() throws InterruptedException {
+
+		while(this.inFlight >= (int)this.limit)
+			this.wait();
+
+		this.inFlight++;
+
+	}
+
+	/**
+	 * Report a successful request and release its slot.
+	 * @param latency How long the request took in milliseconds.
+	 */
+	public synchronized void onSuccess(long latency){
+
+		if(this.baselineLatency < 0){
+			this.baselineLatency = latency;
+			this.smoothedLatency = latency;
+		} else {
+			this.baselineLatency += (latency - this.baselineLatency) * 0.01;
+			this.smoothedLatency += (latency - this.smoothedLatency) * 0.1;
+		}
+
+		// Compare averages so that a single slow response does not lower the limit.
+		if(this.smoothedLatency > this.baselineLatency * LATENCY_TOLERANCE)
+			this.decrease(LATENCY_BACKOFF);
+		else
+			this.limit = Math.min(this.maxLimit, this.limit + 1.0 / this.limit);
+
+		this.release();
+
+	}
+
+	/**
+	 * Report a failed request and release its slot.
+	 */
+	public synchronized void onError(){
+
+		this.decrease(ERROR_BACKOFF);
+
+		this.release();
+
+	}
+
+	/**
+	 * Lower the limit multiplicatively, unless it has already been lowered within the last smoothed latency.
+	 */
+	private void decrease(double factor){
+
+		long now = System.currentTimeMillis();
+
+		if(now - this.lastDecrease < this.smoothedLatency)
+			return;
+
+		this.limit = Math.max(this.minLimit, this.limit * factor);
+		this.lastDecrease = now;
+
+	}
+
+	private void release(){
+
+		this.inFlight--;
+		this.notifyAll();
+
+	}
+
+	/**
+	 * @return The current limit.
+	 */
+	public synchronized int getLimit(){
+		return (int)this.limit;
+	}
+
+}
@@ -0,0 +1,935 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An inverse index file in binary form, read through a memory mapping so that opening it costs next to
+ * nothing: the postings of a word token are only read, and decoded, when asked for. The file is laid out as
+ * <ol>
+ * <li>a header: magic number, format version, creation time, counts, the offsets of the other sections, the
+ * generation of the file and the total length of its documents</li>
+ * <li>the term table: for every word token, in UTF-8 byte order, where its postings start, its document
+ * frequency, and the largest number of times it appears in a document and the length of the shortest document it
+ * appears in, which bound the score of any of its documents, and where its positions start, -1 if they are
+ * unknown</li>
+ * <li>the term dictionary: the word tokens, in UTF-8, front coded (see {@link TermDictionary}), which finds a word
+ * token and its position in the term table, and enumerates the word tokens with a prefix or matching a
+ * pattern</li>
+ * <li>the postings of every word token: for every document, the gap from the previous document number and the
+ * number of times the word token appears in it, as variable length integers (7 bits a byte)</li>
+ * <li>the positions of every word token, next to its postings but only read for phrases: for every document,
+ * the number of positions, 0 if unknown, and the gap from the previous position to every one of them, as
+ * variable length integers</li>
+ * <li>the URI table: where the URI of every document number starts</li>
+ * <li>the bytes of the URIs, in UTF-8</li>
+ * <li>the length table: the number of word tokens of every document</li>
+ * <li>the facets, e.g. the countries the documents have been found from: for every facet, its name, whether it
+ * replaces the facet of the same name in older files, when it was last updated, and its documents as a compressed
+ * bitmap, either the gaps between them as variable length integers or the 64 bit words of a plain bitmap,
+ * whichever is smaller</li>
+ * </ol>
+ * Documents are numbered in the UTF-8 byte order of their URIs, so that the number of a URI is found by a binary
+ * search of the mapping too, without reading every URI of the file into memory.
+ * All numbers of fixed length are big endian. Files are written to a temporary file, forced to disk and then renamed
+ * over the file they replace, so that the file by that name is always either the old or the new one, whole.
+ */
+public class BinaryIndexFile {
+
+	/**
+	 * "LDPI", for Linked Data Person Index.
+	 */
+	private static final int MAGIC = 0x4C445049;
+
+	/**
+	 * Version of the format of the files written. Files of any other version are not read: tab separated index
+	 * files are converted by {@link IndexFileConverter}.
+	 */
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 104;
+	private static final int TERM_ENTRY_SIZE = 20;
+
+	/**
+	 * Flags of a facet: it replaces the facet of the same name in older files, and it is stored as a plain bitmap.
+	 */
+	private static final int FACET_REPLACES = 1;
+	private static final int FACET_WORDS = 2;
+
+	/**
+	 * Bytes of a facet entry between its name and its bitmap: flags, update time, documents and bitmap length.
+	 */
+	private static final int FACET_ENTRY_SIZE = 17;
+
+	private MappedByteBuffer buffer;
+
+	private long created;
+	private long generation;
+	private int termCount;
+	private int uriCount;
+
+	private int termTable;
+	private int termBytes;
+	private int postings;
+	private int uriTable;
+	private int uriBytes;
+	private int lengthTable;
+	private int positions;
+
+	private long totalLength;
+
+	/**
+	 * Where the entry of every facet starts, after its name, by name, in the order they are written.
+	 */
+	private Map<String, Integer> facets = new LinkedHashMap<String, Integer>();
+
+	/**
+	 * The word tokens, front coded.
+	 */
+	private TermDictionary dictionary;
+
+	/**
+	 * Open an index file, mapping it into memory.
+	 * @param file The index file.
+	 * @throws IOException If the file cannot be read or is not an index file of a supported version.
+	 */
+	public BinaryIndexFile(File file) throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+		try {
+
+			if(raf.length() < HEADER_SIZE)
+				throw new IOException(file.getName() + " is not an index file");
+
+			if(raf.length() > Integer.MAX_VALUE)
+				throw new IOException(file.getName() + " is too large to be mapped");
+
+			// The mapping stays valid once the file is closed.
+			this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+
+		} finally {
+			raf.close();
+		}
+
+		if(this.buffer.getInt(0) != MAGIC)
+			throw new IOException(file.getName() + " is not an index file");
+
+		int version = this.buffer.getInt(4);
+
+		if(version != VERSION)
+			throw new IOException("Unsupported index file version " + version + " in " + file.getName());
+
+		this.created = this.buffer.getLong(8);
+		this.termCount = this.buffer.getInt(16);
+		this.uriCount = this.buffer.getInt(20);
+		this.termTable = (int)this.buffer.getLong(24);
+		this.termBytes = (int)this.buffer.getLong(32);
+		this.postings = (int)this.buffer.getLong(40);
+		this.uriTable = (int)this.buffer.getLong(48);
+		this.uriBytes = (int)this.buffer.getLong(56);
+		this.generation = this.buffer.getLong(64);
+		this.lengthTable = (int)this.buffer.getLong(72);
+		this.totalLength = this.buffer.getLong(80);
+		this.positions = (int)this.buffer.getLong(88);
+		this.dictionary = new TermDictionary(this.buffer, this.termBytes);
+
+		int offset = (int)this.buffer.getLong(96);
+		int facetCount = this.buffer.getInt(offset);
+
+		offset += 4;
+
+		for(int f = 0; f < facetCount; f++){
+
+			int nameLength = this.buffer.getShort(offset) & 0xFFFF;
+
+			this.facets.put(this.readString(offset + 2, nameLength), offset + 2 + nameLength);
+
+			offset += 2 + nameLength + FACET_ENTRY_SIZE + this.buffer.getInt(offset + 2 + nameLength + FACET_ENTRY_SIZE - 4);
+		}
+
+	}
+
+	/**
+	 * @return When the index file was written, in milliseconds since the epoch.
+	 */
+	public long getCreated(){
+		return this.created;
+	}
+
+	/**
+	 * @return The generation recorded when the file was written, e.g. the newest segment of an index a merged
+	 * file covers.
+	 */
+	public long getGeneration(){
+		return this.generation;
+	}
+
+	/**
+	 * @return Number of word tokens of all the documents.
+	 */
+	public long getTotalLength(){
+		return this.totalLength;
+	}
+
+	/**
+	 * @param document A document number.
+	 * @return Number of word tokens of the document.
+	 */
+	public int getDocumentLength(int document){
+		return this.buffer.getInt(this.lengthTable + 4 * document);
+	}
+
+	/**
+	 * @return Number of word tokens.
+	 */
+	public int getTermCount(){
+		return this.termCount;
+	}
+
+	/**
+	 * @return Number of documents.
+	 */
+	public int getUriCount(){
+		return this.uriCount;
+	}
+
+	/**
+	 * @return The names of the facets of the file.
+	 */
+	public Set<String> getFacetNames(){
+		return Collections.unmodifiableSet(this.facets.keySet());
+	}
+
+	/**
+	 * @param name The name of a facet.
+	 * @return True if the file has the facet and it replaces the facet of the same name in older files.
+	 */
+	public boolean replacesFacet(String name){
+
+		Integer entry = this.facets.get(name);
+
+		return entry != null && (this.buffer.get(entry) & FACET_REPLACES) != 0;
+
+	}
+
+	/**
+	 * @param name The name of a facet.
+	 * @return The facet, its documents numbered as in the file, or null if the file has no such facet.
+	 */
+	public Facet getFacet(String name){
+
+		Integer entry = this.facets.get(name);
+
+		if(entry == null)
+			return null;
+
+		int flags = this.buffer.get(entry);
+		long updated = this.buffer.getLong(entry + 1);
+		int size = this.buffer.getInt(entry + 9);
+		int offset = entry + FACET_ENTRY_SIZE;
+		int end = offset + this.buffer.getInt(entry + 13);
+		BitSet documents;
+
+		if((flags & FACET_WORDS) != 0){
+
+			long[] words = new long[(end - offset) / 8];
+
+			for(int i = 0; i < words.length; i++)
+				words[i] = this.buffer.getLong(offset + 8 * i);
+
+			documents = BitSet.valueOf(words);
+
+		} else {
+
+			documents = new BitSet(this.uriCount);
+
+			for(int i = 0, document = 0; i < size; i++){
+
+				int gap = 0;
+				int shift = 0;
+				byte b;
+
+				do {
+					b = this.buffer.get(offset++);
+					gap |= (b & 0x7F) << shift;
+					shift += 7;
+				} while(b < 0);
+
+				document += gap;
+				documents.set(document);
+			}
+		}
+
+		return new Facet(documents, updated, (flags & FACET_REPLACES) != 0);
+
+	}
+
+	/**
+	 * @param position Position of a word token in the term table, from 0 to getTermCount() - 1.
+	 * @return The word token.
+	 */
+	public String getTerm(int position){
+		return this.dictionary.getTerm(position);
+	}
+
+	/**
+	 * @param position Position of a word token in the term table.
+	 * @return Where the entry of the word token starts.
+	 */
+	private int entry(int position){
+		return this.termTable + position * TERM_ENTRY_SIZE;
+	}
+
+	/**
+	 * @param position Position of a word token in the term table.
+	 * @return Number of documents in which the word token appears.
+	 */
+	public int getDocumentFrequency(int position){
+		return this.buffer.getInt(this.entry(position) + 4);
+	}
+
+	/**
+	 * @param position Position of a word token in the term table.
+	 * @return The largest number of times the word token appears in a document.
+	 */
+	public int getMaxFrequency(int position){
+		return this.buffer.getInt(this.entry(position) + 8);
+	}
+
+	/**
+	 * @param position Position of a word token in the term table.
+	 * @return Number of word tokens of the shortest document in which the word token appears.
+	 */
+	public int getMinLength(int position){
+		return this.buffer.getInt(this.entry(position) + 12);
+	}
+
+	/**
+	 * @param term A word token.
+	 * @return Its position in the term table, or -1 if it is not in the index.
+	 */
+	public int findTerm(String term){
+		return this.dictionary.find(term);
+	}
+
+	/**
+	 * @param pattern A pattern of word tokens, in which * stands for any characters and ? for a single one.
+	 * @return The word tokens matching it, in the order of the term table.
+	 */
+	public List<String> findTerms(String pattern){
+		return this.dictionary.findTerms(pattern);
+	}
+
+	/**
+	 * @param term A word token.
+	 * @param maxEdits Number of bytes inserted, deleted, replaced or swapped.
+	 * @param prefixLength Number of first bytes of the word token the others must start with.
+	 * @return The word tokens within that number of edits of it, in the order of the term table.
+	 */
+	public List<String> findSimilar(String term, int maxEdits, int prefixLength){
+		return this.dictionary.findSimilar(term, maxEdits, prefixLength);
+	}
+
+	/**
+	 * @param position Position of a word token in the term table.
+	 * @return The documents in which the word token appears.
+	 */
+	public Postings getPostings(int position){
+		return this.readPostings(position, false);
+	}
+
+	/**
+	 * @param position Position of a word token in the term table.
+	 * @return The documents in which the word token appears, along with its positions in them if the file has
+	 * them.
+	 */
+	public Postings getPositionalPostings(int position){
+		return this.readPostings(position, true);
+	}
+
+	private Postings readPostings(int position, boolean withPositions){
+
+		int entry = this.entry(position);
+		int offset = this.postings + this.buffer.getInt(entry);
+		int[] documents = new int[this.buffer.getInt(entry + 4)];
+		int[] frequencies = new int[documents.length];
+		int document = 0;
+
+		for(int i = 0; i < documents.length; i++){
+
+			for(int field = 0; field < 2; field++){
+
+				int value = 0;
+				int shift = 0;
+				byte b;
+
+				do {
+					b = this.buffer.get(offset++);
+					value |= (b & 0x7F) << shift;
+					shift += 7;
+				} while(b < 0);
+
+				if(field == 0){
+					document += value;
+					documents[i] = document;
+				} else {
+					frequencies[i] = value;
+				}
+			}
+		}
+
+		int positionsOffset = withPositions ? this.buffer.getInt(entry + 16) : -1;
+
+		if(positionsOffset < 0)
+			return Postings.of(documents, frequencies, documents.length);
+
+		// Only the numbers with no continuation bit are counted to find where the positions of the word token end.
+		int start = this.positions + positionsOffset;
+		int end = start;
+
+		for(int i = 0; i < documents.length; i++){
+
+			int count = 0;
+			int shift = 0;
+			byte b;
+
+			do {
+				b = this.buffer.get(end++);
+				count |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0);
+
+			for(int p = 0; p < count; p++){
+				while(this.buffer.get(end++) < 0);
+			}
+		}
+
+		byte[] documentPositions = new byte[end - start];
+
+		for(int i = 0; i < documentPositions.length; i++)
+			documentPositions[i] = this.buffer.get(start + i);
+
+		return Postings.of(documents, frequencies, documentPositions, documents.length);
+
+	}
+
+	/**
+	 * @param term A word token.
+	 * @return The documents in which the word token appears, or null if it is not in the index.
+	 */
+	public Postings getPostings(String term){
+
+		int position = this.findTerm(term);
+
+		return position < 0 ? null : this.getPostings(position);
+
+	}
+
+	/**
+	 * @param document A document number.
+	 * @return The URI of the document.
+	 */
+	public String getUri(int document){
+
+		int start = this.buffer.getInt(this.uriTable + 4 * document);
+		int end = this.buffer.getInt(this.uriTable + 4 * (document + 1));
+
+		return this.readString(this.uriBytes + start, end - start);
+
+	}
+
+	/**
+	 * @param uri A URI.
+	 * @return Its document number, or -1 if it is not in the index.
+	 */
+	public int findUri(String uri){
+
+		byte[] key = uri.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = this.uriCount - 1;
+
+		while(low <= high){
+
+			int middle = (low + high) >>> 1;
+			int start = this.buffer.getInt(this.uriTable + 4 * middle);
+			int comparison = this.compare(this.uriBytes + start, this.buffer.getInt(this.uriTable + 4 * (middle + 1)) - start, key);
+
+			if(comparison < 0)
+				low = middle + 1;
+			else if(comparison > 0)
+				high = middle - 1;
+			else
+				return middle;
+		}
+
+		return -1;
+
+	}
+
+	private String readString(int offset, int length){
+
+		byte[] bytes = new byte[length];
+
+		for(int i = 0; i < length; i++)
+			bytes[i] = this.buffer.get(offset + i);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+
+	}
+
+	/**
+	 * Compare the bytes of a URI in the file with the given ones, as unsigned bytes.
+	 */
+	private int compare(int offset, int length, byte[] key){
+
+		int common = Math.min(length, key.length);
+
+		for(int i = 0; i < common; i++){
+
+			int difference = (this.buffer.get(offset + i) & 0xFF) - (key[i] & 0xFF);
+
+			if(difference != 0)
+				return difference;
+		}
+
+		return length - key.length;
+
+	}
+
+	/**
+	 * Write an index file of generation 0, of documents of unknown length, e.g. converted from a tab separated
+	 * index file.
+	 * @see #write(File, long, long, Map, List, int[])
+	 */
+	public static int[] write(File file, long created, Map<String, Postings> termPostings, List<String> uris) throws IOException {
+		return write(file, created, 0, termPostings, uris, null);
+	}
+
+	/**
+	 * Write an index file with no facets.
+	 * @see #write(File, long, long, Map, List, int[], Map)
+	 */
+	public static int[] write(File file, long created, long generation, Map<String, Postings> termPostings, List<String> uris,
+			int[] lengths) throws IOException {
+		return write(file, created, generation, termPostings, uris, lengths, Collections.<String, Facet>emptyMap());
+	}
+
+	/**
+	 * Write an index file.
+	 * @param file The file to write. Any file by that name is replaced.
+	 * @param created The creation time to record.
+	 * @param generation The generation to record.
+	 * @param termPostings The postings of every word token.
+	 * @param uris The URI of every document number, in order.
+	 * @param lengths The number of word tokens of every document number, or null if unknown. A document of unknown
+	 * length, or of length 0, is given the number of distinct word tokens it has.
+	 * @param facets Every facet, by name, its documents numbered as in the postings given.
+	 * @return The number in the file of every document, by its number in the postings given. They differ unless
+	 * the URIs are given sorted.
+	 * @throws IOException If writing fails.
+	 */
+	public static int[] write(File file, long created, long generation, Map<String, Postings> termPostings, List<String> uris,
+			int[] lengths, Map<String, Facet> facets) throws IOException {
+
+		/*
+		 * The file is written next to its final name and then moved into place, so that the index file being
+		 * replaced stays intact for whoever still has it mapped, and a crash leaves either one or the other.
+		 */
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream fileOut = new FileOutputStream(temp);
+		OutputStream out = new BufferedOutputStream(fileOut);
+		int[] numbers;
+
+		try {
+
+			numbers = write(out, created, generation, termPostings, uris, lengths, facets);
+
+			// The contents must reach the disk before the rename does.
+			fileOut.getChannel().force(true);
+
+		} finally {
+			out.close();
+		}
+
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		syncDirectory(file.getAbsoluteFile().getParentFile());
+
+		return numbers;
+
+	}
+
+	/**
+	 * Force the entries of a directory to disk, so that a file just renamed into it keeps its new name after a
+	 * crash. Not every platform can open a directory; there the rename is left to the file system.
+	 * @param directory The directory.
+	 */
+	public static void syncDirectory(File directory){
+
+		try {
+
+			FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+
+			try {
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+
+		} catch (IOException e) {
+			// Nothing more can be done about it.
+		}
+
+	}
+
+	/**
+	 * Write an index file to a stream.
+	 * @see #write(File, long, long, Map, List, int[], Map)
+	 */
+	public static int[] write(OutputStream stream, long created, long generation, Map<String, Postings> termPostings, 
+			List<String> uris, int[] lengths, Map<String, Facet> facets) throws IOException {
+
+		// Terms are sorted by their UTF-8 bytes, the order in which they are searched for.
+		List<byte[]> terms = new ArrayList<byte[]>(termPostings.size());
+		List<Postings> termValues = new ArrayList<Postings>(termPostings.size());
+
+		for(String term : termPostings.keySet())
+			terms.add(term.getBytes(StandardCharsets.UTF_8));
+
+		Collections.sort(terms, UTF8_ORDER);
+
+		// And so are the URIs, numbering the documents in the file.
+		byte[][] uriValues = new byte[uris.size()][];
+
+		for(int i = 0; i < uriValues.length; i++)
+			uriValues[i] = uris.get(i).getBytes(StandardCharsets.UTF_8);
+
+		int[] order = sortedOrder(uriValues);
+		int[] numbers = new int[order.length];
+		boolean renumbered = false;
+
+		for(int i = 0; i < order.length; i++){
+			numbers[order[i]] = i;
+			renumbered |= order[i] != i;
+		}
+
+		for(byte[] term : terms)
+			termValues.add(termPostings.get(new String(term, StandardCharsets.UTF_8)));
+
+		// Lengths by number in the file.
+		int[] documentLengths = new int[uris.size()];
+		boolean unknownLengths = lengths == null;
+		long totalLength = 0;
+
+		for(int i = 0; lengths != null && i < documentLengths.length; i++){
+			documentLengths[numbers[i]] = lengths[i];
+			unknownLengths |= lengths[i] <= 0;
+		}
+
+		if(unknownLengths){
+
+			int[] distinctTerms = new int[documentLengths.length];
+
+			for(Postings termDocuments : termValues){
+				for(int document : termDocuments.toArray())
+					distinctTerms[numbers[document]]++;
+			}
+
+			for(int i = 0; i < documentLengths.length; i++){
+				if(documentLengths[i] <= 0)
+					documentLengths[i] = distinctTerms[i];
+			}
+		}
+
+		for(int length : documentLengths)
+			totalLength += length;
+
+		ByteArrayOutputStream termTable = new ByteArrayOutputStream(terms.size() * TERM_ENTRY_SIZE);
+		ByteArrayOutputStream termBytes = new ByteArrayOutputStream();
+		TermDictionary.write(terms, new DataOutputStream(termBytes));
+		ByteArrayOutputStream postings = new ByteArrayOutputStream();
+		ByteArrayOutputStream positions = new ByteArrayOutputStream();
+		DataOutputStream termTableOut = new DataOutputStream(termTable);
+
+		for(int i = 0; i < terms.size(); i++){
+
+			int[] documents = termValues.get(i).toArray();
+			int[] frequencies = termValues.get(i).toFrequencyArray();
+			int[][] documentPositions = termValues.get(i).toPositionArrays();
+
+			if(renumbered){
+
+				// Sorted along with their positions in the arrays, as document number and position in a single long.
+				long[] pairs = new long[documents.length];
+
+				for(int d = 0; d < documents.length; d++)
+					pairs[d] = (long)numbers[documents[d]] << 32 | d;
+
+				Arrays.sort(pairs);
+
+				int[] sortedFrequencies = new int[documents.length];
+				int[][] sortedPositions = documentPositions == null ? null : new int[documents.length][];
+
+				for(int d = 0; d < documents.length; d++){
+
+					documents[d] = (int)(pairs[d] >>> 32);
+					sortedFrequencies[d] = frequencies[(int)pairs[d]];
+
+					if(sortedPositions != null)
+						sortedPositions[d] = documentPositions[(int)pairs[d]];
+				}
+
+				frequencies = sortedFrequencies;
+				documentPositions = sortedPositions;
+			}
+
+			int maxFrequency = 0;
+			int minLength = Integer.MAX_VALUE;
+
+			for(int d = 0; d < documents.length; d++){
+				maxFrequency = Math.max(maxFrequency, frequencies[d]);
+				minLength = Math.min(minLength, documentLengths[documents[d]]);
+			}
+
+			termTableOut.writeInt(postings.size());
+			termTableOut.writeInt(documents.length);
+			termTableOut.writeInt(maxFrequency);
+			termTableOut.writeInt(documents.length > 0 ? minLength : 0);
+			termTableOut.writeInt(documentPositions != null ? positions.size() : -1);
+
+			int previous = 0;
+
+			for(int d = 0; d < documents.length; d++){
+				writeVarInt(postings, documents[d] - previous);
+				writeVarInt(postings, frequencies[d]);
+				previous = documents[d];
+			}
+
+			for(int d = 0; documentPositions != null && d < documents.length; d++){
+
+				int[] occurrences = documentPositions[d];
+
+				writeVarInt(positions, occurrences == null ? 0 : occurrences.length);
+
+				for(int p = 0; occurrences != null && p < occurrences.length; p++)
+					writeVarInt(positions, occurrences[p] - (p > 0 ? occurrences[p - 1] : 0));
+			}
+		}
+
+		ByteArrayOutputStream uriTable = new ByteArrayOutputStream(4 * (uris.size() + 1));
+		ByteArrayOutputStream uriBytes = new ByteArrayOutputStream();
+		DataOutputStream uriTableOut = new DataOutputStream(uriTable);
+
+		for(int document : order){
+			uriTableOut.writeInt(uriBytes.size());
+			uriBytes.write(uriValues[document]);
+		}
+
+		uriTableOut.writeInt(uriBytes.size());
+
+		ByteArrayOutputStream facetBytes = new ByteArrayOutputStream();
+		DataOutputStream facetOut = new DataOutputStream(facetBytes);
+
+		facetOut.writeInt(facets.size());
+
+		for(Map.Entry<String, Facet> facet : facets.entrySet()){
+
+			BitSet given = facet.getValue().documents;
+
+			// Numbered as in the file.
+			BitSet documents = new BitSet(numbers.length);
+
+			for(int d = given.nextSetBit(0); d >= 0; d = given.nextSetBit(d + 1))
+				documents.set(numbers[d]);
+
+			ByteArrayOutputStream gaps = new ByteArrayOutputStream();
+			int previous = 0;
+
+			for(int d = documents.nextSetBit(0); d >= 0; d = documents.nextSetBit(d + 1)){
+				writeVarInt(gaps, d - previous);
+				previous = d;
+			}
+
+			long[] words = documents.toLongArray();
+			boolean plain = 8 * words.length < gaps.size();
+
+			facetOut.writeUTF(facet.getKey());
+			facetOut.writeByte((facet.getValue().replaces ? FACET_REPLACES : 0) | (plain ? FACET_WORDS : 0));
+			facetOut.writeLong(facet.getValue().updated);
+			facetOut.writeInt(documents.cardinality());
+			facetOut.writeInt(plain ? 8 * words.length : gaps.size());
+
+			if(plain){
+				for(long word : words)
+					facetOut.writeLong(word);
+			} else {
+				gaps.writeTo(facetOut);
+			}
+		}
+
+		facetOut.flush();
+
+		long termTableOffset = HEADER_SIZE;
+		long termBytesOffset = termTableOffset + termTable.size();
+		long postingsOffset = termBytesOffset + termBytes.size();
+		long positionsOffset = postingsOffset + postings.size();
+		long uriTableOffset = positionsOffset + positions.size();
+		long uriBytesOffset = uriTableOffset + uriTable.size();
+		long lengthTableOffset = uriBytesOffset + uriBytes.size();
+		long facetsOffset = lengthTableOffset + 4L * documentLengths.length;
+
+		if(facetsOffset + facetBytes.size() > Integer.MAX_VALUE)
+			throw new IOException("Index too large for a single index file");
+
+		DataOutputStream out = new DataOutputStream(stream);
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(created);
+		out.writeInt(terms.size());
+		out.writeInt(uris.size());
+		out.writeLong(termTableOffset);
+		out.writeLong(termBytesOffset);
+		out.writeLong(postingsOffset);
+		out.writeLong(uriTableOffset);
+		out.writeLong(uriBytesOffset);
+		out.writeLong(generation);
+		out.writeLong(lengthTableOffset);
+		out.writeLong(totalLength);
+		out.writeLong(positionsOffset);
+		out.writeLong(facetsOffset);
+
+		termTable.writeTo(out);
+		termBytes.writeTo(out);
+		postings.writeTo(out);
+		positions.writeTo(out);
+		uriTable.writeTo(out);
+		uriBytes.writeTo(out);
+
+		for(int length : documentLengths)
+			out.writeInt(length);
+
+		facetBytes.writeTo(out);
+		out.flush();
+
+		return numbers;
+
+	}
+
+	/**
+	 * Orders byte strings as unsigned bytes, i.e. strings encoded in UTF-8 in the order of their code points.
+	 */
+	private static final Comparator<byte[]> UTF8_ORDER = new Comparator<byte[]>() {
+		public int compare(byte[] a, byte[] b) {
+
+			for(int i = 0; i < Math.min(a.length, b.length); i++){
+				if(a[i] != b[i])
+					return (a[i] & 0xFF) - (b[i] & 0xFF);
+			}
+
+			return a.length - b.length;
+		}
+	};
+
+	/**
+	 * @param uris URIs.
+	 * @return Their positions, in the order documents are numbered in by an index file.
+	 */
+	public static int[] sortedOrder(List<String> uris){
+
+		byte[][] values = new byte[uris.size()][];
+
+		for(int i = 0; i < values.length; i++)
+			values[i] = uris.get(i).getBytes(StandardCharsets.UTF_8);
+
+		return sortedOrder(values);
+
+	}
+
+	/**
+	 * @return The positions of the given byte strings, in their order.
+	 */
+	private static int[] sortedOrder(final byte[][] values){
+
+		Integer[] order = new Integer[values.length];
+
+		for(int i = 0; i < order.length; i++)
+			order[i] = i;
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return UTF8_ORDER.compare(values[a], values[b]);
+			}
+		});
+
+		int[] positions = new int[order.length];
+
+		for(int i = 0; i < order.length; i++)
+			positions[i] = order[i];
+
+		return positions;
+
+	}
+
+	private static void writeVarInt(ByteArrayOutputStream out, int value){
+
+		while((value & ~0x7F) != 0){
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		out.write(value);
+
+	}
+
+	/**
+	 * A facet of the documents of a file, e.g. the country they have been found from.
+	 */
+	public static class Facet {
+
+		/**
+		 * The document numbers in the facet.
+		 */
+		public final BitSet documents;
+
+		/**
+		 * When documents were last added to the facet, in milliseconds since the epoch.
+		 */
+		public final long updated;
+
+		/**
+		 * True if the facet replaces the facet of the same name in older files, rather than adding to it.
+		 */
+		public final boolean replaces;
+
+		public Facet(BitSet documents, long updated, boolean replaces){
+
+			this.documents = documents;
+			this.updated = updated;
+			this.replaces = replaces;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,89 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scores documents for a search query by Okapi BM25: every keyword of the query a document has adds the weight of
+ * the keyword, higher the fewer documents have it, times a factor growing with the number of times the document
+ * has it, up to K1 + 1, and shrinking with the length of the document relative to the average one, by B. The
+ * statistics are those of the whole index a query is searched in, so that the documents of every part of it are
+ * scored alike. The document frequency of a keyword counts the replaced documents still held by segments of the
+ * index, which is close enough until they are merged away.
+ */
+public class Bm25Scorer {
+
+	private static final double K1 = 1.2;
+	private static final double B = 0.75;
+
+	private final int documentCount;
+	private final double averageLength;
+
+	private Map<String, Integer> documentFrequencies = new HashMap<String, Integer>();
+
+	/**
+	 * @param documentCount Number of documents in the index.
+	 * @param totalLength Number of word tokens of all of them.
+	 */
+	public Bm25Scorer(int documentCount, long totalLength){
+
+		this.documentCount = documentCount;
+		this.averageLength = documentCount > 0 && totalLength > 0 ? (double)totalLength / documentCount : 1;
+
+	}
+
+	/**
+	 * @param term A word token of the query.
+	 * @param documentFrequency Number of documents of a part of the index in which it appears, added to the
+	 * number of those of the other parts.
+	 */
+	public void addDocumentFrequency(String term, int documentFrequency){
+
+		Integer previous = this.documentFrequencies.get(term);
+
+		this.documentFrequencies.put(term, (previous == null ? 0 : previous) + documentFrequency);
+
+	}
+
+	/**
+	 * @param term A keyword of the query.
+	 * @return Its inverse document frequency, never negative, so that a keyword found in most documents adds
+	 * little to a score rather than taking from it. A phrase weighs as much as its word tokens together.
+	 */
+	public double getWeight(String term){
+
+		List<String> words = SearchQuery.getWords(term);
+
+		if(words.size() > 1){
+
+			double weight = 0;
+
+			for(String word : words)
+				weight += this.getWeight(word);
+
+			return weight;
+		}
+
+		Integer documentFrequency = this.documentFrequencies.get(term);
+		double frequency = Math.min(documentFrequency == null ? 0 : documentFrequency, this.documentCount);
+
+		return Math.log(1 + (this.documentCount - frequency + 0.5) / (frequency + 0.5));
+
+	}
+
+	/**
+	 * The score grows with the frequency and shrinks with the length, so that the largest frequency of a keyword
+	 * and the length of the shortest document with it give a bound to the score of any of its documents.
+	 * @param weight The weight of a keyword.
+	 * @param frequency Number of times the document has the keyword.
+	 * @param length Number of word tokens of the document, 0 if unknown, scored as the average length.
+	 * @return What the keyword adds to the score of the document.
+	 */
+	public double score(double weight, int frequency, int length){
+
+		double normalisation = length > 0 ? K1 * (1 - B + B * length / this.averageLength) : K1;
+
+		return weight * frequency * (K1 + 1) / (frequency + normalisation);
+
+	}
+
+}
@@ -0,0 +1,397 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.apache.commons.codec.digest.DigestUtils;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
+import com.hp.hpl.jena.query.ResultSetFormatter;
+import com.hp.hpl.jena.sparql.engine.ResultSetStream;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+
+/**
+ * A read-through cache in front of another endpoint. Responses are keyed by the normalised query text and
+ * stored on disk as SPARQL XML results, with the most recently used ones also held in memory. How long a
+ * response stays fresh depends on the type of the query: resource lookups rarely change, while the links
+ * around a resource are refreshed more often. Queries ordered at random are never cached. The responses on disk
+ * are kept within a size limit: once it is passed, the expired ones are deleted, and then the oldest ones.
+ */
+public class CachingSparqlEndpoint implements SparqlEndpoint {
+
+	private static final long DAY_MS = 86400000L;
+
+	private static final String RESPONSE_SUFFIX = ".srx";
+
+	/**
+	 * Matches the queries asking for their results in random order, which must not be answered the same twice.
+	 */
+	private static final Pattern RANDOM_ORDER = Pattern.compile("(?i)\\bRAND\\s*\\(");
+
+	/**
+	 * The endpoint queried on cache misses.
+	 */
+	private SparqlEndpoint endpoint;
+
+	/**
+	 * Directory holding one file per cached response.
+	 */
+	private File cacheDirectory;
+
+	/**
+	 * Maximum number of result rows held in memory.
+	 */
+	private int maxMemoryRows;
+
+	private int memoryRows = 0;
+
+	/**
+	 * Maximum number of bytes of the responses on disk, and the number of bytes they take so far, guarded by
+	 * their own lock so that a sweep of the disk does not hold up the responses in memory.
+	 */
+	private long maxDiskBytes;
+	private long diskBytes = 0;
+	private final Object diskLock = new Object();
+
+	/**
+	 * Most recently used responses, in access order.
+	 */
+	private LinkedHashMap<String, CachedResults> memory = new LinkedHashMap<String, CachedResults>(16, 0.75f, true);
+
+	/**
+	 * Days a response stays fresh, keyed by query type.
+	 */
+	private Map<String, Double> timeToLive = new HashMap<String, Double>();
+
+	private AtomicLong memoryHits = new AtomicLong(0);
+	private AtomicLong diskHits = new AtomicLong(0);
+	private AtomicLong misses = new AtomicLong(0);
+
+	/**
+	 * @param endpoint The endpoint queried on cache misses.
+	 * @param cacheDirectory Directory to store the responses in.
+	 * @param maxMemoryRows Maximum number of result rows held in memory.
+	 * @param maxDiskBytes Maximum number of bytes of the responses stored on disk.
+	 */
+	public CachingSparqlEndpoint(SparqlEndpoint endpoint, String cacheDirectory, int maxMemoryRows, long maxDiskBytes){
+
+		this.endpoint = endpoint;
+		this.cacheDirectory = new File(cacheDirectory);
+		this.maxMemoryRows = maxMemoryRows;
+		this.maxDiskBytes = maxDiskBytes;
+
+		if(!this.cacheDirectory.exists())
+			this.cacheDirectory.mkdirs();
+
+		for(File file : this.listFiles()){
+
+			// Left behind by a write interrupted before its rename.
+			if(file.getName().endsWith(".tmp"))
+				file.delete();
+			else if(file.getName().endsWith(RESPONSE_SUFFIX))
+				this.diskBytes += file.length();
+		}
+
+		this.timeToLive.put("redirect", 30.0);
+		this.timeToLive.put("country", 30.0);
+		this.timeToLive.put("exists", 30.0);
+		this.timeToLive.put("text", 7.0);
+		this.timeToLive.put("people", 1.0);
+		this.timeToLive.put("neighbours", 1.0);
+		this.timeToLive.put("other", 1.0);
+
+	}
+
+	/**
+	 * Set how long responses to a type of query stay fresh.
+	 * @param queryType One of redirect, country, exists, text, people, neighbours or other.
+	 * @param days Number of days, zero to never cache that type of query.
+	 */
+	public void setTimeToLive(String queryType, double days){
+
+		this.timeToLive.put(queryType, days);
+
+	}
+
+	public ResultSet select(String query){
+
+		String normalisedQuery = query.trim().replaceAll("\\s+", " ");
+		long maxAge = (long)(this.timeToLive.get(queryType(normalisedQuery)) * DAY_MS);
+
+		if(maxAge <= 0 || RANDOM_ORDER.matcher(normalisedQuery).find()){
+			this.misses.incrementAndGet();
+			return this.endpoint.select(query);
+		}
+
+		String key = DigestUtils.sha256Hex(normalisedQuery);
+		long now = System.currentTimeMillis();
+
+		CachedResults cached;
+
+		synchronized(this){
+			cached = this.memory.get(key);
+		}
+
+		if(cached != null && now - cached.fetched < maxAge){
+			this.memoryHits.incrementAndGet();
+			return cached.toResultSet();
+		}
+
+		File file = new File(this.cacheDirectory, key + RESPONSE_SUFFIX);
+
+		if(file.exists() && now - file.lastModified() < maxAge){
+
+			cached = this.readFromDisk(file);
+
+			if(cached != null){
+				this.diskHits.incrementAndGet();
+				this.remember(key, cached);
+				return cached.toResultSet();
+			}
+		}
+
+		this.misses.incrementAndGet();
+
+		cached = new CachedResults(this.endpoint.select(query), now);
+
+		this.writeToDisk(file, cached);
+		this.remember(key, cached);
+
+		return cached.toResultSet();
+
+	}
+
+	/**
+	 * Guess the type of a query from the properties it refers to, to decide how long its response stays fresh.
+	 * @param query The normalised query text.
+	 * @return The query type.
+	 */
+	public static String queryType(String query){
+
+		if(query.contains("wikiPageRedirects"))
+			return "redirect";
+		if(query.contains("dbpedia-owl:Place"))
+			return "country";
+		if(query.contains("?isValueOf"))
+			return "exists";
+		if(query.contains("abstract") || query.contains("rdfs:comment") || query.contains("dc:description"))
+			return "text";
+		if(query.contains("foaf:Person"))
+			return "people";
+		if(query.contains("?resourceURI"))
+			return "neighbours";
+
+		return "other";
+
+	}
+
+	/**
+	 * Add a response to the memory tier, evicting the least recently used ones if needed.
+	 */
+	private synchronized void remember(String key, CachedResults cached){
+
+		CachedResults previous = this.memory.put(key, cached);
+
+		if(previous != null)
+			this.memoryRows -= previous.size();
+
+		this.memoryRows += cached.size();
+
+		Iterator<CachedResults> eldest = this.memory.values().iterator();
+
+		while(this.memoryRows > this.maxMemoryRows && eldest.hasNext()){
+			this.memoryRows -= eldest.next().size();
+			eldest.remove();
+		}
+
+	}
+
+	/**
+	 * @return The cached response stored in the given file, or null if it could not be read.
+	 */
+	private CachedResults readFromDisk(File file){
+
+		try {
+
+			InputStream in = new FileInputStream(file);
+
+			try {
+				return new CachedResults(ResultSetFactory.fromXML(in), file.lastModified());
+			} finally {
+				in.close();
+			}
+
+		} catch (Exception e) {
+
+			System.out.println("Ignoring unreadable cache file " + file.getName());
+			return null;
+
+		}
+
+	}
+
+	/**
+	 * Store a response in the given file. The file is replaced in one go so that concurrent readers never
+	 * see it half written.
+	 */
+	private void writeToDisk(File file, CachedResults cached){
+
+		try {
+
+			File temp = File.createTempFile("query", ".tmp", this.cacheDirectory);
+			OutputStream out = new FileOutputStream(temp);
+
+			try {
+				ResultSetFormatter.outputAsXML(out, cached.toResultSet());
+			} finally {
+				out.close();
+			}
+
+			long replaced = file.length();
+
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			boolean full;
+
+			synchronized(this.diskLock){
+				this.diskBytes += file.length() - replaced;
+				full = this.diskBytes > this.maxDiskBytes;
+			}
+
+			if(full)
+				this.sweep();
+
+		} catch (IOException e) {
+			System.out.println("Could not write to the query cache: " + e.getMessage());
+		}
+
+	}
+
+	/**
+	 * Delete the responses on disk that have expired whatever their type, and then the oldest ones, until they
+	 * take no more than three quarters of the space allowed, so that the next sweep is some way off.
+	 */
+	private void sweep(){
+
+		synchronized(this.diskLock){
+
+			if(this.diskBytes > this.maxDiskBytes)
+				this.sweepDisk();
+		}
+
+	}
+
+	private void sweepDisk(){
+
+		long maxAge = (long)(Collections.max(this.timeToLive.values()) * DAY_MS);
+		long now = System.currentTimeMillis();
+		List<File> files = new ArrayList<File>();
+		int deleted = 0;
+
+		this.diskBytes = 0;
+
+		for(File file : this.listFiles()){
+
+			if(!file.getName().endsWith(RESPONSE_SUFFIX))
+				continue;
+
+			long length = file.length();
+
+			if(now - file.lastModified() >= maxAge && file.delete()){
+				deleted++;
+			} else {
+				files.add(file);
+				this.diskBytes += length;
+			}
+		}
+
+		final Map<File, Long> fetched = new HashMap<File, Long>();
+
+		for(File file : files)
+			fetched.put(file, file.lastModified());
+
+		Collections.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				return Long.compare(fetched.get(a), fetched.get(b));
+			}
+		});
+
+		for(Iterator<File> oldest = files.iterator(); this.diskBytes > this.maxDiskBytes / 4 * 3 && oldest.hasNext(); ){
+
+			File file = oldest.next();
+			long length = file.length();
+
+			if(file.delete()){
+				this.diskBytes -= length;
+				deleted++;
+			}
+		}
+
+		System.out.println("Query cache: deleted " + deleted + " responses from disk, " + this.diskBytes / 1048576 
+				+ " MB left.");
+
+	}
+
+	private List<File> listFiles(){
+
+		File[] files = this.cacheDirectory.listFiles();
+
+		return files == null ? new ArrayList<File>() : Arrays.asList(files);
+
+	}
+
+	public String getStatistics(){
+
+		return "Query cache: " + this.memoryHits.get() + " memory hits, " + this.diskHits.get() + " disk hits, "
+				+ this.misses.get() + " misses. " + this.endpoint.getStatistics();
+
+	}
+
+	public String toString(){
+		return this.endpoint + " cached in " + this.cacheDirectory;
+	}
+
+	/**
+	 * A fully read response. Bindings are immutable so a fresh result set over them can be handed to every caller.
+	 */
+	private static class CachedResults {
+
+		private List<String> resultVars;
+		private List<Binding> bindings = new ArrayList<Binding>();
+		private long fetched;
+
+		public CachedResults(ResultSet results, long fetched){
+
+			this.resultVars = results.getResultVars();
+			this.fetched = fetched;
+
+			while(results.hasNext())
+				this.bindings.add(results.nextBinding());
+
+		}
+
+		public ResultSet toResultSet(){
+			return new ResultSetStream(this.resultVars, null, this.bindings.iterator());
+		}
+
+		public int size(){
+			return Math.max(1, this.bindings.size());
+		}
+
+	}
+
+}
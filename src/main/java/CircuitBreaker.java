@@ -0,0 +1,91 @@
+/**
+ * Stops all traffic to an endpoint after too many consecutive failures. Once open, the breaker waits for
+ * a cool-down period and then lets a single probe request through; it closes again if the probe succeeds
+ * and stays open for another period if it fails.
+ */
+public class CircuitBreaker {
+
+	private static final int CLOSED = 0;
+	private static final int OPEN = 1;
+	private static final int HALF_OPEN = 2;
+
+	private int state = CLOSED;
+
+	/**
+	 * Consecutive failures that open the breaker.
+	 */
+	private int failureThreshold;
+
+	/**
+	 * How long the breaker stays open before a probe is allowed, in milliseconds.
+	 */
+	private long coolDown;
+
+	private int consecutiveFailures = 0;
+	private long openedAt = 0;
+	private int trips = 0;
+
+	/**
+	 * @param failureThreshold Consecutive failures that open the breaker.
+	 * @param coolDown How long the breaker stays open before a probe is allowed, in milliseconds.
+	 */
+	public CircuitBreaker(int failureThreshold, long coolDown){
+
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.coolDown = coolDown;
+
+	}
+
+	/**
+	 * Check whether a request may be sent now. When the cool-down is over, the first caller becomes the probe.
+	 * @return 0 if the request may be sent, otherwise how many milliseconds to wait before asking again.
+	 */
+	public synchronized long tryAcquire(){
+
+		if(this.state == CLOSED)
+			return 0;
+
+		long remaining = this.openedAt + this.coolDown - System.currentTimeMillis();
+
+		if(this.state == OPEN && remaining <= 0){
+			this.state = HALF_OPEN;
+			return 0;
+		}
+
+		// Either still cooling down or a probe is already in flight.
+		return Math.max(remaining, 100);
+
+	}
+
+	public synchronized void onSuccess(){
+
+		this.consecutiveFailures = 0;
+		this.state = CLOSED;
+
+	}
+
+	public synchronized void onFailure(){
+
+		this.consecutiveFailures++;
+
+		if(this.state == HALF_OPEN || (this.state == CLOSED && this.consecutiveFailures >= this.failureThreshold)){
+
+			if(this.state == CLOSED){
+				this.trips++;
+				System.out.println("Endpoint failing, pausing queries for " + this.coolDown + "ms.");
+			}
+
+			this.state = OPEN;
+			this.openedAt = System.currentTimeMillis();
+		}
+
+	}
+
+	/**
+	 * @return How many times the breaker has opened.
+	 */
+	public synchronized int getTrips(){
+		return this.trips;
+	}
+
+}
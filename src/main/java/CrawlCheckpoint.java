@@ -0,0 +1,174 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The state of an unfinished crawl, saved at regular intervals so that a crawl cut off by a crash or a restart
+ * carries on where it stopped instead of starting over. It holds the frontier, the visited resources, the
+ * people found and the counters of the crawl. The postings indexed so far are saved next to it as an index
+ * file, named after the index file being built.
+ */
+public class CrawlCheckpoint {
+
+	private static final int VERSION = 1;
+
+	/**
+	 * The resource the crawl started from. A checkpoint is only resumed by a crawl from the same seed.
+	 */
+	public String seedURI;
+
+	public int peopleVisited;
+	public int branchOuts;
+
+	/**
+	 * Resources waiting to be visited.
+	 */
+	public List<String> frontier = new ArrayList<String>();
+
+	/**
+	 * Resources already scheduled for a visit.
+	 */
+	public VisitedSet visitedURIs;
+
+	/**
+	 * People found by the crawl so far.
+	 */
+	public VisitedSet peopleLogged;
+
+	/**
+	 * People found but not indexed yet when the checkpoint was taken. They are fetched again on resuming.
+	 */
+	public List<String> pendingPeople = new ArrayList<String>();
+
+	/**
+	 * @param seedURI The resource the crawl started from.
+	 */
+	public CrawlCheckpoint(String seedURI){
+		this.seedURI = seedURI;
+	}
+
+	/**
+	 * @param indexFile The index file being built by the crawl.
+	 * @return The file holding the checkpoint of the crawl.
+	 */
+	public static File stateFile(String indexFile){
+		return new File(indexFile + ".checkpoint");
+	}
+
+	/**
+	 * @param indexFile The index file being built by the crawl.
+	 * @return The index file holding the postings saved with the checkpoint.
+	 */
+	public static File postingsFile(String indexFile){
+		return new File(indexFile + ".checkpoint.idx");
+	}
+
+	/**
+	 * Remove the checkpoint of a crawl once its index file has been written.
+	 * @param indexFile The index file built by the crawl.
+	 */
+	public static void delete(String indexFile){
+
+		stateFile(indexFile).delete();
+		postingsFile(indexFile).delete();
+
+	}
+
+	/**
+	 * Save the checkpoint. The file is replaced in one go, so a crash while saving leaves the previous
+	 * checkpoint in place.
+	 * @param file The file to save to.
+	 * @throws IOException If writing fails.
+	 */
+	public void save(File file) throws IOException {
+
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile("checkpoint", ".tmp", directory);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+		try {
+
+			out.writeInt(VERSION);
+			out.writeUTF(this.seedURI);
+			out.writeInt(this.peopleVisited);
+			out.writeInt(this.branchOuts);
+
+			writeList(out, this.frontier);
+			writeList(out, this.pendingPeople);
+
+			this.visitedURIs.write(out);
+			this.peopleLogged.write(out);
+
+		} finally {
+			out.close();
+		}
+
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+	}
+
+	/**
+	 * Read a saved checkpoint.
+	 * @param file The file to read from.
+	 * @return The checkpoint.
+	 * @throws IOException If the file cannot be read or was written by an incompatible version.
+	 */
+	public static CrawlCheckpoint load(File file) throws IOException {
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+		try {
+
+			int version = in.readInt();
+
+			if(version != VERSION)
+				throw new IOException("Unsupported checkpoint version " + version);
+
+			CrawlCheckpoint checkpoint = new CrawlCheckpoint(in.readUTF());
+
+			checkpoint.peopleVisited = in.readInt();
+			checkpoint.branchOuts = in.readInt();
+			checkpoint.frontier = readList(in);
+			checkpoint.pendingPeople = readList(in);
+			checkpoint.visitedURIs = VisitedSet.read(in, UriDictionary.getShared());
+			checkpoint.peopleLogged = VisitedSet.read(in, UriDictionary.getShared());
+
+			return checkpoint;
+
+		} finally {
+			in.close();
+		}
+
+	}
+
+	private static void writeList(DataOutputStream out, List<String> list) throws IOException {
+
+		out.writeInt(list.size());
+
+		for(String value : list)
+			out.writeUTF(value);
+
+	}
+
+	private static List<String> readList(DataInputStream in) throws IOException {
+
+		int size = in.readInt();
+		List<String> list = new ArrayList<String>(size);
+
+		for(int i = 0; i < size; i++)
+			list.add(in.readUTF());
+
+		return list;
+
+	}
+
+}
@@ -0,0 +1,191 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * What the crawls building an index file have fetched and explored: when the text of every person in the index
+ * was last fetched along with a hash of it, and which resources have been explored. It is saved next to the
+ * index file and lets a recrawl refetch only the people whose text is getting old, patch the postings of the
+ * ones whose text has changed, and only explore resources that have not been explored before.
+ */
+public class CrawlHistory {
+
+	private static final int VERSION = 1;
+
+	/**
+	 * Fetch time and text hash of every person, keyed by resource URI.
+	 */
+	private Map<String, long[]> people = new HashMap<String, long[]>();
+
+	/**
+	 * Resources explored by the crawls.
+	 */
+	private VisitedSet explored;
+
+	/**
+	 * @param indexFile The index file built by the crawls.
+	 * @return The file holding their history.
+	 */
+	public static File historyFile(String indexFile){
+		return new File(indexFile + ".history");
+	}
+
+	/**
+	 * @param text The text of a person.
+	 * @return A hash of the text, to tell whether it changed since it was last fetched.
+	 */
+	public static long hash(String text){
+		return ByteBuffer.wrap(DigestUtils.md5(text.getBytes(StandardCharsets.UTF_8))).getLong();
+	}
+
+	/**
+	 * Record that the text of a person has just been fetched.
+	 * @param uri The resource URI of the person.
+	 * @param hash The hash of the text.
+	 * @param fetched When the text was fetched.
+	 * @return True if the person was already known with the same text.
+	 */
+	public synchronized boolean record(String uri, long hash, long fetched){
+
+		long[] previous = this.people.put(uri, new long[] {fetched, hash});
+
+		return previous != null && previous[1] == hash;
+
+	}
+
+	/**
+	 * @return True if the history does not know about any person.
+	 */
+	public synchronized boolean isEmpty(){
+		return this.people.isEmpty();
+	}
+
+	/**
+	 * @return The people known, as a set.
+	 */
+	public synchronized VisitedSet getPeople(){
+
+		VisitedSet known = new VisitedSet(UriDictionary.getShared());
+
+		for(String uri : this.people.keySet())
+			known.add(uri);
+
+		return known;
+
+	}
+
+	/**
+	 * @param fetchedBefore A point in time.
+	 * @return The people whose text was last fetched before it.
+	 */
+	public synchronized List<String> getPeopleFetchedBefore(long fetchedBefore){
+
+		List<String> stale = new ArrayList<String>();
+
+		for(Map.Entry<String, long[]> person : this.people.entrySet()){
+			if(person.getValue()[0] < fetchedBefore)
+				stale.add(person.getKey());
+		}
+
+		return stale;
+
+	}
+
+	/**
+	 * @return The resources explored, or null if unknown.
+	 */
+	public synchronized VisitedSet getExplored(){
+		return this.explored;
+	}
+
+	/**
+	 * @param explored The resources explored by the crawls.
+	 */
+	public synchronized void setExplored(VisitedSet explored){
+		this.explored = explored;
+	}
+
+	/**
+	 * Save the history. The file is replaced in one go, so a crash while saving leaves the previous one in place.
+	 * @param file The file to save to.
+	 * @throws IOException If writing fails.
+	 */
+	public synchronized void save(File file) throws IOException {
+
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile("history", ".tmp", directory);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+		try {
+
+			out.writeInt(VERSION);
+			out.writeInt(this.people.size());
+
+			for(Map.Entry<String, long[]> person : this.people.entrySet()){
+				out.writeUTF(person.getKey());
+				out.writeLong(person.getValue()[0]);
+				out.writeLong(person.getValue()[1]);
+			}
+
+			out.writeBoolean(this.explored != null);
+
+			if(this.explored != null)
+				this.explored.write(out);
+
+		} finally {
+			out.close();
+		}
+
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+	}
+
+	/**
+	 * Read a saved history.
+	 * @param file The file to read from.
+	 * @return The history.
+	 * @throws IOException If the file cannot be read or was written by an incompatible version.
+	 */
+	public static CrawlHistory load(File file) throws IOException {
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+		try {
+
+			int version = in.readInt();
+
+			if(version != VERSION)
+				throw new IOException("Unsupported history version " + version);
+
+			CrawlHistory history = new CrawlHistory();
+			int size = in.readInt();
+
+			for(int i = 0; i < size; i++)
+				history.people.put(in.readUTF(), new long[] {in.readLong(), in.readLong()});
+
+			if(in.readBoolean())
+				history.explored = VisitedSet.read(in, UriDictionary.getShared());
+
+			return history;
+
+		} finally {
+			in.close();
+		}
+
+	}
+
+}
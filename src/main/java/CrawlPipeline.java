@@ -0,0 +1,321 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a crawl as four stages joined by bounded queues, each stage with its own number of threads:
+ * <ol>
+ * <li>discovery: the frontier workers find people around the seed resource</li>
+ * <li>text fetch: the text of the people found is fetched in batches</li>
+ * <li>tokenize: the text is cleaned from stop words and split into tokens</li>
+ * <li>index: the tokens are added to the crawler's inverse index by a single thread</li>
+ * </ol>
+ * A full queue blocks the stage feeding it, so a slow stage holds back the ones before it instead of
+ * letting work pile up in memory. Tokenizing never waits on the network and the network stages are never
+ * held up by tokenizing.
+ * If checkpoints are enabled, the state of the crawl and the postings indexed so far are saved at regular
+ * intervals, and a crawl can be carried on from the last checkpoint saved.
+ */
+public class CrawlPipeline {
+
+	/**
+	 * Marks the end of the stream of people. Compared by reference.
+	 */
+	public static final String END_OF_PEOPLE = new String("END_OF_PEOPLE");
+
+	/**
+	 * Marks the end of the stream of documents. Compared by reference.
+	 */
+	private static final PersonDocument END_OF_DOCUMENTS = new PersonDocument("", "");
+
+	private PersonCrawler personCrawler;
+
+	private int discoveryThreads;
+	private int fetchThreads;
+	private int tokenizeThreads;
+	private int batchSize;
+
+	/**
+	 * Capacity of each queue between two stages.
+	 */
+	private int queueCapacity;
+
+	/**
+	 * Index file the crawl is building, which the checkpoint files are named after. Null to disable checkpoints.
+	 */
+	private String indexFile = null;
+
+	/**
+	 * Time between two checkpoints.
+	 */
+	private long checkpointInterval;
+
+	private int peopleVisited = 0;
+	private int branchOuts = 0;
+	private int resourcesLost = 0;
+
+	/**
+	 * @param personCrawler The crawler used to query the endpoint and holding the inverse index.
+	 * @param discoveryThreads Number of frontier workers.
+	 * @param fetchThreads Number of threads fetching text.
+	 * @param tokenizeThreads Number of threads tokenizing text.
+	 * @param batchSize Number of people whose text is fetched with a single query.
+	 * @param queueCapacity Capacity of each queue between two stages.
+	 */
+	public CrawlPipeline(PersonCrawler personCrawler, int discoveryThreads, int fetchThreads, int tokenizeThreads, int batchSize, int queueCapacity){
+
+		this.personCrawler = personCrawler;
+		this.discoveryThreads = discoveryThreads;
+		this.fetchThreads = Math.max(1, fetchThreads);
+		this.tokenizeThreads = Math.max(1, tokenizeThreads);
+		this.batchSize = batchSize;
+		this.queueCapacity = Math.max(1, queueCapacity);
+
+	}
+
+	/**
+	 * Save the state of the crawl at regular intervals.
+	 * @param indexFile The index file the crawl is building, which the checkpoint files are named after.
+	 * @param interval Time between two checkpoints, in milliseconds.
+	 */
+	public void enableCheckpoints(String indexFile, long interval){
+
+		this.indexFile = indexFile;
+		this.checkpointInterval = interval;
+
+	}
+
+	/**
+	 * Crawl starting from the given seed and block until every person found has been indexed.
+	 * @param seedURI The resource URI to start from.
+	 * @param peopleRequired Number of people to find before stopping.
+	 * @param branchLimit Maximum number of resources to branch out to.
+	 * @param alreadyVisitedURIs Set of resources that should not be visited again.
+	 */
+	public void crawl(String seedURI, int peopleRequired, int branchLimit, VisitedSet alreadyVisitedURIs){
+
+		this.crawl(seedURI, peopleRequired, branchLimit, alreadyVisitedURIs, null);
+
+	}
+
+	/**
+	 * Carry on a crawl from a checkpoint and block until every person found has been indexed. The postings saved
+	 * with the checkpoint must already have been loaded into the crawler's inverse index.
+	 * @param checkpoint The state of the crawl to carry on from.
+	 * @param peopleRequired Number of people to find before stopping, including the ones found before the checkpoint.
+	 * @param branchLimit Maximum number of resources to branch out to, including the ones before the checkpoint.
+	 */
+	public void crawl(CrawlCheckpoint checkpoint, int peopleRequired, int branchLimit){
+
+		this.crawl(checkpoint.seedURI, peopleRequired, branchLimit, checkpoint.visitedURIs, checkpoint);
+
+	}
+
+	private void crawl(final String seedURI, int peopleRequired, int branchLimit, VisitedSet alreadyVisitedURIs, CrawlCheckpoint checkpoint){
+
+		final BlockingQueue<String> people = new ArrayBlockingQueue<String>(this.queueCapacity);
+		final BlockingQueue<PersonDocument> texts = new ArrayBlockingQueue<PersonDocument>(this.queueCapacity);
+		final BlockingQueue<PersonDocument> tokenized = new ArrayBlockingQueue<PersonDocument>(this.queueCapacity);
+
+		ExecutorService fetchers = Executors.newFixedThreadPool(this.fetchThreads);
+		ExecutorService tokenizers = Executors.newFixedThreadPool(this.tokenizeThreads);
+		ExecutorService indexer = Executors.newSingleThreadExecutor();
+
+		for(int i = 0; i < this.fetchThreads; i++)
+			fetchers.execute(new PersonTextFetcher(this.personCrawler, this.batchSize, people, texts));
+
+		for(int i = 0; i < this.tokenizeThreads; i++){
+			tokenizers.execute(new Runnable() {
+				public void run() {
+					CrawlPipeline.this.tokenize(texts, tokenized);
+				}
+			});
+		}
+
+		indexer.execute(new Runnable() {
+			public void run() {
+				CrawlPipeline.this.index(tokenized);
+			}
+		});
+
+		ScheduledExecutorService checkpointer = Executors.newSingleThreadScheduledExecutor();
+
+		try {
+
+			final FrontierCrawler frontierCrawler = new FrontierCrawler(this.personCrawler, people, this.discoveryThreads, 
+					peopleRequired, branchLimit, alreadyVisitedURIs);
+
+			if(this.indexFile != null && this.checkpointInterval > 0){
+				checkpointer.scheduleWithFixedDelay(new Runnable() {
+					public void run() {
+						CrawlPipeline.this.checkpoint(seedURI, frontierCrawler);
+					}
+				}, this.checkpointInterval, this.checkpointInterval, TimeUnit.MILLISECONDS);
+			}
+
+			if(checkpoint == null){
+
+				frontierCrawler.crawl(seedURI);
+
+			} else {
+
+				// People found before the checkpoint but never indexed go straight to the text fetching stage.
+				for(String person : checkpoint.pendingPeople)
+					people.put(person);
+
+				frontierCrawler.crawl(checkpoint);
+			}
+
+			this.peopleVisited = frontierCrawler.getPeopleVisited();
+			this.branchOuts = frontierCrawler.getBranchOuts();
+			this.resourcesLost = frontierCrawler.getResourcesLost();
+
+			// Close each stage once the one feeding it has finished, so that every person found gets indexed.
+			for(int i = 0; i < this.fetchThreads; i++)
+				people.put(END_OF_PEOPLE);
+
+			awaitStage(fetchers);
+
+			for(int i = 0; i < this.tokenizeThreads; i++)
+				texts.put(END_OF_DOCUMENTS);
+
+			awaitStage(tokenizers);
+
+			tokenized.put(END_OF_DOCUMENTS);
+
+			awaitStage(indexer);
+
+			// Let a checkpoint being saved finish, without starting new ones.
+			awaitStage(checkpointer);
+
+		} catch (InterruptedException e) {
+
+			checkpointer.shutdownNow();
+			fetchers.shutdownNow();
+			tokenizers.shutdownNow();
+			indexer.shutdownNow();
+			Thread.currentThread().interrupt();
+
+		}
+
+	}
+
+	/**
+	 * Save the state of the crawl along with the postings indexed so far. The discovery stage is paused and the
+	 * index locked meanwhile, so the people found that are missing from the saved postings are exactly the ones
+	 * still making their way through the pipeline. They are recorded to be fetched again on resuming.
+	 */
+	private void checkpoint(String seedURI, FrontierCrawler frontierCrawler){
+
+		CrawlCheckpoint checkpoint = new CrawlCheckpoint(seedURI);
+
+		frontierCrawler.pause(checkpoint);
+
+		try {
+
+			File postings = CrawlCheckpoint.postingsFile(this.indexFile);
+			File temp = new File(postings.getPath() + ".tmp");
+
+			synchronized(this.personCrawler){
+
+				this.personCrawler.writeToIndex(temp.getPath());
+
+				for(String person : checkpoint.peopleLogged.getURIs()){
+					if(!this.personCrawler.isIndexed("<" + person + ">"))
+						checkpoint.pendingPeople.add(person);
+				}
+			}
+
+			// The postings go first: a checkpoint older than its postings only means a few people are fetched again.
+			Files.move(temp.toPath(), postings.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			checkpoint.save(CrawlCheckpoint.stateFile(this.indexFile));
+
+			System.out.println("Checkpoint saved: " + checkpoint.peopleVisited + " people found, " + checkpoint.frontier.size() 
+					+ " resources in the frontier.");
+
+		} catch (IOException e) {
+			System.out.println("Could not save the crawl checkpoint: " + e.getMessage());
+		} finally {
+			frontierCrawler.unpause();
+		}
+
+	}
+
+	/**
+	 * Tokenizing stage. Turn the text of every document into tokens.
+	 */
+	private void tokenize(BlockingQueue<PersonDocument> texts, BlockingQueue<PersonDocument> tokenized){
+
+		try {
+
+			PersonDocument document;
+
+			while((document = texts.take()) != END_OF_DOCUMENTS){
+
+				document.tokens = this.personCrawler.tokenize(document.text);
+				tokenized.put(document);
+
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+	/**
+	 * Indexing stage. Add the tokens of every document to the inverse index.
+	 */
+	private void index(BlockingQueue<PersonDocument> tokenized){
+
+		try {
+
+			PersonDocument document;
+
+			while((document = tokenized.take()) != END_OF_DOCUMENTS)
+				this.personCrawler.indexDocument(document);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+	private static void awaitStage(ExecutorService stage) throws InterruptedException {
+
+		stage.shutdown();
+
+		while(!stage.awaitTermination(1, TimeUnit.SECONDS)){ }
+
+	}
+
+	/**
+	 * @return Number of people found by the crawl.
+	 */
+	public int getPeopleVisited(){
+		return this.peopleVisited;
+	}
+
+	/**
+	 * @return Number of resources branched out to by the crawl.
+	 */
+	public int getBranchOuts(){
+		return this.branchOuts;
+	}
+
+	/**
+	 * @return Number of resources the crawl gave up on as the endpoint kept failing.
+	 */
+	public int getResourcesLost(){
+		return this.resourcesLost;
+	}
+
+}
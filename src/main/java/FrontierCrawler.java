@@ -0,0 +1,388 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Crawls the linked data cloud starting from a seed resource using a shared frontier of resource URIs
+ * and a pool of workers running on a work-stealing executor. Each worker repeatedly takes a resource
+ * from the frontier, hands the people linked to it over to the next stage of the crawling pipeline and pushes
+ * its unvisited neighbours back to the frontier.
+ * The crawl stops once the required number of people has been found or the frontier has been exhausted, which
+ * happens at the latest once the branching limit has been reached. The workers can be paused between two
+ * visits to record the state of the crawl in a checkpoint, and a crawl can carry on from a checkpoint.
+ * A resource the endpoint could not answer for is pushed back to the frontier to be visited again later, a
+ * few times at most, so that a short outage of the endpoint does not cut the crawl off from its neighbours.
+ */
+public class FrontierCrawler {
+
+	/**
+	 * How long an idle worker waits for a new resource before checking again whether the crawl has finished.
+	 */
+	private static final long POLL_INTERVAL_MS = 50;
+
+	/**
+	 * Number of times a resource is visited before giving up on it while the endpoint keeps failing.
+	 */
+	private static final int MAX_VISITS = 3;
+
+	/**
+	 * The crawler object that knows how to query the endpoint.
+	 */
+	private PersonCrawler personCrawler;
+
+	/**
+	 * The people found are handed to the text fetching stage through this queue.
+	 */
+	private BlockingQueue<String> people;
+
+	/**
+	 * Number of workers querying the endpoint at the same time.
+	 */
+	private int workers;
+
+	/**
+	 * Number of people the crawl should find before stopping.
+	 */
+	private int peopleRequired;
+
+	/**
+	 * Maximum number of resources that can be branched out to from the seed resource.
+	 */
+	private int branchLimit;
+
+	/**
+	 * Resources waiting to be visited by the workers.
+	 */
+	private LinkedBlockingDeque<String> frontier = new LinkedBlockingDeque<String>();
+
+	/**
+	 * Resources already scheduled for a visit. Shared with the crawler so that consecutive crawls do not revisit them.
+	 */
+	private VisitedSet alreadyVisitedURIs;
+
+	/**
+	 * People already found by this crawl, so that two workers reaching the same person do not fetch it twice.
+	 */
+	private VisitedSet peopleLogged = new VisitedSet(UriDictionary.getShared());
+
+	private AtomicInteger peopleVisited = new AtomicInteger(0);
+	private AtomicInteger branchOuts = new AtomicInteger(0);
+
+	/**
+	 * Number of failed visits of every resource visited again later, and number of resources given up on.
+	 */
+	private ConcurrentHashMap<String, AtomicInteger> failedVisits = new ConcurrentHashMap<String, AtomicInteger>();
+	private AtomicInteger resourcesLost = new AtomicInteger(0);
+
+	/**
+	 * Number of resources either waiting in the frontier or currently being visited. Once this drops to zero
+	 * no more resources can ever be discovered.
+	 */
+	private AtomicInteger pending = new AtomicInteger(0);
+
+	/**
+	 * Raised as soon as one of the stopping conditions is met.
+	 */
+	private AtomicBoolean stopped = new AtomicBoolean(false);
+
+	/**
+	 * Held for reading by the workers while they take a resource and visit it, and for writing while the
+	 * state of the crawl is recorded, so that no resource is half visited in a checkpoint.
+	 */
+	private ReentrantReadWriteLock visitLock = new ReentrantReadWriteLock();
+
+	/**
+	 * @param personCrawler The crawler used to query the endpoint.
+	 * @param people Queue to which the people found are handed. Blocks the workers while full.
+	 * @param workers Number of concurrent workers.
+	 * @param peopleRequired Number of people to find before stopping.
+	 * @param branchLimit Maximum number of resources to branch out to.
+	 * @param alreadyVisitedURIs Set of resources that should not be visited again.
+	 */
+	public FrontierCrawler(PersonCrawler personCrawler, BlockingQueue<String> people, int workers, int peopleRequired, int branchLimit, VisitedSet alreadyVisitedURIs){
+
+		this.personCrawler = personCrawler;
+		this.people = people;
+		this.workers = Math.max(1, workers);
+		this.peopleRequired = peopleRequired;
+		this.branchLimit = branchLimit;
+		this.alreadyVisitedURIs = alreadyVisitedURIs;
+
+	}
+
+	/**
+	 * Crawl starting from the given seed and block until the crawl has finished.
+	 * @param seedURI The resource URI to start from (most probably a country's URI).
+	 */
+	public void crawl(String seedURI){
+
+		if(this.peopleRequired <= 0)
+			return;
+
+		this.schedule(seedURI);
+		this.run();
+
+	}
+
+	/**
+	 * Carry on a crawl from a checkpoint and block until the crawl has finished. The people that had not been
+	 * indexed yet when the checkpoint was taken are not handed over again: that is up to the caller.
+	 * @param checkpoint The state of the crawl to carry on from.
+	 */
+	public void crawl(CrawlCheckpoint checkpoint){
+
+		this.peopleVisited.set(checkpoint.peopleVisited);
+		this.branchOuts.set(checkpoint.branchOuts);
+		this.peopleLogged = checkpoint.peopleLogged;
+
+		if(this.peopleVisited.get() >= this.peopleRequired)
+			return;
+
+		for(String resource : checkpoint.frontier)
+			this.schedule(resource);
+
+		this.run();
+
+	}
+
+	/**
+	 * Pause the workers between two visits and record the state of the crawl in the given checkpoint. The
+	 * workers stay paused until unpause is called by the same thread, so that anything saved along with the
+	 * checkpoint is consistent with it.
+	 * @param checkpoint The checkpoint to fill in.
+	 */
+	public void pause(CrawlCheckpoint checkpoint){
+
+		this.visitLock.writeLock().lock();
+
+		checkpoint.frontier = new ArrayList<String>(this.frontier);
+		checkpoint.peopleVisited = this.peopleVisited.get();
+		checkpoint.branchOuts = this.branchOuts.get();
+		checkpoint.visitedURIs = this.alreadyVisitedURIs;
+		checkpoint.peopleLogged = this.peopleLogged;
+
+	}
+
+	/**
+	 * Let the workers carry on after a pause.
+	 */
+	public void unpause(){
+
+		this.visitLock.writeLock().unlock();
+
+	}
+
+	/**
+	 * Run the workers until the crawl has finished.
+	 */
+	private void run(){
+
+		ExecutorService pool = Executors.newWorkStealingPool(this.workers);
+
+		for(int i = 0; i < this.workers; i++){
+			pool.execute(new Runnable() {
+				public void run() {
+					FrontierCrawler.this.work();
+				}
+			});
+		}
+
+		pool.shutdown();
+
+		try {
+
+			while(!pool.awaitTermination(1, TimeUnit.SECONDS)){ }
+
+		} catch (InterruptedException e) {
+
+			// Stop the workers and let the caller index whatever has been found so far.
+			this.stopped.set(true);
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+
+		}
+
+	}
+
+	/**
+	 * Worker loop. Keep visiting resources from the frontier until the crawl is stopped or there is nothing
+	 * left to visit and no other worker can discover anything new.
+	 */
+	private void work(){
+
+		try {
+
+			while(!this.stopped.get()){
+
+				this.visitLock.readLock().lock();
+
+				try {
+
+					String resource = this.frontier.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+					if(resource == null){
+
+						if(this.pending.get() == 0)
+							return;
+
+						continue;
+					}
+
+					try {
+						this.visit(resource);
+					} catch (RuntimeException e) {
+						this.retry(resource, e);
+					} finally {
+						this.pending.decrementAndGet();
+					}
+
+				} finally {
+					this.visitLock.readLock().unlock();
+				}
+
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+	/**
+	 * Hand over the people linked to the given resource and push its unvisited neighbours to the frontier.
+	 * @param resource The resource URI to visit.
+	 */
+	private void visit(String resource){
+
+		for(String person : this.personCrawler.findPeople(resource)){
+
+			if(this.stopped.get())
+				return;
+
+			if(!this.peopleLogged.add(person))
+				continue;
+
+			if(!this.reservePerson()){
+				this.stopped.set(true);
+				return;
+			}
+
+			try {
+
+				this.people.put(person);
+
+			} catch (InterruptedException e) {
+				this.stopped.set(true);
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+
+		List<String> neighbours = this.stopped.get() ? new ArrayList<String>() : this.personCrawler.findNeighbours(resource);
+
+		for(String neighbour : neighbours){
+
+			if(this.stopped.get())
+				return;
+
+			if(this.alreadyVisitedURIs.add(neighbour)){
+
+				/*
+				 *  Limit branching out. Resources already in the frontier are still visited so that the people
+				 *  linked to them are not lost.
+				 */
+				if(this.branchOuts.incrementAndGet() > this.branchLimit){
+					this.branchOuts.decrementAndGet();
+					return;
+				}
+
+				System.out.println("Branching out to: " + neighbour);
+				this.schedule(neighbour);
+			}
+		}
+
+	}
+
+	/**
+	 * Push a resource the endpoint could not answer for back to the frontier, unless it has failed too many
+	 * times already. It keeps its mark as visited, so that no other worker schedules it meanwhile.
+	 * @param resource The resource URI that could not be visited.
+	 * @param failure Why the endpoint could not answer.
+	 */
+	private void retry(String resource, RuntimeException failure){
+
+		this.failedVisits.putIfAbsent(resource, new AtomicInteger(0));
+
+		int visits = this.failedVisits.get(resource).incrementAndGet();
+
+		if(visits < MAX_VISITS){
+			System.out.println("Could not visit " + resource + ", visiting it again later: " + failure.getMessage());
+			this.schedule(resource);
+		} else {
+			System.out.println("Could not visit " + resource + " after " + visits + " attempts: " + failure.getMessage());
+			this.failedVisits.remove(resource);
+			this.resourcesLost.incrementAndGet();
+		}
+
+	}
+
+	/**
+	 * Push a resource to the frontier.
+	 * @param resource The resource URI to be visited.
+	 */
+	private void schedule(String resource){
+
+		this.pending.incrementAndGet();
+		this.frontier.offer(resource);
+
+	}
+
+	/**
+	 * Atomically claim one of the remaining person slots.
+	 * @return True if the person can be handed over, false if enough people have already been found.
+	 */
+	private boolean reservePerson(){
+
+		while(true){
+
+			int current = this.peopleVisited.get();
+
+			if(current >= this.peopleRequired)
+				return false;
+
+			if(this.peopleVisited.compareAndSet(current, current + 1))
+				return true;
+		}
+
+	}
+
+	/**
+	 * @return Number of people found by this crawl.
+	 */
+	public int getPeopleVisited(){
+		return this.peopleVisited.get();
+	}
+
+	/**
+	 * @return Number of resources branched out to by this crawl.
+	 */
+	public int getBranchOuts(){
+		return this.branchOuts.get();
+	}
+
+	/**
+	 * @return Number of resources given up on by this crawl as the endpoint kept failing.
+	 */
+	public int getResourcesLost(){
+		return this.resourcesLost.get();
+	}
+
+}
@@ -0,0 +1,409 @@
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts inverse index files from the former tab separated format into binary index files. A tab separated
+ * file starts with the date it was written on (dd/MM/yy HH:mm:ss), followed by one line per word token: the
+ * token and then every resource URI it appears in, in square brackets, separated by tabs.
+ * Run with the tab separated files to convert as arguments, or with no arguments to convert every one in the
+ * working directory that has not been converted yet.
+ */
+public class IndexFileConverter {
+
+	public static final String LEGACY_SUFFIX = "_index.tsv";
+
+	public static void main(String[] args) {
+
+		if(args.length == 0){
+			convertLegacyIndexFiles(new File(System.getProperty("user.dir")));
+			return;
+		}
+
+		for(String path : args){
+
+			try {
+				System.out.println("Converted " + path + " into " + convert(new File(path)).getName());
+			} catch (IOException e) {
+				System.out.println("Could not convert " + path + ": " + e.getMessage());
+			}
+		}
+
+	}
+
+	/**
+	 * Convert every tab separated index file of a directory which has no binary counterpart yet, unless the
+	 * directory has a global index file, into which the binary files have been imported since. The tab
+	 * separated files are left in place.
+	 * @param directory The directory holding the index files.
+	 */
+	public static void convertLegacyIndexFiles(File directory){
+
+		if(new File(directory, PersonCrawler.GLOBAL_INDEX_FILE).exists())
+			return;
+
+		File[] legacyFiles = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String filename) {
+				return filename.endsWith(LEGACY_SUFFIX);
+			}
+		});
+
+		if(legacyFiles == null)
+			return;
+
+		for(File legacyFile : legacyFiles){
+
+			if(binaryFile(legacyFile).exists())
+				continue;
+
+			try {
+
+				convert(legacyFile);
+				System.out.println("Converted " + legacyFile.getName() + " into a binary index file.");
+
+			} catch (IOException e) {
+				System.out.println("Could not convert " + legacyFile.getName() + ": " + e.getMessage());
+			}
+		}
+
+	}
+
+	/**
+	 * @param legacyFile A tab separated index file.
+	 * @return The binary index file it converts to.
+	 */
+	public static File binaryFile(File legacyFile){
+
+		String name = legacyFile.getName();
+
+		if(name.endsWith(LEGACY_SUFFIX))
+			name = name.substring(0, name.length() - LEGACY_SUFFIX.length()) + PersonCrawler.INDEX_FILE_SUFFIX;
+		else
+			name = name + ".idx";
+
+		return new File(legacyFile.getAbsoluteFile().getParentFile(), name);
+
+	}
+
+	/**
+	 * Convert a tab separated index file into a binary index file next to it, parsing it on every processor.
+	 * @see #convert(File, int)
+	 */
+	public static File convert(File legacyFile) throws IOException {
+		return convert(legacyFile, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Convert a tab separated index file into a binary index file next to it. The lines are split into chunks of
+	 * about the same number of bytes, parsed at the same time by the given number of threads, each numbering the
+	 * URIs of its chunk by a dictionary of its own. Once all the URIs are known, they are numbered again in the
+	 * order of the binary index file and the postings of the chunks are built, again at the same time.
+	 * @param legacyFile The tab separated index file.
+	 * @param threads Number of threads parsing the file.
+	 * @return The binary index file written.
+	 * @throws IOException If the file cannot be read or written.
+	 */
+	public static File convert(File legacyFile, int threads) throws IOException {
+
+		byte[] data = Files.readAllBytes(legacyFile.toPath());
+		long created = legacyFile.lastModified();
+
+		int firstLineEnd = lineEnd(data, 0);
+
+		if(data.length > 0){
+			try {
+				created = new SimpleDateFormat("dd/MM/yy HH:mm:ss").parse(decode(data, 0, trimLine(data, 0, firstLineEnd))).getTime();
+			} catch (ParseException e) {
+				System.out.println("No valid date in " + legacyFile.getName() + ", using its modification time.");
+			}
+		}
+
+		// Chunks end right after a line does.
+		threads = Math.max(1, threads);
+		List<Chunk> chunks = new ArrayList<Chunk>(threads);
+		int start = Math.min(firstLineEnd + 1, data.length);
+
+		for(int i = 1; i <= threads && start < data.length; i++){
+
+			int end = i == threads ? data.length : Math.min(lineEnd(data, start + (data.length - start) / (threads - i + 1)) + 1, data.length);
+
+			chunks.add(new Chunk(data, start, end));
+			start = end;
+		}
+
+		ExecutorService parsers = Executors.newFixedThreadPool(threads);
+
+		try {
+
+			invokeAll(parsers, chunks);
+
+			UriDictionary uris = new UriDictionary();
+
+			for(Chunk chunk : chunks){
+
+				chunk.numbers = new int[chunk.uris.size()];
+
+				for(int i = 0; i < chunk.numbers.length; i++)
+					chunk.numbers[i] = uris.intern(chunk.uris.get(i));
+			}
+
+			List<String> uriList = new ArrayList<String>(uris.size());
+
+			for(int i = 0; i < uris.size(); i++)
+				uriList.add(uris.getInBrackets(i));
+
+			// Numbered again in the order of the binary index file, so that it does not have to.
+			int[] order = BinaryIndexFile.sortedOrder(uriList);
+			int[] numbers = new int[order.length];
+			List<String> sortedURIs = new ArrayList<String>(order.length);
+
+			for(int i = 0; i < order.length; i++){
+				numbers[order[i]] = i;
+				sortedURIs.add(uriList.get(order[i]));
+			}
+
+			for(Chunk chunk : chunks){
+				for(int i = 0; i < chunk.numbers.length; i++)
+					chunk.numbers[i] = numbers[chunk.numbers[i]];
+			}
+
+			invokeAll(parsers, chunks);
+
+			Map<String, Postings> termPostings = new HashMap<String, Postings>();
+
+			for(Chunk chunk : chunks){
+				for(int i = 0; i < chunk.terms.size(); i++){
+
+					Postings previous = termPostings.put(chunk.terms.get(i), chunk.postings[i]);
+
+					// A word token found on several lines has the documents of all of them.
+					if(previous != null)
+						termPostings.put(chunk.terms.get(i), previous.union(chunk.postings[i]));
+				}
+			}
+
+			File binaryFile = binaryFile(legacyFile);
+
+			BinaryIndexFile.write(binaryFile, created, termPostings, sortedURIs);
+
+			return binaryFile;
+
+		} finally {
+			parsers.shutdown();
+		}
+
+	}
+
+	/**
+	 * Run the next step of every chunk, waiting for all of them to finish.
+	 */
+	private static void invokeAll(ExecutorService parsers, List<Chunk> chunks) throws IOException {
+
+		try {
+
+			for(Future<Chunk> future : parsers.invokeAll(chunks))
+				future.get();
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while converting an index file");
+		} catch (ExecutionException e) {
+			throw new IOException("Could not parse the index file", e.getCause());
+		}
+
+	}
+
+	/**
+	 * @return Position of the end of the line starting at the given position: its line feed, or the end of the data.
+	 */
+	private static int lineEnd(byte[] data, int position){
+
+		while(position < data.length && data[position] != '\n')
+			position++;
+
+		return position;
+
+	}
+
+	/**
+	 * @return The end of a line without any carriage return it ends with.
+	 */
+	private static int trimLine(byte[] data, int start, int end){
+		return end > start && data[end - 1] == '\r' ? end - 1 : end;
+	}
+
+	private static String decode(byte[] data, int start, int end){
+		return new String(data, start, end - start, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * A chunk of lines of a tab separated index file. It is parsed first, numbering the URIs by a dictionary of its
+	 * own, and once they have been numbered again, the postings of its lines are built.
+	 */
+	private static class Chunk implements Callable<Chunk> {
+
+		final byte[] data;
+		final int start;
+		final int end;
+
+		final UriDictionary uris = new UriDictionary();
+
+		/**
+		 * The word token and the URIs, numbered by the dictionary of the chunk, of every line.
+		 */
+		final List<String> terms = new ArrayList<String>();
+		final List<int[]> documents = new ArrayList<int[]>();
+
+		/**
+		 * Number of every URI of the chunk in the dictionary of the file, or null until they have been numbered.
+		 */
+		int[] numbers = null;
+
+		Postings[] postings;
+
+		Chunk(byte[] data, int start, int end){
+			this.data = data;
+			this.start = start;
+			this.end = end;
+		}
+
+		public Chunk call() {
+
+			if(this.numbers == null)
+				this.parse();
+			else
+				this.build();
+
+			return this;
+
+		}
+
+		private void parse(){
+
+			int[] lineDocuments = new int[16];
+			int position = this.start;
+
+			while(position < this.end){
+
+				int endOfLine = trimLine(this.data, position, Math.min(lineEnd(this.data, position), this.end));
+				int fieldEnd = this.fieldEnd(position, endOfLine);
+				int count = 0;
+
+				this.terms.add(this.term(position, fieldEnd));
+
+				while(fieldEnd < endOfLine){
+
+					position = fieldEnd + 1;
+					fieldEnd = this.fieldEnd(position, endOfLine);
+
+					int uri = this.uri(position, fieldEnd);
+
+					if(uri < 0)
+						continue;
+
+					if(count == lineDocuments.length)
+						lineDocuments = Arrays.copyOf(lineDocuments, count * 2);
+
+					lineDocuments[count++] = uri;
+				}
+
+				this.documents.add(Arrays.copyOf(lineDocuments, count));
+
+				position = lineEnd(this.data, endOfLine) + 1;
+			}
+
+		}
+
+		private void build(){
+
+			this.postings = new Postings[this.documents.size()];
+
+			for(int i = 0; i < this.postings.length; i++){
+
+				int[] lineDocuments = this.documents.get(i);
+
+				for(int d = 0; d < lineDocuments.length; d++)
+					lineDocuments[d] = this.numbers[lineDocuments[d]];
+
+				Arrays.sort(lineDocuments);
+
+				// A URI listed twice on a line is counted once.
+				int length = 0;
+
+				for(int d = 0; d < lineDocuments.length; d++){
+					if(length == 0 || lineDocuments[d] != lineDocuments[length - 1])
+						lineDocuments[length++] = lineDocuments[d];
+				}
+
+				this.postings[i] = Postings.of(lineDocuments, length);
+			}
+
+			this.documents.clear();
+
+		}
+
+		private int fieldEnd(int position, int lineEnd){
+
+			while(position < lineEnd && this.data[position] != '\t')
+				position++;
+
+			return position;
+
+		}
+
+		/**
+		 * @return The word token of a field, in lower case.
+		 */
+		private String term(int start, int end){
+
+			for(int i = start; i < end; i++){
+
+				// Only characters other than lower case ASCII ones may need converting.
+				if(this.data[i] < 0 || (this.data[i] >= 'A' && this.data[i] <= 'Z'))
+					return decode(this.data, start, end).toLowerCase();
+			}
+
+			return decode(this.data, start, end);
+
+		}
+
+		/**
+		 * @return The number of the URI of a field, without the square brackets around it, or -1 if the field is
+		 * empty.
+		 */
+		private int uri(int start, int end){
+
+			if(start < end && this.data[start] == '[')
+				start++;
+
+			if(end > start && this.data[end - 1] == ']')
+				end--;
+
+			for(int i = start; i < end; i++){
+				if(this.data[i] == '[' || this.data[i] == ']')
+					return this.uris.intern(decode(this.data, start, end).replace("[", "").replace("]", ""));
+			}
+
+			// Read straight from the bytes of the file, as nearly every URI is.
+			return start < end ? this.uris.intern(this.data, start, end) : -1;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,65 @@
+import java.util.concurrent.ThreadLocalRandom;
+import com.hp.hpl.jena.query.ResultSet;
+
+/**
+ * Wraps another endpoint and delays every query, so that a local dataset can stand in for a remote endpoint
+ * when measuring how a crawl behaves under realistic network latency.
+ */
+public class LatencyInjectingEndpoint implements SparqlEndpoint {
+
+	/**
+	 * The endpoint that actually answers the queries.
+	 */
+	private SparqlEndpoint endpoint;
+
+	/**
+	 * Fixed delay added to every query in milliseconds.
+	 */
+	private long latency;
+
+	/**
+	 * Upper bound of the random delay added on top of the fixed one in milliseconds.
+	 */
+	private long jitter;
+
+	/**
+	 * @param endpoint The endpoint that answers the queries.
+	 * @param latency Fixed delay added to every query in milliseconds.
+	 * @param jitter Upper bound of the random delay added on top of the fixed one in milliseconds.
+	 */
+	public LatencyInjectingEndpoint(SparqlEndpoint endpoint, long latency, long jitter){
+
+		this.endpoint = endpoint;
+		this.latency = latency;
+		this.jitter = jitter;
+
+	}
+
+	public ResultSet select(String query){
+
+		long delay = this.latency;
+
+		if(this.jitter > 0)
+			delay += ThreadLocalRandom.current().nextLong(this.jitter + 1);
+
+		try {
+
+			Thread.sleep(delay);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		return this.endpoint.select(query);
+
+	}
+
+	public String getStatistics(){
+		return this.endpoint.getStatistics();
+	}
+
+	public String toString(){
+		return this.endpoint + " (+" + this.latency + "ms)";
+	}
+
+}
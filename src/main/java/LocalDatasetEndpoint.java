@@ -0,0 +1,107 @@
+import java.io.File;
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.DatasetFactory;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.ReadWrite;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
+import com.hp.hpl.jena.tdb.TDBFactory;
+import org.apache.jena.riot.RDFDataMgr;
+
+/**
+ * Answers queries from a Jena dataset living in this process, loaded from an N-Triples dump. The dataset is
+ * held in memory unless a TDB directory is given, in which case the dump is only loaded the first time the
+ * directory is used. This allows crawling offline, at machine speed.
+ */
+public class LocalDatasetEndpoint implements SparqlEndpoint {
+
+	/**
+	 * The dataset queries are executed against.
+	 */
+	private Dataset dataset;
+
+	/**
+	 * Are the queries executed within TDB read transactions?
+	 */
+	private boolean transactional;
+
+	private String description;
+
+	/**
+	 * @param dataFile The N-Triples file to load the dataset from.
+	 * @param tdbDirectory Directory of the TDB store to use. If null or empty, the dataset is held in memory.
+	 */
+	public LocalDatasetEndpoint(String dataFile, String tdbDirectory){
+
+		if(tdbDirectory == null || tdbDirectory.equals("")){
+
+			this.dataset = DatasetFactory.createMem();
+			this.transactional = false;
+
+			System.out.println("Loading " + dataFile + " in memory..");
+			RDFDataMgr.read(this.dataset.getDefaultModel(), dataFile);
+
+			this.description = "in-memory dataset " + dataFile;
+
+		} else {
+
+			this.dataset = TDBFactory.createDataset(tdbDirectory);
+			this.transactional = true;
+
+			this.dataset.begin(ReadWrite.WRITE);
+
+			try {
+
+				// Only load the dump into an empty store.
+				if(this.dataset.getDefaultModel().isEmpty() && dataFile != null && new File(dataFile).exists()){
+
+					System.out.println("Loading " + dataFile + " into " + tdbDirectory + "..");
+					RDFDataMgr.read(this.dataset.getDefaultModel(), dataFile);
+
+				}
+
+				this.dataset.commit();
+
+			} finally {
+				this.dataset.end();
+			}
+
+			this.description = "TDB dataset " + tdbDirectory;
+
+		}
+
+		System.out.println("Local dataset ready.");
+
+	}
+
+	public ResultSet select(String query){
+
+		if(this.transactional)
+			this.dataset.begin(ReadWrite.READ);
+
+		QueryExecution qexec = QueryExecutionFactory.create(query, this.dataset);
+
+		try {
+
+			return ResultSetFactory.copyResults(qexec.execSelect());
+
+		} finally {
+
+			qexec.close();
+
+			if(this.transactional)
+				this.dataset.end();
+		}
+
+	}
+
+	public String getStatistics(){
+		return "";
+	}
+
+	public String toString(){
+		return this.description;
+	}
+
+}
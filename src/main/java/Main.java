@@ -1,3 +1,4 @@
+import java.io.File;
 import org.apache.commons.logging.Log;
 import org.apache.log4j.Logger;
 
@@ -10,6 +11,9 @@ public class Main {
 
 	public static void main(String[] args) {
 
+		// Index files written by earlier versions are converted once, and imported into the global index when it is opened.
+		IndexFileConverter.convertLegacyIndexFiles(new File(System.getProperty("user.dir")));
+
 		SearchInterface interactiveUI = new SearchInterface();
 		interactiveUI.setVisible(true);
 		
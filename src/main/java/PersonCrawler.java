@@ -1,51 +1,109 @@
 import static java.util.concurrent.TimeUnit.DAYS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
-import java.io.BufferedReader;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.FilenameFilter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import org.w3c.dom.Document;
-import com.hp.hpl.jena.query.QueryExecution;
-import com.hp.hpl.jena.query.QueryExecutionFactory;
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
 
 public class PersonCrawler {
 
-	private final String sparqlEndpointURL =  "http://dbpedia.org/sparql";
+	/**
+	 * Ending of the name of every inverse index file, after the country it is built for. The history and the
+	 * checkpoints of the crawls of a country are named after it too.
+	 */
+	public static final String INDEX_FILE_SUFFIX = "_index.idx";
+
+	/**
+	 * Name under which the history and the checkpoints of the live crawls from the keywords of a search are kept.
+	 */
+	public static final String GENERIC_INDEX_FILE = "Generic" + INDEX_FILE_SUFFIX;
+
+	/**
+	 * Name of the inverse index file shared by all crawlers, holding every person found once, along with the
+	 * countries the person has been found from.
+	 */
+	public static final String GLOBAL_INDEX_FILE = "Global" + INDEX_FILE_SUFFIX;
+
+	/**
+	 * Set once the index files of single countries left by earlier versions have been imported into the global one.
+	 */
+	private static boolean legacyIndexesImported = false;
+
+	/**
+	 * Ending added to the name the history and the checkpoints of the crawls of a country are kept under while
+	 * it is being reconstructed, until they replace those of the country.
+	 */
+	private static final String RECONSTRUCTION_HISTORY_SUFFIX = ".staging";
+
+	/**
+	 * The SPARQL endpoint all queries are sent to, as selected in the properties XML file. 
+	 */
+	private SparqlEndpoint endpoint = SparqlEndpointFactory.getDefault();
 
 	/**
 	 * Maps a resource URI with a given integer number (index) to minimise retrieval times and 
-	 * insertion for the termIndecesMapping data structure.
+	 * insertion for the termIndecesMapping data structure, and an index back to its resource URI. It is
+	 * shared by all crawlers, so that a person has the same index whichever country it is found from. 
+	 */
+	private UriDictionary uriIndexMapping = UriDictionary.getShared();
+
+	/**
+	 * Stores keywords and the indexes of resource URIs to which it appears, as sorted primitive postings,
+	 * for the documents indexed since the index file was last saved. 
 	 */
-	private HashMap<String, Integer> uriIndexMapping = new HashMap<String, Integer>();
+	private HashMap<String, PostingsBuilder> termIndecesMapping = new HashMap<String, PostingsBuilder>();
 
 	/**
-	 * Stores keywords and the indexes of resource URIs to which it appears.
+	 * The keywords of termIndecesMapping, front coded in order for searches with wildcards, or null until one is
+	 * made after a keyword is added or removed.
 	 */
-	private HashMap<String, HashSet<Integer>> termIndecesMapping = new HashMap<String, HashSet<Integer>>();
+	private TermDictionary unsavedTerms = null;
+
+	/**
+	 * Number of word tokens of every resource URI indexed since the index file was last saved, by index, their
+	 * total, and no more than the shortest of them, to score and rank the search results. The indexes are those
+	 * of the dictionary shared by all crawlers, which numbers every resource seen, so they are kept in a map
+	 * holding the people of this crawler only.
+	 */
+	private Map<Integer, Integer> unsavedDocuments = new HashMap<Integer, Integer>();
+	private long unsavedLength = 0;
+	private int shortestUnsavedLength = Integer.MAX_VALUE;
+
+	/**
+	 * The segments of the global index file, holding the documents saved so far, or null until it is opened.
+	 */
+	private SegmentedIndex savedIndex = null;
+
+	/**
+	 * The country the documents are crawled from and searched in, or null for generic searches, which search
+	 * the documents of all countries.
+	 */
+	private String country = null;
 
 	/**
 	 * Tracks how many people have been currently recorded for a given country. 
@@ -74,9 +132,10 @@ public class PersonCrawler {
 
 	/**
 	 * Prevent recursion to the same resources when searching to branch out from a seed URI 
-	 * by logging visits to them in this HashSet. 
+	 * by logging visits to them in this set. It is shared between the crawling workers and either interns
+	 * the resources in the application's URI dictionary or, for very large crawls, is a Bloom filter. 
 	 */
-	private HashSet<String> alreadyVisitedURIs = new HashSet<String>();
+	private VisitedSet alreadyVisitedURIs = new VisitedSet(UriDictionary.getShared());
 
 	/**
 	 * Any valid words in the search query? 
@@ -92,6 +151,95 @@ public class PersonCrawler {
 	private int recursions = 0;
 	private int RECURSION_LIMIT = 15;
 
+	/**
+	 * Number of workers querying the endpoint concurrently while crawling. 
+	 */
+	private int CRAWLER_THREADS = 16;
+
+	/**
+	 * Number of people whose text is fetched with a single query. 
+	 */
+	private int TEXT_BATCH_SIZE = 20;
+
+	/**
+	 * Number of threads fetching the text of the people found, and tokenizing it. 
+	 */
+	private int FETCH_THREADS = 4;
+	private int TOKENIZE_THREADS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Capacity of each queue between two stages of the crawling pipeline. 
+	 */
+	private int PIPELINE_QUEUE_CAPACITY = 1000;
+
+	/**
+	 * Number of linked resources requested from the endpoint when branching out of a resource, and number of
+	 * those sampled to branch out to. If NEIGHBOUR_SERVER_RANDOM is set, the endpoint is asked to shuffle the
+	 * linked resources before cutting the window, which is fairer to hubs but not reproducible. 
+	 */
+	private int NEIGHBOUR_WINDOW = 1000;
+	private int NEIGHBOUR_SAMPLE_SIZE = 20;
+	private boolean NEIGHBOUR_SERVER_RANDOM = false;
+
+	/**
+	 * Time between two checkpoints of a crawl, in milliseconds. Zero disables checkpoints. 
+	 */
+	private long CHECKPOINT_INTERVAL = MILLISECONDS.convert(60, SECONDS);
+
+	/**
+	 * If set, recrawling an index file refetches only the people whose text was fetched more than PERSON_MAX_AGE
+	 * milliseconds ago and only explores resources no earlier crawl has explored, instead of starting over. 
+	 */
+	private boolean INCREMENTAL_RECRAWL = true;
+	private long PERSON_MAX_AGE = MILLISECONDS.convert(7, DAYS);
+
+	/**
+	 * Number of index file segments of similar size merged together in the background. 
+	 */
+	private int INDEX_MERGE_FACTOR = 4;
+
+	/**
+	 * Megabytes of postings read from the index files kept in memory, shared by all the crawlers. 
+	 */
+	private int POSTINGS_CACHE_MB = 32;
+
+	/**
+	 * Number of best matching people reported for a search, 0 for all of them. 
+	 */
+	private int SEARCH_RESULTS = 20;
+
+	/**
+	 * Largest number of characters inserted, deleted, replaced or swapped to correct a misspelled keyword into a
+	 * word token of the index, 0 for no correction. Shorter keywords take fewer: one for every three characters. 
+	 */
+	private int SPELLING_MAX_EDITS = 2;
+
+	/**
+	 * History of the crawls building the index file currently being crawled for, and the name of that file. 
+	 */
+	private CrawlHistory crawlHistory = null;
+	private String crawlHistoryFile = null;
+
+	/**
+	 * Directory of the person document store shared by all the crawlers, "none" for no store, and the store. 
+	 */
+	private String DOCUMENT_STORE_DIRECTORY = "person_documents";
+	private PersonDocumentStore documentStore = null;
+
+	/**
+	 * Seed of the randomness of the crawler, from the properties XML file (random_seed), or null for none. Every
+	 * thread gets its own source of randomness, seeded from it and the number of threads seeded before, so that
+	 * workers do not contend on a shared one and crawls with a single thread are reproducible. 
+	 */
+	private Long RANDOM_SEED = null;
+	private final AtomicLong randomStreams = new AtomicLong();
+	private final ThreadLocal<Random> randomGenerator = new ThreadLocal<Random>() {
+		protected Random initialValue() {
+			Long seed = PersonCrawler.this.RANDOM_SEED;
+			return seed == null ? new Random() : new Random(seed + 0x9E3779B97F4A7C15L * randomStreams.getAndIncrement());
+		}
+	};
+
 	/**
 	 * Single constructor for the current crawler object that will define the depth and filtering of the search.
 	 * @param requiredPeople The number of people the search should try to find accumulatively.
@@ -111,6 +259,8 @@ public class PersonCrawler {
 		if(properties.exists()){ XMLDataExctraction(properties.getPath()); }
 		else{ this.buildDefaultXMLFile(properties); }
 
+		this.documentStore = PersonDocumentStore.getStore(this.DOCUMENT_STORE_DIRECTORY);
+
 	}
 
 	/**
@@ -125,6 +275,22 @@ public class PersonCrawler {
 			writer.print("<LinkedDataPersonCrawler>\n" + 
 					"<recursion_limit>" + this.RECURSION_LIMIT + "</recursion_limit>\n" + 
 					"<max_duration>" + this.MAX_DURATION + "</max_duration>\n" + 
+					"<crawler_threads>" + this.CRAWLER_THREADS + "</crawler_threads>\n" + 
+					"<text_batch_size>" + this.TEXT_BATCH_SIZE + "</text_batch_size>\n" + 
+					"<fetch_threads>" + this.FETCH_THREADS + "</fetch_threads>\n" + 
+					"<pipeline_queue_capacity>" + this.PIPELINE_QUEUE_CAPACITY + "</pipeline_queue_capacity>\n" + 
+					"<neighbour_window>" + this.NEIGHBOUR_WINDOW + "</neighbour_window>\n" + 
+					"<neighbour_sample_size>" + this.NEIGHBOUR_SAMPLE_SIZE + "</neighbour_sample_size>\n" + 
+					"<checkpoint_interval>" + SECONDS.convert(this.CHECKPOINT_INTERVAL, MILLISECONDS) + "</checkpoint_interval>\n" + 
+					"<incremental_recrawl>" + this.INCREMENTAL_RECRAWL + "</incremental_recrawl>\n" + 
+					"<person_max_age>" + DAYS.convert(this.PERSON_MAX_AGE, MILLISECONDS) + "</person_max_age>\n" + 
+					"<document_store_directory>" + this.DOCUMENT_STORE_DIRECTORY + "</document_store_directory>\n" + 
+					"<index_merge_factor>" + this.INDEX_MERGE_FACTOR + "</index_merge_factor>\n" + 
+					"<postings_cache_mb>" + this.POSTINGS_CACHE_MB + "</postings_cache_mb>\n" + 
+					"<search_results>" + this.SEARCH_RESULTS + "</search_results>\n" + 
+					"<spelling_max_edits>" + this.SPELLING_MAX_EDITS + "</spelling_max_edits>\n" + 
+					"<endpoint_type>remote</endpoint_type>\n" + 
+					"<endpoint_url>" + SparqlEndpointFactory.DEFAULT_ENDPOINT_URL + "</endpoint_url>\n" + 
 					"</LinkedDataPersonCrawler>");
 
 			writer.close();
@@ -166,6 +332,84 @@ public class PersonCrawler {
 				// Convert days to milliseconds.
 				this.PERSON_UPPER_LIMIT = Integer.parseInt(listOfElements.item(0).getTextContent());
 
+			listOfElements = doc.getElementsByTagName("crawler_threads");
+			if(listOfElements.getLength() > 0)
+				this.CRAWLER_THREADS = Integer.parseInt(listOfElements.item(0).getTextContent());
+
+			listOfElements = doc.getElementsByTagName("text_batch_size");
+			if(listOfElements.getLength() > 0)
+				this.TEXT_BATCH_SIZE = Integer.parseInt(listOfElements.item(0).getTextContent());
+
+			listOfElements = doc.getElementsByTagName("fetch_threads");
+			if(listOfElements.getLength() > 0)
+				this.FETCH_THREADS = Integer.parseInt(listOfElements.item(0).getTextContent());
+
+			listOfElements = doc.getElementsByTagName("tokenize_threads");
+			if(listOfElements.getLength() > 0)
+				this.TOKENIZE_THREADS = Integer.parseInt(listOfElements.item(0).getTextContent());
+
+			listOfElements = doc.getElementsByTagName("pipeline_queue_capacity");
+			if(listOfElements.getLength() > 0)
+				this.PIPELINE_QUEUE_CAPACITY = Integer.parseInt(listOfElements.item(0).getTextContent());
+
+			listOfElements = doc.getElementsByTagName("neighbour_window");
+			if(listOfElements.getLength() > 0)
+				this.NEIGHBOUR_WINDOW = Integer.parseInt(listOfElements.item(0).getTextContent());
+
+			listOfElements = doc.getElementsByTagName("neighbour_sample_size");
+			if(listOfElements.getLength() > 0)
+				this.NEIGHBOUR_SAMPLE_SIZE = Integer.parseInt(listOfElements.item(0).getTextContent());
+
+			listOfElements = doc.getElementsByTagName("neighbour_server_random");
+			if(listOfElements.getLength() > 0)
+				this.NEIGHBOUR_SERVER_RANDOM = Boolean.parseBoolean(listOfElements.item(0).getTextContent().trim());
+
+			listOfElements = doc.getElementsByTagName("visited_set_bloom_capacity");
+			if(listOfElements.getLength() > 0)
+				this.alreadyVisitedURIs = new VisitedSet(Long.parseLong(listOfElements.item(0).getTextContent().trim()), 0.01);
+
+			listOfElements = doc.getElementsByTagName("checkpoint_interval");
+			if(listOfElements.getLength() > 0)
+				// Convert seconds to milliseconds.
+				this.CHECKPOINT_INTERVAL = MILLISECONDS.convert(Long.parseLong(listOfElements.item(0).getTextContent().trim()), SECONDS);
+
+			listOfElements = doc.getElementsByTagName("incremental_recrawl");
+			if(listOfElements.getLength() > 0)
+				this.INCREMENTAL_RECRAWL = Boolean.parseBoolean(listOfElements.item(0).getTextContent().trim());
+
+			listOfElements = doc.getElementsByTagName("person_max_age");
+			if(listOfElements.getLength() > 0)
+				// Convert days to milliseconds.
+				this.PERSON_MAX_AGE = MILLISECONDS.convert(Long.parseLong(listOfElements.item(0).getTextContent().trim()), DAYS);
+
+			listOfElements = doc.getElementsByTagName("document_store_directory");
+			if(listOfElements.getLength() > 0)
+				this.DOCUMENT_STORE_DIRECTORY = listOfElements.item(0).getTextContent().trim();
+
+			listOfElements = doc.getElementsByTagName("index_merge_factor");
+			if(listOfElements.getLength() > 0)
+				this.INDEX_MERGE_FACTOR = Integer.parseInt(listOfElements.item(0).getTextContent().trim());
+
+			listOfElements = doc.getElementsByTagName("postings_cache_mb");
+			if(listOfElements.getLength() > 0){
+				this.POSTINGS_CACHE_MB = Integer.parseInt(listOfElements.item(0).getTextContent().trim());
+				PostingsCache.getShared().setCapacity((long)this.POSTINGS_CACHE_MB << 20);
+			}
+
+			listOfElements = doc.getElementsByTagName("search_results");
+			if(listOfElements.getLength() > 0)
+				this.SEARCH_RESULTS = Integer.parseInt(listOfElements.item(0).getTextContent().trim());
+
+			listOfElements = doc.getElementsByTagName("spelling_max_edits");
+			if(listOfElements.getLength() > 0)
+				this.SPELLING_MAX_EDITS = Integer.parseInt(listOfElements.item(0).getTextContent().trim());
+
+			listOfElements = doc.getElementsByTagName("random_seed");
+			if(listOfElements.getLength() > 0)
+				this.RANDOM_SEED = Long.parseLong(listOfElements.item(0).getTextContent().trim());
+
+			this.endpoint = SparqlEndpointFactory.fromProperties(doc);
+
 		} catch (Exception ex) {
 			ex.printStackTrace();
 		}
@@ -175,96 +419,91 @@ public class PersonCrawler {
 	 * Execute the given query and return the results.
 	 * @param query The SPARQL query to be executed.
 	 * @return Results set.
+	 * @throws RuntimeException If the endpoint could not answer the query, retries included.
+	 */
+	private ResultSet select(String query){
+		return this.endpoint.select(query);
+	}
+
+	/**
+	 * Execute the given query and return the results, or null if the endpoint could not answer it.
+	 * @param query The SPARQL query to be executed.
+	 * @return Results set.
 	 */
 	private ResultSet queryResults(String query){
 
 		try{
 
-			QueryExecution qexec = QueryExecutionFactory.sparqlService(sparqlEndpointURL, query);
-			ResultSet resultSet = qexec.execSelect();
+			return this.select(query);
 
-			return resultSet;
 		} catch (Exception ex) {
+
+			System.out.println("Query failed: " + ex.getMessage());
 			return null;
+
 		} 
 	}
 
 	/**
 	 * Used for generic searches (no country filter)
-	 * @param keyWords The number of keywords to be matched to the universal, generic index file of this methodology.
+	 * @param keyWords The number of keywords to be matched to the global index, whatever the country of the people.
 	 * @return The resource URIs to which the keyword has been found.
 	 */
 	public String[] crawlIntoLinkedDataCloud(String[] keyWords, boolean firstRun, boolean precomputeSuccess){
 
-		try {
+		this.openIndex();
 
-			int previousEntries = this.uriIndexMapping.size();
+		int previousEntries = this.getIndexedDocumentCount();
 
-			if(!this.fromCountry)
-				this.peopleRequired = peopleRequired/keyWords.length;
+		if(!this.fromCountry)
+			this.peopleRequired = peopleRequired/keyWords.length;
 
-			File f = new File("Generic_index.tsv");
-
-			if(!precomputeSuccess){
-
-				if(!f.exists()){ f.createNewFile(); }
-				else if(firstRun){ this.retrieveFromIndex(f); }
-			}
+		this.findSeedURIs(keyWords);
 
-			String[] refinedKeyWords = this.correctKeywordsAmbiguity(keyWords);
-
-			if(validWords.size() == 0){
-
-				return null;
-
-			} else {
-
-				System.out.println("Appending to generic index file.");
+		if(validWords.size() == 0){
 
-				for(String uri : validWords) {
+			return null;
 
-					long startTime = System.nanoTime();
+		} else {
 
-					resourceCrawl(uri);
+			System.out.println("Appending to the global index.");
 
-					Double duration = (Double)((System.nanoTime() - startTime)/1000000000.0);
+			for(String uri : validWords) {
 
-					try {
+				long startTime = System.nanoTime();
 
-						this.appendToResultsFile(duration, recursions, peopleVisited, uri.substring(uri.lastIndexOf("/") + 1, 
-								uri.length()), this.uriIndexMapping.size() - previousEntries, peopleRequired);
+				resourceCrawl(uri, GENERIC_INDEX_FILE);
 
-						previousEntries = this.uriIndexMapping.size();
+				Double duration = (Double)((System.nanoTime() - startTime)/1000000000.0);
 
-					} catch (IOException e) {
+				try {
 
-						System.out.println("An error occurred while appending to the file.");
+					this.appendToResultsFile(duration, recursions, peopleVisited, uri.substring(uri.lastIndexOf("/") + 1, 
+							uri.length()), this.getIndexedDocumentCount() - previousEntries, peopleRequired);
 
-					}
+					previousEntries = this.getIndexedDocumentCount();
 
-					// Reset global variables for next iteration.
-					recursions = 0;
-					this.peopleVisited = 0;
+				} catch (IOException e) {
 
-					this.writeToIndex(f.getPath());
+					System.out.println("An error occurred while appending to the file.");
 
 				}
 
-				System.out.println("Update complete.");
-				// Reset valid words container
-				this.validWords = new ArrayList<String>();
+				// Reset global variables for next iteration.
+				recursions = 0;
+				this.peopleVisited = 0;
 
-				return this.findMatchingURIs(refinedKeyWords);
-			}
+				this.saveIndex(GENERIC_INDEX_FILE);
 
-		} catch (IOException e) {
+			}
 
-			e.printStackTrace();
+			System.out.println("Update complete.");
+			// Reset valid words container
+			this.validWords = new ArrayList<String>();
 
+			return this.findMatchingURIs(this.correctKeywordsAmbiguity(keyWords));
 		}
 
-		return null;
-
 	}
 
 	/**
@@ -275,30 +514,18 @@ public class PersonCrawler {
 	 */
 	public String[] crawlIntoCountry(String country, String[] keyWords){
 		long startTime = System.nanoTime();
-		int previousEntries = this.uriIndexMapping.size();
 
-		String lastUpdate = "";
-		File f = new File(country + "_index.tsv");
+		this.country = country;
+		this.openIndex();
 
-		if(f.exists()){
-			System.out.println("Index file for " + country + " exists.");
+		int previousEntries = this.getIndexedDocumentCount();
+		String indexFile = country + INDEX_FILE_SUFFIX;
 
-			try {
+		if(this.savedIndex.hasFacet(country)){
+			System.out.println("Index for " + country + " exists.");
 
-				BufferedReader br = new BufferedReader(new InputStreamReader(
-						new FileInputStream(f), "UTF8"));
-
-				// Read in the first line that indicated when the index file has been last updated.
-				lastUpdate = br.readLine();
-
-				br.close();
-			} catch (UnsupportedEncodingException e) {
-				e.printStackTrace();
-			} catch (FileNotFoundException e) {
-				e.printStackTrace();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+			// Every segment of the index records when people were last added to the country in it.
+			long lastUpdate = this.savedIndex.getFacetLastUpdate(country);
 
 			if(this.recrawlingNeeded(lastUpdate)){
 				System.out.println("Recrawling necessary. Updating..");
@@ -317,13 +544,13 @@ public class PersonCrawler {
 				} 
 
 				System.out.println("Country URI exists. Resuming update..");
-				resourceCrawl(countryURI);
+				resourceCrawl(countryURI, indexFile);
 
 				Double duration = (Double)((System.nanoTime() - startTime)/1000000000.0);
 
 				try {
-					this.appendToResultsFile(duration, recursions, peopleVisited, country, this.uriIndexMapping.size() - previousEntries, peopleRequired);
-					previousEntries = this.uriIndexMapping.size();
+					this.appendToResultsFile(duration, recursions, peopleVisited, country, this.getIndexedDocumentCount() - previousEntries, peopleRequired);
+					previousEntries = this.getIndexedDocumentCount();
 				} catch (IOException e) {
 					System.out.println("An error occurred while appending to the file.");
 				}
@@ -332,23 +559,14 @@ public class PersonCrawler {
 				recursions = 0;
 				this.peopleVisited = 0;
 
-				this.writeToIndex(country + "_index.tsv");
+				this.saveIndex(indexFile);
 
 				System.out.println("Update complete.");
 
 			} 
 
-			/*
-			 *  If the object exists because another query for the same country was initiated, prevent it from
-			 *  retrieving from index as the required data should already have been assigned to the appropriate
-			 *  data structures.
-			 */
-			else if (this.uriIndexMapping.size() == 0) {
-				this.retrieveFromIndex(f);
-			}
-
-		} else if(!f.exists()) {
-			System.out.println("Creating index file for " + country + "..");
+		} else {
+			System.out.println("Creating index for " + country + "..");
 
 			String countryURI = checkIfCountryURIExists(country);
 
@@ -364,14 +582,14 @@ public class PersonCrawler {
 
 			}
 
-			resourceCrawl(countryURI);
+			resourceCrawl(countryURI, indexFile);
 
 			// Reset global variables.
 			Double duration = (Double)((System.nanoTime() - startTime)/1000000000.0);
 
 			try {
-				this.appendToResultsFile(duration, recursions, peopleVisited, country, this.uriIndexMapping.size() - previousEntries, this.peopleRequired);
-				previousEntries = this.uriIndexMapping.size();
+				this.appendToResultsFile(duration, recursions, peopleVisited, country, this.getIndexedDocumentCount() - previousEntries, this.peopleRequired);
+				previousEntries = this.getIndexedDocumentCount();
 			} catch (IOException e) {
 				System.out.println("An error occurred while appending to the file.");
 			}
@@ -379,8 +597,8 @@ public class PersonCrawler {
 			recursions = 0;
 			this.peopleVisited = 0;
 
-			this.writeToIndex(country + "_index.tsv");
-			System.out.println("File successfully created.");
+			this.saveIndex(indexFile);
+			System.out.println("Index successfully created.");
 
 		}
 
@@ -396,13 +614,130 @@ public class PersonCrawler {
 
 
 	/**
-	 * This method is an attempt to match a keyword to a resource URI in the LOD Cloud. This method is a simple attempt
-	 * to correct misspelled keywords using the redirections that DBpedia offers. If this does not succeed for some element,
-	 * the equivalent one in the search query is used instead.
+	 * Construct the index of a country again from scratch. The people of the country are crawled again into
+	 * memory, and only replace the people of the country in the global index once complete, in a single segment
+	 * written over them: until then every other search finds the people found before, the ones crawled again
+	 * being only hidden from the searches of this crawler, and a crash leaves them untouched. The people no longer found stay in the global index for
+	 * generic searches and the other countries they have been found from. An interrupted reconstruction carries
+	 * on from its checkpoint when started again.
+	 * @param country The name of the country.
+	 * @return True if the people of the country have been replaced.
+	 */
+	public boolean reconstructCountryIndex(String country){
+		long startTime = System.nanoTime();
+
+		this.country = country;
+		this.openIndex();
+
+		// The history and the checkpoints of the reconstruction are kept apart from those of the country.
+		String indexFile = country + INDEX_FILE_SUFFIX;
+		String historyName = indexFile + RECONSTRUCTION_HISTORY_SUFFIX;
+
+		// Whatever is left of an earlier reconstruction is only kept if it can be resumed.
+		if(!CrawlCheckpoint.stateFile(historyName).exists())
+			CrawlHistory.historyFile(historyName).delete();
+
+		String countryURI = checkIfCountryURIExists(country);
+
+		if(countryURI.equals("")){
+
+			countryURI = this.getRedirectedURI(country);
+
+			if(countryURI.equals("")){
+				System.out.println("Country URI does not exist. Exiting..");
+
+				return false;
+			}
+		}
+
+		System.out.println("Reconstructing the index for " + country + "..");
+		resourceCrawl(countryURI, historyName);
+
+		Double duration = (Double)((System.nanoTime() - startTime)/1000000000.0);
+
+		try {
+			this.appendToResultsFile(duration, recursions, peopleVisited, country, this.unsavedDocuments.size(), this.peopleRequired);
+		} catch (IOException e) {
+			System.out.println("An error occurred while appending to the file.");
+		}
+
+		recursions = 0;
+		this.peopleVisited = 0;
+
+		if(this.unsavedDocuments.isEmpty()){
+			System.out.println("No people found. Keeping the current index for " + country + ".");
+			CrawlCheckpoint.delete(historyName);
+			return false;
+		}
+
+		if(!this.saveIndex(historyName, true))
+			return false;
+
+		try {
+
+			// The history of the crawls goes with the people it describes.
+			File reconstructionHistory = CrawlHistory.historyFile(historyName);
+
+			if(reconstructionHistory.exists())
+				Files.move(reconstructionHistory.toPath(), CrawlHistory.historyFile(indexFile).toPath(), 
+						StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			else
+				CrawlHistory.historyFile(indexFile).delete();
+
+			CrawlCheckpoint.delete(indexFile);
+
+		} catch (IOException e) {
+
+			System.out.println("Could not replace the crawl history for " + country + ": " + e.getMessage());
+
+		} finally {
+
+			// Crawl into the country from now on, rather than into the reconstruction.
+			this.crawlHistory = null;
+			this.crawlHistoryFile = null;
+		}
+
+		System.out.println("Index for " + country + " replaced.");
+
+		return true;
+
+	}
+
+	/**
+	 * This method is an attempt to match every keyword to a resource URI in the LOD Cloud, to start crawling from.
+	 * It uses the redirections that DBpedia offers, which also correct some misspelled keywords. Keywords for
+	 * which no resource is found are left out.
+	 * @param keyWords The keywords in the search query
+	 */
+	private void findSeedURIs(String[] keyWords){
+
+		for(int i=0; i<keyWords.length; i++){
+
+			String keyWord = keyWords[i].trim();
+
+			// Operators of the search query, and keywords with wildcards, name no resource.
+			if(keyWord.isEmpty() || SearchQuery.isOperator(keyWord) || SearchQuery.isWildcard(keyWord))
+				continue;
+
+			String resourceURI = this.checkIfURIExists(keyWord);
+
+			if(resourceURI != null)
+				this.validWords.add(resourceURI);
+
+		}
+
+	}
+
+	/**
+	 * This method corrects misspelled keywords by the word tokens of the index itself, without querying the LOD
+	 * Cloud. A keyword that is not indexed is replaced by the closest indexed word token, by the number of
+	 * characters inserted, deleted, replaced or swapped to turn one into the other, and of the equally close ones by
+	 * the one found in the most documents. If none is close enough, the keyword is used as it is. The words of a
+	 * phrase are corrected one by one.
 	 * @param keyWords The keywords in the search query
 	 * @return The results of the attempt to replace keywords with their valid counterparts.
 	 */
-	public String[] correctKeywordsAmbiguity(String[] keyWords){
+	public synchronized String[] correctKeywordsAmbiguity(String[] keyWords){
 
 		String[] refinedKeyWords = new String[keyWords.length];
 
@@ -410,33 +745,80 @@ public class PersonCrawler {
 
 			keyWords[i] = keyWords[i].trim();
 
-			String resourceURI = this.checkIfURIExists(keyWords[i]);
+			// Operators of the search query, and keywords with wildcards, are kept as they are.
+			if(SearchQuery.isOperator(keyWords[i]) || SearchQuery.isWildcard(keyWords[i])){
+				refinedKeyWords[i] = keyWords[i];
+				continue;
+			}
 
-			if(resourceURI != null){
+			String[] words = keyWords[i].toLowerCase().split("_");
 
-				this.validWords.add(resourceURI);
-				refinedKeyWords[i] = resourceURI.substring(resourceURI.lastIndexOf("/") + 1,
-						resourceURI.length()).toLowerCase();
-				
-				/*
-				 *  In case the word has been matched with a composite one, this will be reflected by an
-				 *  underscore character followed by the next word. Delete those before continuing because
-				 *  the index file only contains single keywords.
-				 */
-				if(refinedKeyWords[i].contains("_")){
-					refinedKeyWords[i] = refinedKeyWords[i].substring(0, refinedKeyWords[i].lastIndexOf("_"));
-					refinedKeyWords[i] = refinedKeyWords[i].replace("_", "");
-				}
+			for(int j=0; j<words.length; j++)
+				words[j] = this.correctSpelling(words[j]);
 
-			} else {
+			refinedKeyWords[i] = String.join("_", words);
 
-				refinedKeyWords[i] = keyWords[i];
+		}
+
+		return refinedKeyWords;
+	}
+
+	/**
+	 * @param word A word of the search query, in lower case.
+	 * @return The word if it is indexed, otherwise the closest word token of the index, or the word if none is close enough.
+	 */
+	private String correctSpelling(String word){
+
+		if(word.isEmpty() || this.termIndecesMapping.containsKey(word) || (this.savedIndex != null && this.savedIndex.hasTerm(word)))
+			return word;
+
+		int maxEdits = Math.min(this.SPELLING_MAX_EDITS, word.length() / 3);
+
+		/*
+		 * The fewest edits first, so that a word token one edit away is preferred to a more frequent one two edits
+		 * away. Misspellings seldom start at the first character, so only the word tokens starting with it are read.
+		 */
+		for(int edits = 1; edits <= maxEdits; edits++){
+
+			SortedSet<String> candidates = new TreeSet<String>(this.getUnsavedTerms().findSimilar(word, edits, 1));
+
+			if(this.savedIndex != null)
+				candidates.addAll(this.savedIndex.findSimilar(word, edits, 1));
+
+			String correction = null;
+			int bestFrequency = -1;
 
+			for(String candidate : candidates){
+
+				int documentFrequency = this.unsavedPostings.getDocumentFrequency(candidate) +
+						(this.savedIndex != null ? this.savedIndex.getDocumentFrequency(candidate, this) : 0);
+
+				if(documentFrequency > bestFrequency){
+					correction = candidate;
+					bestFrequency = documentFrequency;
+				}
+			}
+
+			if(correction != null){
+				System.out.println("Keyword " + word + " corrected to " + correction + ".");
+				return correction;
 			}
-			
 		}
 
-		return refinedKeyWords;
+		return word;
+
+	}
+
+	/**
+	 * @return The keywords held in memory, front coded in order.
+	 */
+	private TermDictionary getUnsavedTerms(){
+
+		if(this.unsavedTerms == null)
+			this.unsavedTerms = TermDictionary.of(this.termIndecesMapping.keySet());
+
+		return this.unsavedTerms;
+
 	}
 
 	/**
@@ -471,225 +853,757 @@ public class PersonCrawler {
 			if(this.fromCountry)
 				countryBin = 1;
 
-			writer.println(this.getCurrentDateTime() + "," + duration + "," + recursions + "," + peopleFound + "," +
-					keyWord + "," + addedIndexes + "," + peopleRequired + "," + countryBin);
+			writer.println(this.getCurrentDateTime() + "," + duration + "," + recursions + "," + peopleFound + "," +
+					keyWord + "," + addedIndexes + "," + peopleRequired + "," + countryBin);
+
+			writer.close();
+
+		} catch (Exception ex) {
+			System.out.println("An error occurred while appending to the file.");
+		}
+	}
+
+	/**
+	 * The following method will match resource URIs to which all keywords supplied by the user appear, and rank
+	 * them by how often and how prominently the keywords appear in them, by BM25.
+	 * The best ones are to be displayed to a reporting frame.
+	 * @param keyWords the keywords set to find intersection of resources to which they appear.
+	 * @return A string array containing the best ranked resources to which all keywords appear, best first.
+	 */
+	public synchronized String[] findMatchingURIs(String[] keyWords){
+
+		for(int i=0; i<keyWords.length; i++){
+
+			keyWords[i] = keyWords[i].trim();
+
+		}
+
+		SearchQuery query = SearchQuery.parse(keyWords);
+		List<String> indexedTerms = new ArrayList<String>();
+
+		// A keyword with wildcards stands for the words matching it, either held in memory or saved.
+		Map<String, SortedSet<String>> expansions = new HashMap<String, SortedSet<String>>();
+
+		for(String term : query.getTerms()){
+
+			if(!SearchQuery.isWildcard(term))
+				continue;
+
+			SortedSet<String> matches = new TreeSet<String>(this.getUnsavedTerms().findTerms(term));
+
+			if(this.savedIndex != null)
+				matches.addAll(this.savedIndex.findTerms(term));
+
+			expansions.put(term, matches);
+
+		}
+
+		query = query.expandWildcards(expansions);
+
+		// If you cannot find the given word, or a word of a phrase, ignore it.
+		for(String term : query.getTerms()){
+
+			boolean indexed = true;
+
+			for(String word : SearchQuery.getWords(term))
+				indexed &= this.termIndecesMapping.containsKey(word) || (this.savedIndex != null && this.savedIndex.hasTerm(word));
+
+			if(indexed)
+				indexedTerms.add(term);
+
+		}
+
+		query = query.retainTerms(indexedTerms);
+
+		/*
+		 * A document is either held in memory or saved in the index file, so the documents of each are matched
+		 * separately, each numbering them in its own way, but scored alike, by the statistics of both. The
+		 * statistics are those of all countries, as the document frequencies of the global index are.
+		 */
+		Bm25Scorer scorer = new Bm25Scorer(this.unsavedDocuments.size() + (this.savedIndex != null ? this.savedIndex.size(null, this) : 0), 
+				this.unsavedLength + (this.savedIndex != null ? this.savedIndex.getTotalLength(this) : 0));
+
+		for(String term : query.getWords()){
+
+			scorer.addDocumentFrequency(term, this.unsavedPostings.getDocumentFrequency(term));
+
+			if(this.savedIndex != null)
+				scorer.addDocumentFrequency(term, this.savedIndex.getDocumentFrequency(term, this));
+
+		}
+
+		TopDocuments top = new TopDocuments(this.SEARCH_RESULTS > 0 ? this.SEARCH_RESULTS : Integer.MAX_VALUE);
+
+		query.rank(this.unsavedPostings, scorer, top);
+
+		// The documents held in memory are all of the country searched, the saved ones are checked against it.
+		if(this.savedIndex != null)
+			this.savedIndex.rank(query, scorer, top, this.country, this);
+
+		List<String> uriStringList = top.getURIs();
+
+		/*
+		 * No resources have been found for any of the keywords. Return null and report back to the user that no results
+		 * were found.
+		 */
+		if(uriStringList.size() > 0){
+
+			return uriStringList.toArray(new String[uriStringList.size()]);
+
+		} else {
+
+			return null;
+
+		}
+	}
+
+	public synchronized void printURIs(String keyWord){
+
+		System.out.println("Printing URIS for: " + keyWord);
+
+		String[] uris = this.findMatchingURIs(new String[] {keyWord});
+
+		if(uris != null){
+			for(String uri : uris)
+				System.out.println(uri);
+		}
+
+	}
+
+	/**
+	 * The postings of the documents indexed since the index file was last saved, for search queries.
+	 */
+	private SearchQuery.PostingsSource unsavedPostings = new SearchQuery.PostingsSource() {
+
+		public int getDocumentFrequency(String term){
+
+			PostingsBuilder termURIs = PersonCrawler.this.termIndecesMapping.get(term);
+
+			return termURIs == null ? 0 : termURIs.size();
+
+		}
+
+		public Postings getPostings(String term){
+			return PersonCrawler.this.termIndecesMapping.get(term).build();
+		}
+
+		public Postings getPositionalPostings(String term){
+			return this.getPostings(term);
+		}
+
+		public int getMaxFrequency(String term){
+			return PersonCrawler.this.termIndecesMapping.get(term).getMaxFrequency();
+		}
+
+		public int getMinLength(String term){
+			return PersonCrawler.this.shortestUnsavedLength;
+		}
+
+		public int getDocumentLength(int document){
+			Integer length = PersonCrawler.this.unsavedDocuments.get(document);
+
+			return length != null ? length : 0;
+		}
+
+		public boolean isCurrent(int document){
+			return true;
+		}
+
+		public String getUri(int document){
+			return PersonCrawler.this.uriIndexMapping.getInBrackets(document);
+		}
+
+	};
+
+	/**
+	 * @return Number of documents in the inverse index of the country, or of all countries for generic searches.
+	 */
+	public synchronized int getIndexedDocumentCount(){
+		return this.unsavedDocuments.size() + (this.savedIndex != null ? this.savedIndex.size(this.country, this) : 0);
+	}
+
+	/**
+	 * @param country The name of a country.
+	 * @return True if people have been found from the country before.
+	 */
+	public boolean isCountryIndexed(String country){
+
+		this.openIndex();
+
+		return this.savedIndex.hasFacet(country);
+
+	}
+
+	/**
+	 * @return The names of the countries people have been found from, in order.
+	 */
+	public SortedSet<String> getIndexedCountries(){
+
+		this.openIndex();
+
+		return this.savedIndex.getFacets();
+
+	}
+
+	/**
+	 * Open the segments of the global index file, unless they are already open, so that the documents saved in
+	 * them are queried along with the ones indexed since.
+	 */
+	public synchronized void openIndex(){
+
+		if(this.savedIndex == null)
+			this.savedIndex = openGlobalIndex(this.INDEX_MERGE_FACTOR);
+
+	}
+
+	/**
+	 * Get the global index file shared by all crawlers, opening it if needed. The first time, the index files of
+	 * single countries left in the working directory by earlier versions are imported into it, each as the
+	 * people of its country, and deleted.
+	 * @param mergeFactor Number of segments of similar size merged together.
+	 * @return The global index.
+	 */
+	private static synchronized SegmentedIndex openGlobalIndex(int mergeFactor){
+
+		SegmentedIndex index = SegmentedIndex.getIndex(GLOBAL_INDEX_FILE, UriDictionary.getShared(), mergeFactor);
+
+		if(legacyIndexesImported)
+			return index;
+
+		legacyIndexesImported = true;
+
+		File[] legacyFiles = new File(System.getProperty("user.dir")).listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String filename) {
+				return filename.endsWith(INDEX_FILE_SUFFIX) && !filename.equals(GLOBAL_INDEX_FILE);
+			}
+		});
+
+		if(legacyFiles == null)
+			return index;
+
+		Arrays.sort(legacyFiles);
+
+		for(File legacyFile : legacyFiles){
+
+			String name = legacyFile.getName();
+
+			try {
+				// The people found by generic searches belong to no country.
+				index.importIndex(legacyFile.getPath(), name.equals(GENERIC_INDEX_FILE) ? null 
+						: name.substring(0, name.length() - INDEX_FILE_SUFFIX.length()));
+			} catch (IOException e) {
+				System.out.println("Could not import the index file " + name + ": " + e.getMessage());
+			}
+		}
+
+		return index;
+
+	}
+
+	/**
+	 * This method is responsible of performing shallow searching of people in the linked data cloud 
+	 * starting from the resource URI given as a parameter. The linked resources are visited by a pool of
+	 * workers sharing a single frontier so that several requests to the endpoint are in flight at once, while
+	 * the text of the people found is fetched, tokenized and indexed by the later stages of a pipeline.
+	 * @param currentResource The resource URI that will be used first to perform the search. Given the
+	 * context of this application, it will most probably be a country's URI.
+	 */
+	public void resourceCrawl(String currentResource) {
+
+		this.resourceCrawl(currentResource, null);
+
+	}
+
+	/**
+	 * Same as resourceCrawl, saving the state of the crawl at regular intervals next to the index file being built.
+	 * If a checkpoint of an earlier crawl from the same resource is found there, the crawl carries on from it.
+	 * Otherwise, if the index file has been built before and incremental recrawls are enabled, only the people
+	 * whose text is getting old are fetched again and only resources no earlier crawl has explored are explored.
+	 * The index file should be written with saveIndex once the crawl is over.
+	 * @param currentResource The resource URI that will be used first to perform the search.
+	 * @param indexFile The index file the crawl is building, after which its history and checkpoints are named.
+	 * Null to disable checkpoints.
+	 */
+	public void resourceCrawl(String currentResource, String indexFile) {
+
+		CrawlPipeline pipeline = new CrawlPipeline(this, this.CRAWLER_THREADS, this.FETCH_THREADS, 
+				this.TOKENIZE_THREADS, this.TEXT_BATCH_SIZE, this.PIPELINE_QUEUE_CAPACITY);
+
+		CrawlCheckpoint checkpoint = null;
+
+		if(indexFile != null){
+
+			pipeline.enableCheckpoints(indexFile, this.CHECKPOINT_INTERVAL);
+			this.openIndex();
+			this.loadHistory(indexFile);
+			checkpoint = this.loadCheckpoint(currentResource, indexFile);
+
+			if(checkpoint == null && this.INCREMENTAL_RECRAWL)
+				checkpoint = this.startIncrementalCrawl(currentResource, indexFile);
+
+		} else {
+
+			this.crawlHistory = null;
+			this.crawlHistoryFile = null;
+		}
+
+		if(checkpoint != null){
+
+			this.alreadyVisitedURIs = checkpoint.visitedURIs;
+			pipeline.crawl(checkpoint, this.peopleRequired - this.peopleVisited, this.RECURSION_LIMIT - this.recursions);
+
+		} else {
+
+			pipeline.crawl(currentResource, this.peopleRequired - this.peopleVisited, this.RECURSION_LIMIT - this.recursions, 
+					this.alreadyVisitedURIs);
+		}
+
+		this.peopleVisited += pipeline.getPeopleVisited();
+		this.recursions += pipeline.getBranchOuts();
+
+		if(pipeline.getResourcesLost() > 0)
+			System.out.println(pipeline.getResourcesLost() + " resources could not be visited as the endpoint kept failing.");
+
+		System.out.println(this.endpoint.getStatistics());
+
+	}
+
+	/**
+	 * Look for a checkpoint of an unfinished crawl from the given resource, and load the postings saved with it.
+	 * @param currentResource The resource URI the crawl starts from.
+	 * @param indexFile The index file the crawl is building.
+	 * @return The checkpoint, or null if there is none to carry on from.
+	 */
+	private CrawlCheckpoint loadCheckpoint(String currentResource, String indexFile){
+
+		File state = CrawlCheckpoint.stateFile(indexFile);
+		File postings = CrawlCheckpoint.postingsFile(indexFile);
+
+		if(!state.exists() || !postings.exists())
+			return null;
+
+		try {
+
+			CrawlCheckpoint checkpoint = CrawlCheckpoint.load(state);
+
+			if(!checkpoint.seedURI.equals(currentResource))
+				return null;
+
+			System.out.println("Resuming the crawl from " + currentResource + " where it stopped: " 
+					+ checkpoint.peopleVisited + " people found so far.");
+
+			this.retrieveFromIndex(postings);
+
+			return checkpoint;
+
+		} catch (IOException e) {
+
+			System.out.println("Ignoring unreadable checkpoint " + state.getName() + ": " + e.getMessage());
+			return null;
+
+		}
+
+	}
+
+	/**
+	 * Load the history of the crawls building the given index file, unless it is already loaded.
+	 * @param indexFile The index file being built.
+	 */
+	private void loadHistory(String indexFile){
+
+		if(indexFile.equals(this.crawlHistoryFile))
+			return;
+
+		this.crawlHistory = new CrawlHistory();
+		this.crawlHistoryFile = indexFile;
+
+		File history = CrawlHistory.historyFile(indexFile);
+
+		// Without the people of the country the history is meaningless, e.g. once they have been dropped.
+		if(!history.exists() || !this.savedIndex.hasFacet(this.country))
+			return;
+
+		try {
+			this.crawlHistory = CrawlHistory.load(history);
+		} catch (IOException e) {
+			System.out.println("Ignoring unreadable crawl history " + history.getName() + ": " + e.getMessage());
+		}
+
+	}
+
+	/**
+	 * Set up an incremental recrawl from the given resource, as a checkpoint to carry on from: the people already
+	 * in the index count towards the number of people required, the ones whose text is getting old are fetched
+	 * again and the resources explored by earlier crawls are not explored again.
+	 * @param currentResource The resource URI the crawl starts from.
+	 * @param indexFile The index file being rebuilt.
+	 * @return The checkpoint to carry on from, or null if the index file has no history to start from.
+	 */
+	private CrawlCheckpoint startIncrementalCrawl(String currentResource, String indexFile){
+
+		if(this.crawlHistory.isEmpty())
+			return null;
+
+		CrawlCheckpoint checkpoint = new CrawlCheckpoint(currentResource);
+
+		checkpoint.frontier.add(currentResource);
+		checkpoint.peopleLogged = this.crawlHistory.getPeople();
+		checkpoint.peopleVisited = checkpoint.peopleLogged.size();
+		checkpoint.pendingPeople = this.crawlHistory.getPeopleFetchedBefore(System.currentTimeMillis() - this.PERSON_MAX_AGE);
+		checkpoint.visitedURIs = this.crawlHistory.getExplored() != null ? this.crawlHistory.getExplored() : this.alreadyVisitedURIs;
+
+		System.out.println("Incremental recrawl from " + currentResource + ": " + checkpoint.peopleVisited + " people known, " 
+				+ checkpoint.pendingPeople.size() + " to refresh.");
+
+		return checkpoint;
+
+	}
+
+	/**
+	 * Save the documents indexed by a crawl as a new segment of the global index file, in the country, along with
+	 * the history of the crawls building it, and drop the checkpoint of the crawl.
+	 * @param indexFile The index file the crawl is building, after which its history and checkpoints are named.
+	 */
+	public void saveIndex(String indexFile){
+
+		this.saveIndex(indexFile, false);
+
+	}
+
+	/**
+	 * Same as saveIndex, the documents replacing all the people of the country if asked.
+	 * @return True if the documents have been saved.
+	 */
+	private boolean saveIndex(String indexFile, boolean replaceCountry){
+
+		if(!this.flushIndex(replaceCountry))
+			return false;
+
+		if(this.crawlHistory != null && indexFile.equals(this.crawlHistoryFile)){
+
+			this.crawlHistory.setExplored(this.alreadyVisitedURIs);
+
+			try {
+				this.crawlHistory.save(CrawlHistory.historyFile(indexFile));
+			} catch (IOException e) {
+				System.out.println("Could not save the crawl history: " + e.getMessage());
+			}
+		}
+
+		CrawlCheckpoint.delete(indexFile);
+
+		return true;
+
+	}
+
+	/**
+	 * @param resourceURI A resource URI, in angle brackets.
+	 * @return True if the resource has been added to the inverse index of the country.
+	 */
+	public synchronized boolean isIndexed(String resourceURI){
 
-			writer.close();
+		int index = this.uriIndexMapping.lookup(resourceURI);
+
+		return (index >= 0 && this.unsavedDocuments.containsKey(index)) 
+				|| (this.savedIndex != null && this.savedIndex.contains(resourceURI, this.country, this));
 
-		} catch (Exception ex) {
-			System.out.println("An error occurred while appending to the file.");
-		}
 	}
 
 	/**
-	 * The following method will match resource URIs to which all keywords supplied by the user appear.
-	 * The extracted ones are to be displayed to a reporting frame.
-	 * @param keyWords the keywords set to find intersection of resources to which they appear.
-	 * @return A string array containing the resources that consist of the intersection of keywords to which they appear.
+	 * Find the people linked to the given resource, in either direction.
+	 * @param currentResource The resource URI to look around.
+	 * @return The resource URIs of the people found.
+	 * @throws RuntimeException If the endpoint could not answer, so that the resource can be visited again.
 	 */
-	public String[] findMatchingURIs(String[] keyWords){
+	public List<String> findPeople(String currentResource) {
 
-		HashSet<Integer> uriIndecesList = new HashSet<Integer>();
-		List<String> uriStringList = new ArrayList<String>();
+		List<String> people = new ArrayList<String>();
 
 		/*
-		 * Given that words are already mapped to the document numbers we have created,
-		 * retrieve for each word the whole list 
+		 * Check if the resources linked to the currently viewed resource are People.
 		 */
-		for(int i=0; i<keyWords.length; i++){
+		String personQuery = "PREFIX foaf: <http://xmlns.com/foaf/0.1/>"
+				+ "SELECT DISTINCT ?resourceURI WHERE {"
+				+ "{<" + currentResource + "> ?a ?resourceURI}"
+				+ "UNION"
+				+ "{?resourceURI ?a <" + currentResource + ">}"
+				+ "{?resourceURI a foaf:Person}"
+				+ "}";
 
-			keyWords[i] = keyWords[i].trim();
+		ResultSet personResults = this.select(personQuery);
 
-			// If you cannot find the given word, ignore it.
-			if(this.termIndecesMapping.containsKey(keyWords[i])){
-				
-				if(i==0){
+		while(personResults.hasNext()){
 
-					uriIndecesList.addAll(this.termIndecesMapping.get(keyWords[i].toLowerCase()));
+			QuerySolution solution = personResults.nextSolution();
+			people.add(solution.get("?resourceURI").toString());
 
-				} else {
+		}
 
-					/*
-					 * The documentation for the retainAll function suggests that
-					 * only elements that appear in the previously added values and the new
-					 * ones will be retained. 
-					 */
-					uriIndecesList.retainAll(this.termIndecesMapping.get(keyWords[i].toLowerCase()));
+		return people;
+	}
 
-				}				
-			}
+	/**
+	 * Find the resources the crawl may branch out to from the given resource. Only a random sample of the
+	 * linked resources is returned to limit branching out of resources that link to many others. The endpoint
+	 * is asked for a bounded window of the linked resources, so that hubs such as countries do not send
+	 * back tens of thousands of rows, and the sample is drawn from it in a single pass. When a resource
+	 * links to more resources than fit in the window, the linked resources are counted and the window starts
+	 * at a random offset among them, so that any of them may be sampled. The sample is then uniform within
+	 * the window only: resources next to each other in the order of the endpoint are sampled together.
+	 * @param currentResource The resource URI to branch out from.
+	 * @return The resource URIs to branch out to.
+	 * @throws RuntimeException If the endpoint could not answer, so that the resource can be visited again.
+	 */
+	public List<String> findNeighbours(String currentResource) {
 
-		}
+		Random random = this.randomGenerator.get();
+		List<String> window = this.findNeighbours(currentResource, 0);
 
-		/*
-		 * No resources have been found for any of the keywords. Return null and report back to the user that no results
-		 * were found.
-		 */
-		if(uriIndecesList.size() > 0){
+		if(!this.NEIGHBOUR_SERVER_RANDOM && window.size() >= this.NEIGHBOUR_WINDOW){
 
-			for(int uriIndex : uriIndecesList){
+			long count = this.countNeighbours(currentResource);
 
-				// Only one element will be contained by the returned set so quickly retrieve it by using the iterator().next() functions
-				uriStringList.add(this.getKeysByValue(this.uriIndexMapping, uriIndex).iterator().next());
+			if(count > this.NEIGHBOUR_WINDOW){
+				long offset = (long)(random.nextDouble() * (count - this.NEIGHBOUR_WINDOW + 1));
 
+				if(offset > 0)
+					window = this.findNeighbours(currentResource, offset);
 			}
+		}
 
-			return Arrays.copyOf(uriStringList.toArray(), uriStringList.toArray().length, String[].class);
+		ReservoirSampler<String> sampler = new ReservoirSampler<String>(this.NEIGHBOUR_SAMPLE_SIZE, random);
 
-		} else {
+		for(String neighbour : window)
+			sampler.offer(neighbour);
 
-			return null;
+		return sampler.getSample();
+	}
 
-		}
+	/**
+	 * Only consider linked resources that are valid URIs by checking if they start with
+	 * an "http://dbpedia.org/resource/" prefix.
+	 */
+	private String neighbourPattern(String currentResource){
+		return "{<" + currentResource + "> ?property ?resourceURI FILTER ( strstarts(str(?resourceURI), \"http://dbpedia.org/resource/\") )}"
+				+ "UNION"
+				+ "{?resourceURI ?property <" + currentResource + "> FILTER ( strstarts(str(?resourceURI), \"http://dbpedia.org/resource/\") )}";
 	}
 
-	public void printURIs(String keyWord){
+	/**
+	 * Get a window of the resources linked to the given resource.
+	 * @param currentResource The resource URI to branch out from.
+	 * @param offset Number of linked resources skipped before the window.
+	 * @return The resource URIs in the window.
+	 */
+	private List<String> findNeighbours(String currentResource, long offset){
 
-		System.out.println("Printing URIS for: " + keyWord);
-		Iterator<Integer> iter = this.termIndecesMapping.get(keyWord).iterator();
+		String queryURI = "SELECT DISTINCT ?resourceURI WHERE {"
+				+ this.neighbourPattern(currentResource)
+				+ "}"
+				+ (this.NEIGHBOUR_SERVER_RANDOM ? " ORDER BY RAND()" : "")
+				+ (offset > 0 ? " OFFSET " + offset : "")
+				+ " LIMIT " + this.NEIGHBOUR_WINDOW;
 
-		while(iter.hasNext()){
-			System.out.println(this.getKeysByValue(this.uriIndexMapping, iter.next()));
+		List<String> window = new ArrayList<String>();
+		ResultSet resultsURI = this.select(queryURI);
+
+		while(resultsURI.hasNext())
+			window.add(resultsURI.nextSolution().get("?resourceURI").toString());
+
+		return window;
+	}
+
+	/**
+	 * Count the resources linked to the given resource.
+	 * @param currentResource The resource URI to branch out from.
+	 * @return The number of linked resources.
+	 */
+	private long countNeighbours(String currentResource){
+
+		String queryCount = "SELECT (COUNT(DISTINCT ?resourceURI) AS ?count) WHERE {"
+				+ this.neighbourPattern(currentResource)
+				+ "}";
+
+		ResultSet resultsCount = this.select(queryCount);
+
+		if(resultsCount.hasNext()){
+			QuerySolution solution = resultsCount.nextSolution();
+
+			if(solution.contains("count") && solution.get("count").isLiteral())
+				return solution.getLiteral("count").getLong();
 		}
 
+		return 0;
 	}
 
 	/**
-	 * This method is responsible of performing shallow searching of people in the linked data cloud 
-	 * starting from the resource URI given as a parameter. This function is called recursively to prevent
-	 * termination of the algorithm before the desired number of people are found.
-	 * @param currentResource The resource URI that will be used first to perform the search. Given the
-	 * context of this application, it will most probably be a country's URI.
+	 * This method is responsible for cleaning text inputs from stop words and
+	 * assigning each valid word token it contains in the global data structures for
+	 * inverse index file creation purposes.
+	 * @param textToParse Text input to parse, originating from the dbpedia-owl:abstract or
+	 * rdfs:comment (which have the most information out of all the alternatives)
+	 * @param resourceURI The resource URI to which the text input was extracted from.
 	 */
-	public void resourceCrawl(String currentResource) {
+	public void parseTextToTokens(String textToParse, String resourceURI){
 
-		try {
-			// Stop if there are enough people.
-			if(this.peopleVisited < this.peopleRequired) {
+		this.indexTokens(this.tokenize(textToParse), resourceURI);
+
+	}
 
-				/*
-				 *  Check if the currently viewed resource is a valid URI first by checking if it starts with
-				 *  an "http://dbpedia.org/resource/" prefix.
-				 */
-				String queryURI = "SELECT DISTINCT ?resourceURI WHERE {"
-						+ "{<" + currentResource + "> ?property ?resourceURI FILTER ( strstarts(str(?resourceURI), \"http://dbpedia.org/resource/\") )}"
-						+ "UNION"
-						+ "{?resourceURI ?property <" + currentResource + "> FILTER ( strstarts(str(?resourceURI), \"http://dbpedia.org/resource/\") )}"
-						+ "}";
+	/**
+	 * Clean a text input from stop words and split it into word tokens. This does not touch the
+	 * inverse index, so it can run on any number of threads at once.
+	 * @param textToParse Text input to parse.
+	 * @return The word tokens of the text.
+	 */
+	public String[] tokenize(String textToParse){
+
+		// Convert to lower case to avoid wrong outputs. Underscores join the words of a phrase in searches only.
+		textToParse = textToParse.toLowerCase().replace('_', ' ');
+		// Remove stop words using the function given in the SCC413 course.
+		textToParse = this.stopWords.removeStopWords(textToParse);
 
-				/*
-				 * Then check if the currently viewed resource is a Person.
-				 */
-				String personQuery = "PREFIX foaf: <http://xmlns.com/foaf/0.1/>"
-						+ "SELECT DISTINCT ?resourceURI WHERE {"
-						+ "{<" + currentResource + "> ?a ?resourceURI}"
-						+ "UNION"
-						+ "{?resourceURI ?a <" + currentResource + ">}"
-						+ "{?resourceURI a foaf:Person}"
-						+ "}";
+		return textToParse.split(" ");
 
-				ResultSet personResults = this.queryResults(personQuery);
+	}
 
-				// Run both queries one after the other.
-				if(personResults != null){
-					while(personResults.hasNext() && this.peopleVisited < this.peopleRequired){
+	/**
+	 * Assign the given word tokens to the resource URI in the global data structures for
+	 * inverse index file creation purposes.
+	 * @param tokens The word tokens extracted from the resource's text.
+	 * @param resourceURI The resource URI to which the text input was extracted from.
+	 */
+	public synchronized void indexTokens(String[] tokens, String resourceURI){
+		int resourceIndex = this.uriIndexMapping.intern(resourceURI);
 
-						QuerySolution solution = personResults.nextSolution();
+		// The version saved in the index file, if any, is replaced by this one on the next save.
+		if(this.savedIndex != null)
+			this.savedIndex.remove(resourceURI, this);
 
-						String person = solution.get("?resourceURI").toString();
-						this.peopleVisited++;
+		// The position of a word is its number among the words of the text, once the empty ones are dropped.
+		final List<String> words = new ArrayList<String>(tokens.length);
 
-						String textToParse = this.getAbstract("<" + person + ">");
-						textToParse += " " + this.getComment("<" + person + ">");
-						textToParse += " " + this.getDescription("<" + person + ">");
+		for(String token : tokens){
+			if(!token.equals("")) //|| !this.isInteger(token, 10))
+				words.add(token);
+		}
 
-						if(textToParse != null){
+		// Sorted, so that the repetitions of a word follow each other, in the order of their positions.
+		Integer[] order = new Integer[words.size()];
 
-							System.out.println("Logging data for: " + person);
-							this.parseTextToTokens(textToParse, "<" + person + ">");
+		for(int i = 0; i < order.length; i++)
+			order[i] = i;
 
-						}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return words.get(a).compareTo(words.get(b));
+			}
+		});
 
-					}
-				}
+		for(int i = 0; i < order.length; ){
 
-				ResultSet resultsURI = this.queryResults(queryURI);
+			String token = words.get(order[i]);
+			int start = i;
 
-				if(resultsURI != null){
-					while(resultsURI.hasNext() && this.peopleVisited < this.peopleRequired) {
-						QuerySolution solution = this.getRandomSolution(resultsURI, 5.0);
-						String resourceURI = solution.get("?resourceURI").toString();
+			while(i < order.length && words.get(order[i]).equals(token))
+				i++;
 
-						System.out.println("Recursion starting in: " + resourceURI);
+			int[] positions = new int[i - start];
 
-						// Recursively add new instances of the current method to visit linked URIs.
-						if(!this.alreadyVisitedURIs.contains(resourceURI)){
+			for(int p = 0; p < positions.length; p++)
+				positions[p] = order[start + p];
 
-							// Limit recursions:
-							if( recursions == this.RECURSION_LIMIT ){ return; }
-							else{ recursions ++; }
+			PostingsBuilder termURIs = this.termIndecesMapping.get(token);
 
-							this.alreadyVisitedURIs.add(resourceURI);
-							this.resourceCrawl(resourceURI);
+			if(termURIs == null){
+				termURIs = new PostingsBuilder();
 
-						}
-					}
-				} 
+				// Map a word from the text to the document numbers it appears.
+				this.termIndecesMapping.put(token, termURIs);
+				this.unsavedTerms = null;
 			}
-			
-		} catch (StackOverflowError soe) {
-			/*
-			 *  Ungracefully let the exception be thrown and then iteratively return from all stacks as this will
-			 *  be thrown in all consecutively running recursions.
-			 */
-			return;
+
+			// Add the new document number to which the word appears, along with where and how many times it does.
+			termURIs.add(resourceIndex, positions.length, positions);
 		}
+
+		this.setDocumentLength(resourceIndex, words.size());
 	}
 
 	/**
-	 * This method is responsible for cleaning text inputs from stop words and
-	 * assigning each valid word token it contains in the global data structures for
-	 * inverse index file creation purposes.
-	 * @param textToParse Text input to parse, originating from the dbpedia-owl:abstract or
-	 * rdfs:comment (which have the most information out of all the alternatives)
-	 * @param resourceURI The resource URI to which the text input was extracted from.
+	 * Record the number of word tokens of a resource URI indexed since the index file was last saved.
 	 */
-	public void parseTextToTokens(String textToParse, String resourceURI){
-		if(!this.uriIndexMapping.containsKey(resourceURI)){
-			uriIndexMapping.put(resourceURI, uriIndexMapping.size());
+	private void setDocumentLength(int index, int length){
+
+		Integer replaced = this.unsavedDocuments.put(index, length);
+
+		if(replaced != null)
+			this.unsavedLength -= replaced;
+
+		this.unsavedLength += length;
+		this.shortestUnsavedLength = Math.min(this.shortestUnsavedLength, length);
+
+	}
+
+	/**
+	 * Add a fetched and tokenized document to the inverse index. When building an index file with a history, the
+	 * fetch is recorded in it: a document whose text has not changed since it was last indexed is skipped, and
+	 * the old postings of one whose text has changed are removed first.
+	 * @param document The document of a person.
+	 */
+	public synchronized void indexDocument(PersonDocument document){
+
+		String resourceURI = "<" + document.uri + ">";
+
+		if(this.crawlHistory != null){
+
+			boolean unchanged = this.crawlHistory.record(document.uri, CrawlHistory.hash(document.text), System.currentTimeMillis());
+
+			if(this.isIndexed(resourceURI)){
+
+				if(unchanged)
+					return;
+
+				this.removeFromIndex(resourceURI);
+			}
 		}
 
-		// Convert to lower case to avoid wrong outputs.
-		textToParse = textToParse.toLowerCase();
-		// Remove stop words using the function given in the SCC413 course.
-		textToParse = this.stopWords.removeStopWords(textToParse);
+		this.indexTokens(document.tokens, resourceURI);
 
-		String[] splittedText = textToParse.split(" ");
+	}
 
-		for(String token : splittedText){
+	/**
+	 * Remove a resource URI from the postings of every word token, e.g. before indexing its new text. The
+	 * resource keeps its index number.
+	 * @param resourceURI The resource URI, in angle brackets.
+	 */
+	public synchronized void removeFromIndex(String resourceURI){
 
-			if(!token.equals("")){ //|| !this.isInteger(token, 10)){
+		if(this.savedIndex != null)
+			this.savedIndex.remove(resourceURI, this);
 
+		int index = this.uriIndexMapping.lookup(resourceURI);
 
-				if(!this.termIndecesMapping.containsKey(token)){
-					HashSet<Integer> termURIs = new HashSet<Integer>();
+		if(index < 0)
+			return;
 
-					termURIs.add(this.uriIndexMapping.get(resourceURI));
+		Integer length = this.unsavedDocuments.remove(index);
 
-					// Map a word from the text to the document numbers it appears.
-					this.termIndecesMapping.put(token, termURIs);
-				} else {
-					// Retrieve the indexes of the URIs to which the word appears 
-					HashSet<Integer> termURIs = this.termIndecesMapping.get(token);
+		if(length != null)
+			this.unsavedLength -= length;
 
-					termURIs.add(this.uriIndexMapping.get(resourceURI));
+		Iterator<PostingsBuilder> postings = this.termIndecesMapping.values().iterator();
 
-					// Add the new document numbers to which the word appears.
-					this.termIndecesMapping.put(token, termURIs);
-				}
+		while(postings.hasNext()){
 
+			PostingsBuilder termURIs = postings.next();
+
+			if(termURIs.remove(index) && termURIs.isEmpty()){
+				postings.remove();
+				this.unsavedTerms = null;
 			}
 		}
+
 	}
 
 	/**
@@ -727,98 +1641,144 @@ public class PersonCrawler {
 	}
 
 	/**
-	 * For already created inverse index files for a certain country, retrieve the words and in which documents
-	 * they appear to be queried later on based on user keyword inputs.
+	 * Read the words of an index file and the documents they appear in into memory, along with the documents
+	 * indexed since the index file was last saved, e.g. the postings saved with a checkpoint. They replace any
+	 * version of the same documents in the segments of the index file.
 	 * @param f The name of the file from which to retrieve words and the documents they appear in.
 	 */
-	public void retrieveFromIndex(File f){
+	public synchronized void retrieveFromIndex(File f){
+
+		// An empty file is an index file that has not been written yet.
+		if(f.length() == 0)
+			return;
+
 		try {
-			String line = "";
-			BufferedReader br = new BufferedReader(new InputStreamReader(
-					new FileInputStream(f), "UTF8"));
 
-			// Ignore the first line
-			br.readLine();
-			while((line = br.readLine()) != null){
-				String[] toks = line.split("\t");
+			BinaryIndexFile index = new BinaryIndexFile(f);
+
+			// Document numbers of the file are numbered again by the dictionary of this crawler.
+			int[] indices = new int[index.getUriCount()];
 
-				HashSet<Integer> URIValues = new HashSet<Integer>();
+			for(int i = 0; i < indices.length; i++){
 
-				for(int i = 1; i < toks.length; i++){
+				String uri = index.getUri(i);
 
-					toks[i] = toks[i].replace("[", "");
-					toks[i] = toks[i].replace("]", "");
+				indices[i] = this.uriIndexMapping.intern(uri);
 
-					if(!uriIndexMapping.containsKey(toks[i])){
+				if(this.savedIndex != null)
+					this.savedIndex.remove(uri, this);
+			}
 
-						this.uriIndexMapping.put(toks[i], uriIndexMapping.size());
+			for(int i = 0; i < index.getTermCount(); i++){
 
-						System.out.println("Added: " + uriIndexMapping.get(toks[i]) + ", " + toks[i]);
-					}
+				String term = index.getTerm(i);
+				PostingsBuilder URIValues = this.termIndecesMapping.get(term);
+				Postings.Cursor documents = index.getPositionalPostings(i).cursor();
 
-					URIValues.add(this.uriIndexMapping.get(toks[i]));
+				if(URIValues == null){
+					URIValues = new PostingsBuilder();
+					this.termIndecesMapping.put(term, URIValues);
+					this.unsavedTerms = null;
 				}
 
-				this.termIndecesMapping.put(toks[0].toLowerCase(), URIValues);
+				for(int document = documents.next(); document != Postings.NO_MORE_DOCUMENTS; document = documents.next())
+					URIValues.add(indices[document], documents.frequency(), documents.positions());
 			}
 
-			br.close();
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			for(int i = 0; i < indices.length; i++)
+				this.setDocumentLength(indices[i], index.getDocumentLength(i));
+
 		} catch (IOException e) {
-			e.printStackTrace();
+			System.out.println("Could not read the index file " + f.getName() + ": " + e.getMessage());
 		}
 
 	}
 
 	/**
-	 * Create a new inverse-index file for the given country
+	 * Write the documents indexed since the index file was last saved to an index file of their own, e.g. to
+	 * checkpoint a crawl.
 	 * @param countryIndexFile The name of the inverse-index file to be created
 	 */
-	public void writeToIndex(String countryIndexFile){
+	public synchronized void writeToIndex(String countryIndexFile){
+
+		int[] documents = this.getUnsavedDocuments();
 
 		try {
-			PrintWriter writer = new PrintWriter(new FileWriter(countryIndexFile, false));
+			SegmentedIndex.writeSegment(new File(countryIndexFile), System.currentTimeMillis(), 0, this.getUnsavedPostings(), 
+					documents, this.getDocumentLengths(documents), this.uriIndexMapping);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 
-			Iterator<String> termIndexIter = this.termIndecesMapping.keySet().iterator();
+	}
 
-			// Delete all previous content of the file by simply typing an empty string.
-			writer.print("");
-			// Write the current date on the first line of the file.
-			writer.println(this.getCurrentDateTime());
+	/**
+	 * Save the documents indexed since the index file was last saved as a new segment of it, in the country.
+	 * @param replaceCountry True if the documents replace all the people of the country.
+	 * @return True if the documents have been saved.
+	 */
+	private synchronized boolean flushIndex(boolean replaceCountry){
 
-			while(termIndexIter.hasNext()){
-				String toWrite = "";
-				String uriVal = "";
-				String nextKey = termIndexIter.next();
-				HashSet<Integer> values = termIndecesMapping.get(nextKey.toLowerCase());
+		this.openIndex();
 
-				Iterator<Integer> valuesIter = values.iterator();
+		int[] documents = this.getUnsavedDocuments();
 
-				while(valuesIter.hasNext()){
-					uriVal = "";
-					uriVal += this.getKeysByValue(this.uriIndexMapping, valuesIter.next()).toString();
-					toWrite += uriVal + "\t";
-				}
+		try {
 
-				toWrite = toWrite.substring(0, toWrite.lastIndexOf("\t")).trim();
-				toWrite = nextKey + "\t" + toWrite;
+			this.savedIndex.flush(this.getUnsavedPostings(), documents, this.getDocumentLengths(documents), this.country, 
+					replaceCountry, this);
 
-				writer.println(toWrite);
-			}
+			this.termIndecesMapping.clear();
+			this.unsavedTerms = null;
+			this.unsavedDocuments.clear();
+			this.unsavedLength = 0;
+			this.shortestUnsavedLength = Integer.MAX_VALUE;
 
-			writer.close();
+			return true;
 
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
 		} catch (IOException e) {
-			e.printStackTrace();
+			System.out.println("Could not save the index file " + GLOBAL_INDEX_FILE + ": " + e.getMessage());
+			return false;
 		}
 
+	}
+
+	private Map<String, Postings> getUnsavedPostings(){
+
+		Map<String, Postings> termPostings = new HashMap<String, Postings>(this.termIndecesMapping.size() * 2);
+
+		for(Map.Entry<String, PostingsBuilder> term : this.termIndecesMapping.entrySet())
+			termPostings.put(term.getKey(), term.getValue().build());
+
+		return termPostings;
+
+	}
+
+	/**
+	 * @return The indexes of the resource URIs indexed since the index file was last saved, in ascending order.
+	 */
+	private int[] getUnsavedDocuments(){
+
+		int[] documents = new int[this.unsavedDocuments.size()];
+		int i = 0;
+
+		for(int document : this.unsavedDocuments.keySet())
+			documents[i++] = document;
+
+		Arrays.sort(documents);
+
+		return documents;
+
+	}
+
+	private int[] getDocumentLengths(int[] documents){
+
+		int[] lengths = new int[documents.length];
+
+		for(int i = 0; i < documents.length; i++)
+			lengths[i] = this.unsavedDocuments.get(documents[i]);
+
+		return lengths;
 
 	}
 
@@ -830,31 +1790,39 @@ public class PersonCrawler {
 	public boolean recrawlingNeeded(String lastUpdate){
 
 		try {
-			SimpleDateFormat parser = new SimpleDateFormat("dd/MM/yy HH:mm:ss");
-			Date lastUpdateDate;
 
-			lastUpdateDate = parser.parse(lastUpdate);
+			return this.recrawlingNeeded(new SimpleDateFormat("dd/MM/yy HH:mm:ss").parse(lastUpdate).getTime());
+
+		} catch (ParseException e) {
+
+			System.out.println("Failed to parse date. Re-crawling will not commence.");
+			return false;
 
-			Date now = Calendar.getInstance().getTime();
+		}
 
-			long duration = now.getTime() - lastUpdateDate.getTime();
+	}
 
-			if (duration >= this.MAX_DURATION) {
+	/**
+	 * Check if re-crawling to the linked data cloud will be required for the selected country
+	 * @param lastUpdate Time of the last update of the index file, in milliseconds since the epoch.
+	 * @return If re-crawling is needed return true, else false. 
+	 */
+	public boolean recrawlingNeeded(long lastUpdate){
 
-				System.out.println("Time passed since last update is not within threshold: " + duration + 
-						". Last update in: " + lastUpdateDate.toString());
-				return true;
+		Date lastUpdateDate = new Date(lastUpdate);
+		Date now = Calendar.getInstance().getTime();
 
-			} else {
+		long duration = now.getTime() - lastUpdateDate.getTime();
 
-				System.out.println("Time passed since last update is within threshold: " + lastUpdateDate.toString());
-				return false;
+		if (duration >= this.MAX_DURATION) {
 
-			}
+			System.out.println("Time passed since last update is not within threshold: " + duration + 
+					". Last update in: " + lastUpdateDate.toString());
+			return true;
 
-		} catch (ParseException e) {
+		} else {
 
-			System.out.println("Failed to parse date. Re-crawling will not commence.");
+			System.out.println("Time passed since last update is within threshold: " + lastUpdateDate.toString());
 			return false;
 
 		}
@@ -931,7 +1899,6 @@ public class PersonCrawler {
 	 * @return The name of the person to which the resource URI corresponds.
 	 */
 	public String getName(String PersonURI){
-		QueryExecution qexec = null;
 
 		// Query dynamically adjusts to accommodate to the new URI linked to the previous one.
 		String query = "PREFIX foaf: <http://xmlns.com/foaf/0.1/>\n" +
@@ -941,10 +1908,10 @@ public class PersonCrawler {
 				"{ " + PersonURI +" foaf:name ?name \n" +
 				"}";
 
-		String sparqlEndpointURL =  "http://dbpedia.org/sparql";
+		ResultSet results = this.queryResults(query);
 
-		qexec = QueryExecutionFactory.sparqlService(sparqlEndpointURL,query);
-		ResultSet results = qexec.execSelect() ;
+		if(results == null)
+			return null;
 
 		for ( ; results.hasNext() ; )
 		{
@@ -960,46 +1927,6 @@ public class PersonCrawler {
 		return null;
 	}
 
-	/**
-	 * To limit recursion in resource URIs that may contain more people than other resource URIs,
-	 * we access a random solution from one of the available ones when we search to branch out from 
-	 * a source URI (a country) and expand to URIs that it relates to.
-	 * @param results The result set to get a random solution from
-	 * @param percentChance The chance % to stop at a given solution
-	 * @return The solution to be used in the next recursion.
-	 */
-	public QuerySolution getRandomSolution(ResultSet results, Double percentChance){
-
-		if(results.hasNext()){
-			Double limit = 100/percentChance;
-			int lim = limit.intValue();
-
-			Random randomGenerator = new Random();
-			QuerySolution solution = null;
-
-			while(results.hasNext()){
-				int randomInt = randomGenerator.nextInt(lim);			    
-				if(randomInt == 1){
-
-					return results.nextSolution();
-
-				} else {
-
-					solution = results.nextSolution();
-
-				}
-			}
-
-			return solution;
-
-		} else {
-
-			return null;
-
-		}
-
-	}
-
 	/**
 	 * Returns the current date time in the standard format of dd/MM/yy HH:mm:ss
 	 * @return The current date time.
@@ -1011,124 +1938,85 @@ public class PersonCrawler {
 	}
 
 	/**
-	 * A method using generic notations to extract from a map structure
-	 * a key set based on the value those correspond to (could be just one)
-	 * @param map The data structure to extract the key(s) from
-	 * @param val The value to which the key(s) correspond
-	 * @return A key set (could be null).
-	 */
-	public <T, E> Set<T> getKeysByValue(Map<T, E> map, E val) {
-
-		return map.entrySet()
-				.stream()
-				.filter(entry -> entry.getValue().equals(val))
-				.map(entry -> entry.getKey())
-				.collect(Collectors.toSet());
-
-	}
-
-	/**
-	 * Get the detailed description of the resource by accessing the dbpedia-owl:abstract resource.
-	 * @param PersonURI the current person's extracted resource URI
-	 * @return Text description of the dbpedia-owl:abstract resource.
+	 * Get the text describing a batch of people with a single query. The dbpedia-owl:abstract, rdfs:comment and
+	 * dc:description resources of every person are all requested at once, each one being optional. People whose
+	 * text has been fetched less than PERSON_MAX_AGE milliseconds ago, by this crawler or any other one, are taken
+	 * from the person document store instead, and the text of the others is added to it.
+	 * @param people The resource URIs of the people.
+	 * @return The concatenated text found for every person, keyed by resource URI (empty if nothing was found).
+	 * People whose text could not be fetched because the query failed are left out, so that they are neither
+	 * indexed nor recorded as fetched, and are fetched again by the next crawl.
 	 */
-	public String getAbstract(String PersonURI){
-
-		// Query dynamically adjusts to accommodate to the new URI linked to the previous one.
-		String query = "PREFIX dbpedia-owl: <http://dbpedia.org/ontology/>\n" +
-				"SELECT ?abstract \n" +
-				"WHERE \n" +
-				"{ " + PersonURI +" dbpedia-owl:abstract ?abstract " +
-				"FILTER (langMatches(lang(?abstract),\"en\"))" +		
-				"}";
+	public Map<String, String> getPersonTexts(List<String> people){
 
-		ResultSet results = this.queryResults(query);
+		String[] fields = {"?abstract", "?comment", "?descr"};
+		Map<String, String[]> found = new HashMap<String, String[]>();
+		Map<String, String> personTexts = new HashMap<String, String>();
 
-		if(results != null){
-			for ( ; results.hasNext() ; )
-			{
-				QuerySolution soln = results.nextSolution();
+		long now = System.currentTimeMillis();
+		String values = "";
 
-				if(soln.get("?abstract") != null){
+		for(String person : people){
 
-					return soln.get("?abstract").toString();
+			PersonDocumentStore.StoredDocument stored = this.documentStore != null ? this.documentStore.get(person) : null;
 
-				}
+			if(stored != null && now - stored.fetched < this.PERSON_MAX_AGE){
+				personTexts.put(person, stored.getText());
+				continue;
 			}
-		}
 
-		System.out.println("Could not find \"dbpedia-owl:abstract\" details for " + PersonURI);
-		// If nothing has been found, return with null.
-		return null;
-	}
+			values += "<" + person + "> ";
+			found.put(person, new String[fields.length]);
+		}
 
-	/**
-	 * Get the detailed description of the resource by accessing the rdfs:comment resource.
-	 * @param PersonURI the current person's extracted resource URI
-	 * @return Text description of the rdfs:comment resource.
-	 */
-	public String getComment(String PersonURI){
+		if(found.isEmpty())
+			return personTexts;
 
-		String query = "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>\n" +
-				"SELECT ?comment \n" +
+		String query = "PREFIX dbpedia-owl: <http://dbpedia.org/ontology/>\n" +
+				"PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>\n" +
+				"PREFIX dc: <http://purl.org/dc/elements/1.1/>\n" +
+				"SELECT ?person ?abstract ?comment ?descr \n" +
 				"WHERE \n" +
-				"{ " + PersonURI +" rdfs:comment ?comment " +
-				"FILTER (langMatches(lang(?comment),\"en\"))" +		
+				"{ VALUES ?person { " + values + "}\n" +
+				"OPTIONAL { ?person dbpedia-owl:abstract ?abstract FILTER (langMatches(lang(?abstract),\"en\")) }\n" +
+				"OPTIONAL { ?person rdfs:comment ?comment FILTER (langMatches(lang(?comment),\"en\")) }\n" +
+				"OPTIONAL { ?person dc:description ?descr FILTER (langMatches(lang(?descr),\"en\")) }\n" +
 				"}";
 
 		ResultSet results = this.queryResults(query);
 
 		if(results != null){
-			for ( ; results.hasNext() ; )
-			{
-				QuerySolution soln = results.nextSolution();
+			while(results.hasNext()){
 
-				if(soln.get("?comment") != null){
+				QuerySolution soln = results.nextSolution();
+				String[] texts = found.get(soln.get("?person").toString());
 
-					return soln.get("?comment").toString();
+				if(texts == null)
+					continue;
 
+				// The first value found for every field is enough.
+				for(int i = 0; i < fields.length; i++){
+					if(texts[i] == null && soln.get(fields[i]) != null)
+						texts[i] = soln.get(fields[i]).toString();
 				}
 			}
+		} else {
+			System.out.println("Could not fetch details for a batch of " + found.size() + " people.");
+			return personTexts;
 		}
 
-		System.out.println("Could not find \"rdfs:comment\" details for " + PersonURI);
-		// If nothing has been found, return with null.
-		return null;
-
-	}
-
-	/**
-	 * Get the short description of the resource by accessing the rdfs:comment resource.
-	 * @param PersonURI the current person's extracted resource URI
-	 * @return Text description of the rdfs:comment resource.
-	 */
-	public String getDescription(String PersonURI){
-		String query = "PREFIX dc: <http://purl.org/dc/elements/1.1/>\n" +
-				"SELECT ?descr \n" +
-				"WHERE \n" +
-				"{ " + PersonURI +" dc:description ?descr " +
-				"FILTER (langMatches(lang(?descr),\"en\"))" +		
-				"}";
-
-		ResultSet results = this.queryResults(query);
-
-		if(results != null){
-			for ( ; results.hasNext() ; )
-			{
-				QuerySolution soln = results.nextSolution();
+		for(Map.Entry<String, String[]> entry : found.entrySet()){
 
-				if(soln.get("?descr") != null){
+			String[] texts = entry.getValue();
+			PersonDocumentStore.StoredDocument fetched = new PersonDocumentStore.StoredDocument(texts[0], texts[1], texts[2], now);
 
-					return soln.get("?descr").toString();
+			if(this.documentStore != null)
+				this.documentStore.put(entry.getKey(), texts[0], texts[1], texts[2], now);
 
-				}
-			}
+			personTexts.put(entry.getKey(), fetched.getText());
 		}
 
-		System.out.println("Could not find \"dc:description\" details for " + PersonURI);
-		// If nothing has been found, return with null.
-		return null;
-
+		return personTexts;
 	}
 
 	/**
@@ -1176,33 +2064,11 @@ public class PersonCrawler {
 	 */
 	public String[] prepopulateResults(String[] keyWords, boolean firstRun){
 
-		File f = new File("Generic_index.tsv");
-
-		try{
-
-			if(!f.exists()){ f.createNewFile(); }
-			else if(firstRun){ this.retrieveFromIndex(f); }
-
-		} catch (IOException ex) {
-
-			return null;
-
-		}
-
-		String[] refinedKeyWords = this.correctKeywordsAmbiguity(keyWords);
-
-		if(validWords.size() == 0){
-
-			return null;
-
-		} else {
+		this.openIndex();
 
-			System.out.println("Output of pre-computed results.");
-			// Reset valid words container
-			validWords = new ArrayList<String>();
+		System.out.println("Output of pre-computed results.");
 
-			return this.findMatchingURIs(refinedKeyWords);
-		}
+		return this.findMatchingURIs(this.correctKeywordsAmbiguity(keyWords));
 
 	}
 
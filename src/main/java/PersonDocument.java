@@ -0,0 +1,29 @@
+/**
+ * A person passing through the crawling pipeline: first only its resource URI, then the text fetched for it
+ * and finally the tokens extracted from that text.
+ */
+public class PersonDocument {
+
+	/**
+	 * The person's resource URI, without angle brackets.
+	 */
+	public final String uri;
+
+	/**
+	 * The text describing the person, once fetched.
+	 */
+	public String text;
+
+	/**
+	 * The tokens of the text, once tokenized.
+	 */
+	public String[] tokens;
+
+	public PersonDocument(String uri, String text){
+
+		this.uri = uri;
+		this.text = text;
+
+	}
+
+}
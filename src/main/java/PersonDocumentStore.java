@@ -0,0 +1,450 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The texts fetched for every person, shared by all the crawlers of the application so that a person reached
+ * from several countries is only fetched once. The abstract, comment and description of each person are kept
+ * along with the time they were fetched, in a log file that is only ever appended to. Only the position of the
+ * latest record of each person is held in memory; the texts are read back from the file when needed.
+ * Once most of the log file is taken by records replaced since, it is compacted: the latest records are copied to
+ * a new log file, which replaces the old one in a single rename. The log file is forced to disk when compacted and
+ * when the store is closed, at the latest when the application exits.
+ */
+public class PersonDocumentStore {
+
+	private static final String LOG_FILE = "documents.log";
+
+	/**
+	 * The log file is compacted once the records replaced since take more than this share of it...
+	 */
+	private static final double MAX_DEAD_RATIO = 0.5;
+
+	/**
+	 * ...and at least this many bytes, so that a small log file is not compacted over and over.
+	 */
+	private static final long MIN_COMPACTED_BYTES = 16L << 20;
+
+	/**
+	 * Stores already opened, keyed by directory, so that every crawler using the same directory shares one store.
+	 */
+	private static final Map<String, PersonDocumentStore> stores = new HashMap<String, PersonDocumentStore>();
+
+	private static boolean closedOnExit = false;
+
+	private final File directory;
+
+	/**
+	 * The log file, or null once the store is closed.
+	 */
+	private RandomAccessFile log;
+
+	/**
+	 * Position in the log file of the latest record of every person, keyed by resource URI.
+	 */
+	private Map<String, Long> positions = new HashMap<String, Long>();
+
+	/**
+	 * Number of bytes of the log file taken by the latest record of every person.
+	 */
+	private long liveBytes = 0;
+
+	/**
+	 * Get the store kept in the given directory, opening it if needed.
+	 * @param directory The directory holding the store, "none" for no store.
+	 * @return The store, or null if there is none or it cannot be opened.
+	 */
+	public static synchronized PersonDocumentStore getStore(String directory){
+
+		if(directory.equals("none"))
+			return null;
+
+		PersonDocumentStore store = stores.get(directory);
+
+		if(store == null || store.isClosed()){
+
+			try {
+
+				store = new PersonDocumentStore(new File(directory));
+
+				// Whatever has been written is forced to disk before the application exits.
+				if(!closedOnExit){
+					Runtime.getRuntime().addShutdownHook(new Thread("document-store-closer") {
+						public void run() {
+							closeAll();
+						}
+					});
+					closedOnExit = true;
+				}
+
+				stores.put(directory, store);
+
+			} catch (IOException e) {
+				System.out.println("Could not open the person document store in " + directory + ": " + e.getMessage());
+			}
+		}
+
+		return store;
+
+	}
+
+	/**
+	 * Close every store opened, e.g. when the application exits.
+	 */
+	public static void closeAll(){
+
+		List<PersonDocumentStore> opened;
+
+		synchronized(PersonDocumentStore.class){
+			opened = new ArrayList<PersonDocumentStore>(stores.values());
+			stores.clear();
+		}
+
+		for(PersonDocumentStore store : opened)
+			store.close();
+
+	}
+
+	/**
+	 * Open the store kept in the given directory, reading the positions of the records in its log file. A record
+	 * cut off by a crash at the end of the file is dropped, and the log file is compacted if needed.
+	 * @param directory The directory holding the store.
+	 * @throws IOException If the log file cannot be read.
+	 */
+	private PersonDocumentStore(File directory) throws IOException {
+
+		if(!directory.exists())
+			directory.mkdirs();
+
+		this.directory = directory;
+		this.log = new RandomAccessFile(new File(directory, LOG_FILE), "rw");
+
+		Map<String, Integer> recordLengths = new HashMap<String, Integer>();
+		long position = 0;
+		long length = this.log.length();
+
+		while(position + 4 <= length){
+
+			this.log.seek(position);
+			int recordLength = this.log.readInt();
+
+			if(recordLength < 0 || position + 4 + recordLength > length)
+				break;
+
+			String uri = this.log.readUTF();
+			Integer replaced = recordLengths.put(uri, 4 + recordLength);
+
+			this.positions.put(uri, position);
+			this.liveBytes += 4 + recordLength - (replaced != null ? replaced : 0);
+
+			position += 4 + recordLength;
+		}
+
+		if(position < length){
+			System.out.println("Dropping an incomplete record at the end of the person document store.");
+			this.log.setLength(position);
+		}
+
+		System.out.println("Person document store in " + directory + ": " + this.positions.size() + " people.");
+
+		this.compactIfNeeded();
+
+	}
+
+	/**
+	 * Force the log file to disk and close it. The store is empty from then on.
+	 */
+	public synchronized void close(){
+
+		if(this.log == null)
+			return;
+
+		try {
+			this.log.getFD().sync();
+			this.log.close();
+		} catch (IOException e) {
+			System.out.println("Could not close the person document store: " + e.getMessage());
+		}
+
+		this.log = null;
+		this.positions.clear();
+
+	}
+
+	private synchronized boolean isClosed(){
+		return this.log == null;
+	}
+
+	private void compactIfNeeded() throws IOException {
+
+		long deadBytes = this.log.length() - this.liveBytes;
+
+		if(deadBytes < MIN_COMPACTED_BYTES || deadBytes <= MAX_DEAD_RATIO * this.log.length())
+			return;
+
+		try {
+			this.compact();
+		} catch (IOException e) {
+			System.out.println("Could not compact the person document store: " + e.getMessage());
+		}
+
+	}
+
+	/**
+	 * Copy the latest record of every person to a new log file, in the order of the old one, and rename it over
+	 * the old one. A crash meanwhile leaves the old one as it was, and so does a failure: the store then carries
+	 * on with the old log file.
+	 */
+	private void compact() throws IOException {
+
+		long length = this.log.length();
+		List<Map.Entry<String, Long>> records = new ArrayList<Map.Entry<String, Long>>(this.positions.entrySet());
+
+		Collections.sort(records, new Comparator<Map.Entry<String, Long>>() {
+			public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+				return Long.compare(a.getValue(), b.getValue());
+			}
+		});
+
+		File logFile = new File(this.directory, LOG_FILE);
+		File temp = new File(this.directory, LOG_FILE + ".tmp");
+		RandomAccessFile compacted = new RandomAccessFile(temp, "rw");
+		Map<String, Long> positions = new HashMap<String, Long>(this.positions.size() * 2);
+
+		boolean written = false;
+
+		try {
+
+			compacted.setLength(0);
+
+			for(Map.Entry<String, Long> record : records){
+
+				this.log.seek(record.getValue());
+
+				byte[] bytes = new byte[4 + this.log.readInt()];
+
+				this.log.seek(record.getValue());
+				this.log.readFully(bytes);
+
+				positions.put(record.getKey(), compacted.getFilePointer());
+				compacted.write(bytes);
+			}
+
+			compacted.getFD().sync();
+			written = true;
+
+		} finally {
+			compacted.close();
+
+			if(!written)
+				temp.delete();
+		}
+
+		// The old log file is closed first, as it cannot be replaced while open on some systems. Until it is
+		// opened again, the store is closed, so that it is opened anew by getStore if that fails.
+		this.log.close();
+		this.log = null;
+
+		try {
+			Files.move(temp.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			temp.delete();
+			this.log = new RandomAccessFile(logFile, "rw");
+			throw e;
+		}
+
+		BinaryIndexFile.syncDirectory(this.directory);
+
+		this.positions = positions;
+		this.log = new RandomAccessFile(logFile, "rw");
+		this.liveBytes = this.log.length();
+
+		System.out.println("Compacted the person document store from " + length / 1048576 + " MB to " 
+				+ this.liveBytes / 1048576 + " MB.");
+
+	}
+
+	/**
+	 * @param uri The resource URI of a person.
+	 * @return The texts last fetched for the person, or null if they have never been fetched.
+	 */
+	public synchronized StoredDocument get(String uri){
+
+		Long position = this.positions.get(uri);
+
+		if(position == null || this.log == null)
+			return null;
+
+		try {
+
+			this.log.seek(position);
+
+			byte[] record = new byte[this.log.readInt()];
+			this.log.readFully(record);
+
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+
+			in.readUTF();
+
+			long fetched = in.readLong();
+
+			return new StoredDocument(readText(in), readText(in), readText(in), fetched);
+
+		} catch (IOException e) {
+
+			System.out.println("Could not read the stored texts of " + uri + ": " + e.getMessage());
+			return null;
+
+		}
+
+	}
+
+	/**
+	 * Store the texts just fetched for a person. Any of them may be null if the person does not have it.
+	 * @param uri The resource URI of the person.
+	 * @param abstractText The dbpedia-owl:abstract of the person.
+	 * @param comment The rdfs:comment of the person.
+	 * @param description The dc:description of the person.
+	 * @param fetched When the texts were fetched.
+	 */
+	public synchronized void put(String uri, String abstractText, String comment, String description, long fetched){
+
+		if(this.log == null)
+			return;
+
+		try {
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+
+			out.writeUTF(uri);
+			out.writeLong(fetched);
+			writeText(out, abstractText);
+			writeText(out, comment);
+			writeText(out, description);
+			out.close();
+
+			long position = this.log.length();
+
+			// The whole record is written at once so that a crash can only cut off its end.
+			ByteArrayOutputStream record = new ByteArrayOutputStream(bytes.size() + 4);
+			DataOutputStream recordOut = new DataOutputStream(record);
+
+			recordOut.writeInt(bytes.size());
+			bytes.writeTo(recordOut);
+			recordOut.close();
+
+			this.log.seek(position);
+			this.log.write(record.toByteArray());
+
+			Long replaced = this.positions.put(uri, position);
+
+			this.liveBytes += record.size();
+
+			if(replaced != null){
+				this.log.seek(replaced);
+				this.liveBytes -= 4 + this.log.readInt();
+			}
+
+			this.compactIfNeeded();
+
+		} catch (IOException e) {
+			System.out.println("Could not store the texts of " + uri + ": " + e.getMessage());
+		}
+
+	}
+
+	/**
+	 * @return Number of people stored.
+	 */
+	public synchronized int size(){
+		return this.positions.size();
+	}
+
+	/**
+	 * Texts are written as their length in UTF-8 bytes followed by the bytes, since abstracts may be too long
+	 * for writeUTF. A missing text is written as a length of -1.
+	 */
+	private static void writeText(DataOutputStream out, String text) throws IOException {
+
+		if(text == null){
+			out.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+		out.writeInt(bytes.length);
+		out.write(bytes);
+
+	}
+
+	private static String readText(DataInputStream in) throws IOException {
+
+		int length = in.readInt();
+
+		if(length < 0)
+			return null;
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+
+	}
+
+	/**
+	 * The texts fetched for a person.
+	 */
+	public static class StoredDocument {
+
+		public final String abstractText;
+		public final String comment;
+		public final String description;
+
+		/**
+		 * When the texts were fetched.
+		 */
+		public final long fetched;
+
+		public StoredDocument(String abstractText, String comment, String description, long fetched){
+
+			this.abstractText = abstractText;
+			this.comment = comment;
+			this.description = description;
+			this.fetched = fetched;
+
+		}
+
+		/**
+		 * @return All the texts of the person, one after the other, as they are tokenized.
+		 */
+		public String getText(){
+
+			String text = "";
+
+			for(String field : new String[] {this.abstractText, this.comment, this.description}){
+				if(field != null)
+					text += " " + field;
+			}
+
+			return text.trim();
+
+		}
+
+	}
+
+}
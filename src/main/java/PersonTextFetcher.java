@@ -0,0 +1,115 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The text fetching stage of the crawling pipeline. Collects the people found while crawling into batches and
+ * fetches the text describing every person of a batch with a single query instead of asking for the abstract,
+ * comment and description of each person separately. The fetched text is passed on to the tokenizing stage.
+ */
+public class PersonTextFetcher implements Runnable {
+
+	/**
+	 * How long to wait for more people before fetching an incomplete batch.
+	 */
+	private static final long LINGER_MS = 100;
+
+	/**
+	 * The crawler used to query the endpoint.
+	 */
+	private PersonCrawler personCrawler;
+
+	/**
+	 * Number of people whose text is fetched with a single query.
+	 */
+	private int batchSize;
+
+	/**
+	 * People found by the discovery stage.
+	 */
+	private BlockingQueue<String> people;
+
+	/**
+	 * People with their text, waiting to be tokenized.
+	 */
+	private BlockingQueue<PersonDocument> documents;
+
+	/**
+	 * @param personCrawler The crawler used to query the endpoint.
+	 * @param batchSize Number of people to fetch text for with every query.
+	 * @param people Queue of the people found, ended by CrawlPipeline.END_OF_PEOPLE.
+	 * @param documents Queue the people are passed on to once their text has been fetched.
+	 */
+	public PersonTextFetcher(PersonCrawler personCrawler, int batchSize, BlockingQueue<String> people, BlockingQueue<PersonDocument> documents){
+
+		this.personCrawler = personCrawler;
+		this.batchSize = Math.max(1, batchSize);
+		this.people = people;
+		this.documents = documents;
+
+	}
+
+	public void run(){
+
+		try {
+
+			boolean ended = false;
+
+			while(!ended){
+
+				List<String> batch = new ArrayList<String>();
+				String person = this.people.take();
+
+				// Fill up the batch with whoever arrives shortly after the first person.
+				long deadline = System.currentTimeMillis() + LINGER_MS;
+
+				while(person != null){
+
+					if(person == CrawlPipeline.END_OF_PEOPLE){
+						ended = true;
+						break;
+					}
+
+					batch.add(person);
+
+					if(batch.size() >= this.batchSize)
+						break;
+
+					person = this.people.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				}
+
+				if(!batch.isEmpty())
+					this.fetch(batch);
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+	/**
+	 * Fetch the text of a batch of people and pass them on to be tokenized. People whose text could not be
+	 * fetched are not passed on: their indexed text, if any, is kept as it was.
+	 * @param batch The resource URIs of the people.
+	 * @throws InterruptedException If interrupted while the tokenizing stage is full.
+	 */
+	private void fetch(List<String> batch) throws InterruptedException {
+
+		Map<String, String> texts = this.personCrawler.getPersonTexts(batch);
+
+		for(String person : batch){
+
+			if(!texts.containsKey(person))
+				continue;
+
+			System.out.println("Logging data for: " + person);
+			this.documents.put(new PersonDocument(person, texts.get(person)));
+
+		}
+
+	}
+
+}
@@ -0,0 +1,830 @@
+import java.util.Arrays;
+
+/**
+ * An immutable, compact set of document numbers, as found in the postings of a word token. Document numbers are
+ * split into blocks of 65536 by their upper 16 bits, and every block stores the lower 16 bits either as a sorted
+ * array, when the block holds few documents, or as a bitmap, when it holds more than 4096 of them (the same
+ * layout as Roaring bitmaps). A posting costs at most two bytes, and intersections run over contiguous arrays
+ * instead of chasing boxed integers around the heap. The postings of a word token also hold the number of times it
+ * appears in every document, two more bytes a posting, unless it appears once in all of them, and may hold the
+ * positions of the word token in every document, for phrases: for every document, the number of positions, 0 if
+ * they are unknown, and the gap from the previous position to every one of them, as variable length integers (7
+ * bits a byte). The postings combined by intersect, union and andNot hold documents only.
+ */
+public final class Postings {
+
+	/**
+	 * Largest number of documents in a block stored as an array. Above it a bitmap takes less space.
+	 */
+	private static final int ARRAY_LIMIT = 4096;
+
+	private static final int BITMAP_WORDS = 1024;
+
+	/**
+	 * How many times larger than the other an array block has to be for an intersection to gallop through it.
+	 */
+	private static final int GALLOP_RATIO = 16;
+
+	/**
+	 * Largest frequency held. Beyond it a frequency makes no difference to a score anyway.
+	 */
+	private static final int FREQUENCY_LIMIT = 0xFFFF;
+
+	/**
+	 * Document number of a cursor past the last document.
+	 */
+	public static final int NO_MORE_DOCUMENTS = Integer.MAX_VALUE;
+
+	public static final Postings EMPTY = new Postings(new int[0], new Object[0], new int[0], 0, null, null, null);
+
+	/**
+	 * Upper 16 bits of the documents of every block, in ascending order.
+	 */
+	private final int[] keys;
+
+	/**
+	 * Lower 16 bits of the documents of every block, either as a sorted char[] or as a long[] bitmap.
+	 */
+	private final Object[] blocks;
+
+	/**
+	 * Number of documents in every block.
+	 */
+	private final int[] cardinalities;
+
+	private final int size;
+
+	/**
+	 * Frequency of every document, in ascending order of the documents, or null if every frequency is 1.
+	 */
+	private final char[] frequencies;
+
+	/**
+	 * Positions of the word token in every document, in ascending order of the documents, or null if unknown.
+	 */
+	private final byte[] positions;
+
+	/**
+	 * Where the positions of every document start, in ascending order of the documents.
+	 */
+	private final int[] positionStarts;
+
+	private Postings(int[] keys, Object[] blocks, int[] cardinalities, int size, char[] frequencies, byte[] positions,
+			int[] positionStarts){
+
+		this.keys = keys;
+		this.blocks = blocks;
+		this.cardinalities = cardinalities;
+		this.size = size;
+		this.frequencies = frequencies;
+		this.positions = positions;
+		this.positionStarts = positionStarts;
+
+	}
+
+	/**
+	 * @param documents Document numbers, sorted in ascending order with no duplicates.
+	 * @param length Number of document numbers to take from the array.
+	 * @return The postings holding them, each with a frequency of 1.
+	 */
+	public static Postings of(int[] documents, int length){
+		return of(documents, null, length);
+	}
+
+	/**
+	 * @param documents Document numbers, sorted in ascending order with no duplicates.
+	 * @param frequencies Number of times the word token appears in each document, or null if once in every one.
+	 * @param length Number of document numbers to take from the arrays.
+	 * @return The postings holding them.
+	 */
+	public static Postings of(int[] documents, int[] frequencies, int length){
+		return of(documents, frequencies, (byte[])null, length);
+	}
+
+	/**
+	 * @param documents Document numbers, sorted in ascending order with no duplicates.
+	 * @param frequencies Number of times the word token appears in each document, or null if once in every one.
+	 * @param positions Positions of the word token in each document, in ascending order, null for a document of
+	 * which they are unknown, or null if they are unknown for every one.
+	 * @param length Number of document numbers to take from the arrays.
+	 * @return The postings holding them.
+	 */
+	public static Postings of(int[] documents, int[] frequencies, int[][] positions, int length){
+
+		byte[] stream = null;
+
+		for(int i = 0; positions != null && i < length && stream == null; i++){
+			if(positions[i] != null)
+				stream = new byte[16];
+		}
+
+		int offset = 0;
+
+		for(int i = 0; stream != null && i < length; i++){
+
+			int count = positions[i] == null ? 0 : Math.min(positions[i].length, FREQUENCY_LIMIT);
+			int previous = 0;
+
+			// At most 5 bytes a number.
+			if(stream.length < offset + 5 * (count + 1))
+				stream = Arrays.copyOf(stream, Math.max(2 * stream.length, offset + 5 * (count + 1)));
+
+			offset = writeVarInt(stream, offset, count);
+
+			for(int p = 0; p < count; p++){
+				offset = writeVarInt(stream, offset, positions[i][p] - previous);
+				previous = positions[i][p];
+			}
+		}
+
+		return of(documents, frequencies, stream == null ? null : Arrays.copyOf(stream, offset), length);
+
+	}
+
+	/**
+	 * @param documents Document numbers, sorted in ascending order with no duplicates.
+	 * @param frequencies Number of times the word token appears in each document, or null if once in every one.
+	 * @param positions Positions of the word token in each document, encoded as in an index file, or null if
+	 * unknown.
+	 * @param length Number of document numbers to take from the arrays.
+	 * @return The postings holding them.
+	 */
+	public static Postings of(int[] documents, int[] frequencies, byte[] positions, int length){
+
+		if(length == 0)
+			return EMPTY;
+
+		char[] blockFrequencies = null;
+
+		for(int i = 0; frequencies != null && i < length; i++){
+
+			if(frequencies[i] != 1 && blockFrequencies == null){
+
+				blockFrequencies = new char[length];
+				Arrays.fill(blockFrequencies, (char)1);
+			}
+
+			if(blockFrequencies != null)
+				blockFrequencies[i] = (char)Math.max(1, Math.min(frequencies[i], FREQUENCY_LIMIT));
+		}
+
+		int blockCount = 1;
+
+		for(int i = 1; i < length; i++){
+			if((documents[i] >>> 16) != (documents[i - 1] >>> 16))
+				blockCount++;
+		}
+
+		int[] keys = new int[blockCount];
+		Object[] blocks = new Object[blockCount];
+		int[] cardinalities = new int[blockCount];
+
+		int start = 0;
+
+		for(int block = 0; block < blockCount; block++){
+
+			int key = documents[start] >>> 16;
+			int end = start;
+
+			while(end < length && (documents[end] >>> 16) == key)
+				end++;
+
+			keys[block] = key;
+			cardinalities[block] = end - start;
+
+			if(end - start <= ARRAY_LIMIT){
+
+				char[] values = new char[end - start];
+
+				for(int i = start; i < end; i++)
+					values[i - start] = (char)documents[i];
+
+				blocks[block] = values;
+
+			} else {
+
+				long[] bitmap = new long[BITMAP_WORDS];
+
+				for(int i = start; i < end; i++)
+					bitmap[(documents[i] & 0xFFFF) >>> 6] |= 1L << documents[i];
+
+				blocks[block] = bitmap;
+			}
+
+			start = end;
+		}
+
+		int[] positionStarts = null;
+
+		if(positions != null){
+
+			positionStarts = new int[length];
+			int offset = 0;
+
+			for(int i = 0; i < length; i++){
+
+				positionStarts[i] = offset;
+
+				int count = 0;
+				int shift = 0;
+				byte b;
+
+				do {
+					b = positions[offset++];
+					count |= (b & 0x7F) << shift;
+					shift += 7;
+				} while(b < 0);
+
+				for(int p = 0; p < count; p++){
+					while(positions[offset++] < 0);
+				}
+			}
+		}
+
+		return new Postings(keys, blocks, cardinalities, length, blockFrequencies, positions, positionStarts);
+
+	}
+
+	/**
+	 * @return Number of documents.
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * @param document A document number.
+	 * @return True if the document is in the postings.
+	 */
+	public boolean contains(int document){
+
+		int block = Arrays.binarySearch(this.keys, document >>> 16);
+
+		if(block < 0)
+			return false;
+
+		Object values = this.blocks[block];
+		char low = (char)document;
+
+		if(values instanceof char[])
+			return Arrays.binarySearch((char[])values, low) >= 0;
+
+		return (((long[])values)[low >>> 6] & (1L << low)) != 0;
+
+	}
+
+	/**
+	 * @return The document numbers, in ascending order.
+	 */
+	public int[] toArray(){
+
+		int[] documents = new int[this.size];
+		int length = 0;
+
+		for(int block = 0; block < this.keys.length; block++)
+			length = this.appendBlock(block, documents, length);
+
+		return documents;
+
+	}
+
+	/**
+	 * @return The frequency of every document, in the order of toArray().
+	 */
+	public int[] toFrequencyArray(){
+
+		int[] documentFrequencies = new int[this.size];
+
+		for(int i = 0; i < this.size; i++)
+			documentFrequencies[i] = this.frequencies == null ? 1 : this.frequencies[i];
+
+		return documentFrequencies;
+
+	}
+
+	/**
+	 * @return True if the postings hold the positions of the word token in the documents.
+	 */
+	public boolean hasPositions(){
+		return this.positions != null;
+	}
+
+	/**
+	 * @return The positions of the word token in every document, in the order of toArray(), null for a document
+	 * of which they are unknown, or null if the postings hold no positions.
+	 */
+	public int[][] toPositionArrays(){
+
+		if(this.positions == null)
+			return null;
+
+		int[][] documentPositions = new int[this.size][];
+
+		for(int i = 0; i < this.size; i++)
+			documentPositions[i] = readPositions(this.positions, this.positionStarts[i]);
+
+		return documentPositions;
+
+	}
+
+	/**
+	 * @return A cursor over the documents, before the first one.
+	 */
+	public Cursor cursor(){
+		return new Cursor();
+	}
+
+	/**
+	 * @param other Other postings.
+	 * @return The documents found in both.
+	 */
+	public Postings intersect(Postings other){
+
+		if(this.size == 0 || other.size == 0)
+			return EMPTY;
+
+		int[] documents = new int[Math.min(this.size, other.size)];
+		int length = 0;
+		int i = 0;
+		int j = 0;
+
+		while(i < this.keys.length && j < other.keys.length){
+
+			if(this.keys[i] < other.keys[j]){
+				i++;
+			} else if(this.keys[i] > other.keys[j]){
+				j++;
+			} else {
+				length = intersectBlocks(this.keys[i] << 16, this.blocks[i], this.cardinalities[i],
+						other.blocks[j], other.cardinalities[j], documents, length);
+				i++;
+				j++;
+			}
+		}
+
+		return of(documents, length);
+
+	}
+
+	/**
+	 * @param other Other postings.
+	 * @return The documents found in either.
+	 */
+	public Postings union(Postings other){
+
+		int[] left = this.toArray();
+		int[] right = other.toArray();
+		int[] documents = new int[left.length + right.length];
+		int length = 0;
+		int i = 0;
+		int j = 0;
+
+		while(i < left.length || j < right.length){
+
+			if(j == right.length || (i < left.length && left[i] < right[j]))
+				documents[length++] = left[i++];
+			else if(i == left.length || right[j] < left[i])
+				documents[length++] = right[j++];
+			else {
+				documents[length++] = left[i++];
+				j++;
+			}
+		}
+
+		return of(documents, length);
+
+	}
+
+	/**
+	 * @param other Other postings.
+	 * @return The documents found in these postings but not in the other ones.
+	 */
+	public Postings andNot(Postings other){
+
+		int[] documents = new int[this.size];
+		int length = 0;
+
+		for(int document : this.toArray()){
+			if(!other.contains(document))
+				documents[length++] = document;
+		}
+
+		return of(documents, length);
+
+	}
+
+	/**
+	 * @param other Other postings, e.g. the documents of a facet.
+	 * @return The documents of these postings also found in the other ones, along with their frequencies and
+	 * positions in these postings.
+	 */
+	public Postings retain(Postings other){
+
+		if(this.size == 0 || other.size == 0)
+			return EMPTY;
+
+		int[] documents = new int[Math.min(this.size, other.size)];
+		int[] documentFrequencies = this.frequencies == null ? null : new int[documents.length];
+		int[][] documentPositions = this.positions == null ? null : new int[documents.length][];
+		int length = 0;
+		Cursor mine = this.cursor();
+		Cursor theirs = other.cursor();
+
+		// Each cursor skips ahead to the document of the other, so that the larger postings are mostly skipped.
+		for(int document = mine.next(); document != NO_MORE_DOCUMENTS; ){
+
+			int found = theirs.advance(document);
+
+			if(found != document){
+				document = mine.advance(found);
+				continue;
+			}
+
+			documents[length] = document;
+
+			if(documentFrequencies != null)
+				documentFrequencies[length] = mine.frequency();
+
+			if(documentPositions != null)
+				documentPositions[length] = mine.positions();
+
+			length++;
+			document = mine.next();
+		}
+
+		return of(documents, documentFrequencies, documentPositions, length);
+
+	}
+
+	/**
+	 * @return Approximate number of bytes used by the postings.
+	 */
+	public long getMemoryFootprint(){
+
+		long bytes = 16 + 8L * this.keys.length;
+
+		for(Object values : this.blocks)
+			bytes += 16 + (values instanceof char[] ? 2L * ((char[])values).length : 8L * BITMAP_WORDS);
+
+		if(this.frequencies != null)
+			bytes += 16 + 2L * this.frequencies.length;
+
+		if(this.positions != null)
+			bytes += 32 + this.positions.length + 4L * this.positionStarts.length;
+
+		return bytes;
+
+	}
+
+	/**
+	 * Append the documents of a block to an array.
+	 * @return The new length of the array.
+	 */
+	private int appendBlock(int block, int[] documents, int length){
+
+		int high = this.keys[block] << 16;
+		Object values = this.blocks[block];
+
+		if(values instanceof char[]){
+
+			for(char low : (char[])values)
+				documents[length++] = high | low;
+
+		} else {
+
+			long[] bitmap = (long[])values;
+
+			for(int word = 0; word < BITMAP_WORDS; word++){
+
+				long bits = bitmap[word];
+
+				while(bits != 0){
+					documents[length++] = high | (word << 6) | Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+				}
+			}
+		}
+
+		return length;
+
+	}
+
+	/**
+	 * Append the documents found in two blocks with the same upper bits to an array.
+	 * @return The new length of the array.
+	 */
+	private static int intersectBlocks(int high, Object left, int leftSize, Object right, int rightSize, int[] documents, int length){
+
+		if(left instanceof long[] && right instanceof long[]){
+
+			long[] leftBitmap = (long[])left;
+			long[] rightBitmap = (long[])right;
+
+			for(int word = 0; word < BITMAP_WORDS; word++){
+
+				long bits = leftBitmap[word] & rightBitmap[word];
+
+				while(bits != 0){
+					documents[length++] = high | (word << 6) | Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+				}
+			}
+
+			return length;
+		}
+
+		// Walk the smaller block and look its documents up in the other one.
+		if(left instanceof long[] || (right instanceof char[] && rightSize < leftSize)){
+			Object swap = left;
+			left = right;
+			right = swap;
+		}
+
+		char[] values = (char[])left;
+
+		if(right instanceof long[]){
+
+			long[] bitmap = (long[])right;
+
+			for(char low : values){
+				if((bitmap[low >>> 6] & (1L << low)) != 0)
+					documents[length++] = high | low;
+			}
+
+		} else {
+
+			char[] others = (char[])right;
+			int i = 0;
+			int j = 0;
+
+			// Much larger blocks are searched by galloping past the documents between two of the smaller one.
+			if(others.length > GALLOP_RATIO * values.length){
+
+				for(char low : values){
+
+					j = gallop(others, j, low);
+
+					if(j == others.length)
+						break;
+
+					if(others[j] == low)
+						documents[length++] = high | low;
+				}
+
+				return length;
+			}
+
+			while(i < values.length && j < others.length){
+
+				if(values[i] < others[j])
+					i++;
+				else if(values[i] > others[j])
+					j++;
+				else {
+					documents[length++] = high | values[i];
+					i++;
+					j++;
+				}
+			}
+		}
+
+		return length;
+
+	}
+
+	/**
+	 * Find a value in a sorted array by doubling steps from a position, then a binary search of the last step.
+	 * @return The position of the first value from the given position that is not smaller than the one searched
+	 * for, or the length of the array if there is none.
+	 */
+	private static int gallop(char[] values, int from, char value){
+
+		int low = from;
+		int high = from;
+		int step = 1;
+
+		while(high < values.length && values[high] < value){
+			low = high + 1;
+			high = from + step;
+			step <<= 1;
+		}
+
+		high = Math.min(high, values.length);
+
+		while(low < high){
+
+			int middle = (low + high) >>> 1;
+
+			if(values[middle] < value)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+
+		return low;
+
+	}
+
+
+	/**
+	 * Walks through the documents in ascending order, skipping ahead to a document without visiting the ones
+	 * before it: a whole block by its upper bits, then by galloping through an array or scanning a bitmap.
+	 */
+	public final class Cursor {
+
+		private int document = -1;
+		private int block = 0;
+
+		/**
+		 * Position of the document in its block: its index in an array, or its lower 16 bits in a bitmap.
+		 */
+		private int index = -1;
+
+		/**
+		 * Number of documents before the current one, the position of its frequency.
+		 */
+		private int rank = -1;
+
+		/**
+		 * Number of documents before every block.
+		 */
+		private final int[] starts = new int[Postings.this.keys.length];
+
+		private Cursor(){
+
+			for(int block = 1; block < this.starts.length; block++)
+				this.starts[block] = this.starts[block - 1] + Postings.this.cardinalities[block - 1];
+
+		}
+
+		/**
+		 * @return The current document, -1 before the first one and NO_MORE_DOCUMENTS after the last one.
+		 */
+		public int document(){
+			return this.document;
+		}
+
+		/**
+		 * @return Number of times the word token appears in the current document.
+		 */
+		public int frequency(){
+			return Postings.this.frequencies == null ? 1 : Postings.this.frequencies[this.rank];
+		}
+
+		/**
+		 * @return The positions of the word token in the current document, in ascending order, or null if they
+		 * are unknown.
+		 */
+		public int[] positions(){
+			return Postings.this.positions == null ? null : readPositions(Postings.this.positions, Postings.this.positionStarts[this.rank]);
+		}
+
+		/**
+		 * @return The next document, or NO_MORE_DOCUMENTS if there is none.
+		 */
+		public int next(){
+			return this.document == NO_MORE_DOCUMENTS ? NO_MORE_DOCUMENTS : this.advance(this.document + 1);
+		}
+
+		/**
+		 * @param target A document number.
+		 * @return The first document from the target on, or NO_MORE_DOCUMENTS if there is none. The cursor
+		 * does not move if it is on the target or beyond it already.
+		 */
+		public int advance(int target){
+
+			if(target <= this.document)
+				return this.document;
+
+			int[] keys = Postings.this.keys;
+			int key = target >>> 16;
+
+			while(this.block < keys.length && keys[this.block] < key){
+				this.block++;
+				this.index = -1;
+			}
+
+			for(; this.block < keys.length; this.block++, this.index = -1){
+
+				int low = keys[this.block] == key ? target & 0xFFFF : 0;
+				Object values = Postings.this.blocks[this.block];
+
+				if(values instanceof char[]){
+
+					char[] array = (char[])values;
+					int i = gallop(array, Math.max(this.index, 0), (char)low);
+
+					if(i < array.length){
+						this.index = i;
+						this.rank = this.starts[this.block] + i;
+						return this.document = keys[this.block] << 16 | array[i];
+					}
+
+				} else {
+
+					long[] bitmap = (long[])values;
+					int word = low >>> 6;
+					long bits = bitmap[word] & (-1L << low);
+
+					while(bits == 0 && ++word < BITMAP_WORDS)
+						bits = bitmap[word];
+
+					if(word < BITMAP_WORDS){
+
+						int bit = word << 6 | Long.numberOfTrailingZeros(bits);
+
+						// Counted on from the current document when the cursor stays in the same bitmap.
+						this.rank = this.index < 0 ? this.starts[this.block] + countBits(bitmap, 0, bit)
+								: this.rank + countBits(bitmap, this.index, bit);
+						this.index = bit;
+						return this.document = keys[this.block] << 16 | bit;
+					}
+				}
+			}
+
+			return this.document = NO_MORE_DOCUMENTS;
+
+		}
+
+	}
+
+	/**
+	 * @return Number of bits set in a bitmap from a position, included, to another, excluded.
+	 */
+	private static int countBits(long[] bitmap, int from, int to){
+
+		if(from >= to)
+			return 0;
+
+		int first = from >>> 6;
+		int last = (to - 1) >>> 6;
+
+		if(first == last)
+			return Long.bitCount(bitmap[first] & (-1L << from) & (-1L >>> (63 - ((to - 1) & 63))));
+
+		int count = Long.bitCount(bitmap[first] & (-1L << from));
+
+		for(int word = first + 1; word < last; word++)
+			count += Long.bitCount(bitmap[word]);
+
+		return count + Long.bitCount(bitmap[last] & (-1L >>> (63 - ((to - 1) & 63))));
+
+	}
+
+	/**
+	 * @return The positions of a document starting at an offset of the encoded positions, or null if unknown.
+	 */
+	private static int[] readPositions(byte[] stream, int offset){
+
+		int count = 0;
+		int shift = 0;
+		byte b;
+
+		do {
+			b = stream[offset++];
+			count |= (b & 0x7F) << shift;
+			shift += 7;
+		} while(b < 0);
+
+		if(count == 0)
+			return null;
+
+		int[] values = new int[count];
+		int position = 0;
+
+		for(int i = 0; i < count; i++){
+
+			int gap = 0;
+			shift = 0;
+
+			do {
+				b = stream[offset++];
+				gap |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0);
+
+			position += gap;
+			values[i] = position;
+		}
+
+		return values;
+
+	}
+
+	/**
+	 * @return The offset after the number written.
+	 */
+	private static int writeVarInt(byte[] stream, int offset, int value){
+
+		while((value & ~0x7F) != 0){
+			stream[offset++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		stream[offset++] = (byte)value;
+
+		return offset;
+
+	}
+
+}
@@ -0,0 +1,233 @@
+import java.util.Arrays;
+
+/**
+ * Collects the document numbers of a word token while indexing, along with the number of times it appears in each
+ * of them and the positions it appears at, in growable arrays. Documents are
+ * normally added in ascending order, since they are numbered as they are indexed, so adding one is an append;
+ * documents added out of order are sorted in on the next read. The compact, immutable form used to answer
+ * queries is built on demand, and replaces the array until the postings change again, so that an index that is
+ * only being queried holds its postings in compact form only.
+ */
+public class PostingsBuilder {
+
+	/**
+	 * The documents, or null while the postings are only held in compact form.
+	 */
+	private int[] documents = new int[4];
+	private int[] frequencies = new int[4];
+	private int[][] positions = new int[4][];
+	private int size = 0;
+
+	/**
+	 * Largest frequency of any document added. Documents removed since may have had it.
+	 */
+	private int maxFrequency = 0;
+
+	/**
+	 * False if documents have been appended out of order since the array was last sorted.
+	 */
+	private boolean sorted = true;
+
+	/**
+	 * The compact form of the postings, or null if it has to be built again.
+	 */
+	private Postings built = null;
+
+	public PostingsBuilder(){ }
+
+	/**
+	 * @param postings Postings to start from.
+	 */
+	public PostingsBuilder(Postings postings){
+
+		this.documents = null;
+		this.frequencies = null;
+		this.positions = null;
+		this.size = postings.size();
+		this.built = postings;
+
+		for(int frequency : postings.toFrequencyArray())
+			this.maxFrequency = Math.max(this.maxFrequency, frequency);
+
+	}
+
+	/**
+	 * @param document A document number to add, with a frequency of 1.
+	 */
+	public void add(int document){
+		this.add(document, 1);
+	}
+
+	/**
+	 * @param document A document number to add. A document added twice keeps the larger of its frequencies.
+	 * @param frequency Number of times the word token appears in the document.
+	 */
+	public void add(int document, int frequency){
+		this.add(document, frequency, null);
+	}
+
+	/**
+	 * @param document A document number to add. A document added twice keeps the larger of its frequencies, and
+	 * the positions that go with it.
+	 * @param frequency Number of times the word token appears in the document.
+	 * @param positions The positions the word token appears at in the document, in ascending order, or null if
+	 * unknown.
+	 */
+	public void add(int document, int frequency, int[] positions){
+
+		this.thaw();
+		this.maxFrequency = Math.max(this.maxFrequency, frequency);
+
+		if(this.size > 0 && this.documents[this.size - 1] == document){
+
+			if(frequency > this.frequencies[this.size - 1]){
+				this.frequencies[this.size - 1] = frequency;
+				this.positions[this.size - 1] = positions;
+			}
+
+			this.built = null;
+			return;
+		}
+
+		if(this.size == this.documents.length){
+			this.documents = Arrays.copyOf(this.documents, this.size + (this.size >> 1) + 1);
+			this.frequencies = Arrays.copyOf(this.frequencies, this.documents.length);
+			this.positions = Arrays.copyOf(this.positions, this.documents.length);
+		}
+
+		if(this.size > 0 && this.documents[this.size - 1] > document)
+			this.sorted = false;
+
+		this.frequencies[this.size] = frequency;
+		this.positions[this.size] = positions;
+		this.documents[this.size++] = document;
+		this.built = null;
+
+	}
+
+	/**
+	 * @param document A document number to remove.
+	 * @return True if the document was in the postings.
+	 */
+	public boolean remove(int document){
+
+		if(this.documents == null && !this.built.contains(document))
+			return false;
+
+		this.thaw();
+		this.normalise();
+
+		int position = Arrays.binarySearch(this.documents, 0, this.size, document);
+
+		if(position < 0)
+			return false;
+
+		System.arraycopy(this.documents, position + 1, this.documents, position, this.size - position - 1);
+		System.arraycopy(this.frequencies, position + 1, this.frequencies, position, this.size - position - 1);
+		System.arraycopy(this.positions, position + 1, this.positions, position, this.size - position - 1);
+		this.positions[--this.size] = null;
+		this.built = null;
+
+		return true;
+
+	}
+
+	/**
+	 * @return Number of documents.
+	 */
+	public int size(){
+
+		this.normalise();
+
+		return this.size;
+
+	}
+
+	public boolean isEmpty(){
+		return this.size == 0;
+	}
+
+	/**
+	 * @return No less than the largest frequency of any document.
+	 */
+	public int getMaxFrequency(){
+		return this.maxFrequency;
+	}
+
+	/**
+	 * @return The postings in their compact, immutable form.
+	 */
+	public Postings build(){
+
+		if(this.built == null){
+			this.normalise();
+			this.built = Postings.of(this.documents, this.frequencies, this.positions, this.size);
+			this.documents = null;
+			this.frequencies = null;
+			this.positions = null;
+		}
+
+		return this.built;
+
+	}
+
+	/**
+	 * Go back to the array once the postings change.
+	 */
+	private void thaw(){
+
+		if(this.documents == null){
+			this.documents = this.built.toArray();
+			this.frequencies = this.built.toFrequencyArray();
+			this.positions = this.built.hasPositions() ? this.built.toPositionArrays() : new int[this.size][];
+		}
+
+	}
+
+	/**
+	 * Sort the documents appended out of order and drop duplicates, keeping their larger frequency.
+	 */
+	private void normalise(){
+
+		if(this.sorted || this.documents == null)
+			return;
+
+		// Sorted along with their positions in the arrays, as document number and position in a single long.
+		long[] pairs = new long[this.size];
+
+		for(int i = 0; i < this.size; i++)
+			pairs[i] = (long)this.documents[i] << 32 | i;
+
+		Arrays.sort(pairs);
+
+		int[] documents = new int[this.documents.length];
+		int[] frequencies = new int[this.documents.length];
+		int[][] positions = new int[this.documents.length][];
+		int length = 0;
+
+		for(long pair : pairs){
+
+			int i = (int)pair;
+
+			if(length > 0 && documents[length - 1] == (int)(pair >>> 32)){
+
+				if(frequencies[length - 1] >= this.frequencies[i])
+					continue;
+
+				length--;
+			}
+
+			documents[length] = this.documents[i];
+			frequencies[length] = this.frequencies[i];
+			positions[length++] = this.positions[i];
+		}
+
+		this.documents = documents;
+		this.frequencies = frequencies;
+		this.positions = positions;
+		this.size = length;
+		this.sorted = true;
+
+	}
+
+}
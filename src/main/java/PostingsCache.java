@@ -0,0 +1,143 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The postings most recently read from the index files, kept decoded in memory up to a number of bytes shared by
+ * all the index files open in the application. The postings of a word token are only read from its file the first
+ * time they are asked for, so that what stays in memory does not grow with the index files: beyond the cache, an
+ * index file is only the mapping of it the operating system pages in and out.
+ */
+public class PostingsCache {
+
+	/**
+	 * Cache shared by all the index files of the application.
+	 */
+	private static final PostingsCache shared = new PostingsCache(32L << 20);
+
+	/**
+	 * Maximum number of bytes of postings held.
+	 */
+	private long capacity;
+
+	private long footprint = 0;
+
+	/**
+	 * Most recently used postings, in access order.
+	 */
+	private LinkedHashMap<Key, Postings> entries = new LinkedHashMap<Key, Postings>(16, 0.75f, true);
+
+	/**
+	 * @param capacity Maximum number of bytes of postings held.
+	 */
+	public PostingsCache(long capacity){
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return The cache shared by all the index files of the application.
+	 */
+	public static PostingsCache getShared(){
+		return shared;
+	}
+
+	/**
+	 * @param capacity Maximum number of bytes of postings held. Postings beyond it are dropped, least recently
+	 * used first.
+	 */
+	public synchronized void setCapacity(long capacity){
+
+		this.capacity = capacity;
+		this.evict();
+
+	}
+
+	/**
+	 * @param file An index file.
+	 * @param position Position of a word token in its term table.
+	 * @return The postings of the word token, read from the file unless they are held already.
+	 */
+	public Postings getPostings(BinaryIndexFile file, int position){
+
+		Key key = new Key(file, position);
+
+		synchronized(this){
+
+			Postings postings = this.entries.get(key);
+
+			if(postings != null)
+				return postings;
+		}
+
+		// Decoded outside the lock: the file does not change, so two threads reading it at once read the same.
+		Postings postings = file.getPostings(position);
+
+		synchronized(this){
+
+			Postings previous = this.entries.put(key, postings);
+
+			if(previous != null)
+				this.footprint -= previous.getMemoryFootprint();
+
+			this.footprint += postings.getMemoryFootprint();
+			this.evict();
+		}
+
+		return postings;
+
+	}
+
+	/**
+	 * Drop the postings of an index file, e.g. once it is replaced, so that its mapping can be released.
+	 * @param file The index file.
+	 */
+	public synchronized void remove(BinaryIndexFile file){
+
+		Iterator<Map.Entry<Key, Postings>> entries = this.entries.entrySet().iterator();
+
+		while(entries.hasNext()){
+
+			Map.Entry<Key, Postings> entry = entries.next();
+
+			if(entry.getKey().file == file){
+				this.footprint -= entry.getValue().getMemoryFootprint();
+				entries.remove();
+			}
+		}
+
+	}
+
+	private void evict(){
+
+		Iterator<Postings> eldest = this.entries.values().iterator();
+
+		while(this.footprint > this.capacity && eldest.hasNext()){
+			this.footprint -= eldest.next().getMemoryFootprint();
+			eldest.remove();
+		}
+
+	}
+
+	private static class Key {
+
+		final BinaryIndexFile file;
+		final int position;
+
+		Key(BinaryIndexFile file, int position){
+			this.file = file;
+			this.position = position;
+		}
+
+		@Override
+		public boolean equals(Object other){
+			return other instanceof Key && ((Key)other).file == this.file && ((Key)other).position == this.position;
+		}
+
+		@Override
+		public int hashCode(){
+			return System.identityHashCode(this.file) * 31 + this.position;
+		}
+
+	}
+
+}
@@ -1,8 +1,6 @@
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.File;
-import java.io.FilenameFilter;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JList;
@@ -100,25 +98,12 @@ public class ReconstructIndexFile extends JFrame {
 					}
 
 					String countryName = ReconstructIndexFile.this.list.getSelectedValue();
-					File file = new File(countryName);
-					countryName = countryName.replace("_index.tsv", "");
 
 					/*
-					 *  Delete old file to make room for the new to be re-constructed by the new object
-					 *  representing the country selected.
+					 *  The people found before are left in place: the new object representing the country selected crawls
+					 *  them again aside and replaces them once complete.
 					 */
-
-					if(file.delete()){
-
-						System.out.println(file.getName() + " has been deleted!");
-
-					} else {
-
-						System.out.println("Delete operation has failed.");
-
-					}
-
-					System.out.println("Replacing " + countryName + " file and object.");
+					System.out.println("Replacing " + countryName + " index and object.");
 					PersonCrawler crawler = new PersonCrawler(peopleToCrawl, true);
 					
 					ReconstructIndexFile.this.disableComponents();
@@ -152,51 +137,19 @@ public class ReconstructIndexFile extends JFrame {
 		btnBack.setBounds(189, 231, 89, 23);
 		contentPane.add(btnBack);
 
-		JLabel lblAvailableCountryIndex = new JLabel("Select from the available country index files:");
+		JLabel lblAvailableCountryIndex = new JLabel("Select from the indexed countries:");
 		lblAvailableCountryIndex.setFont(new Font("Trebuchet MS", Font.BOLD, 12));
 		lblAvailableCountryIndex.setBounds(10, 11, 268, 26);
 		contentPane.add(lblAvailableCountryIndex);
 	}
 
 	/**
-	 * This method will populate the list in the current JFrame with the file names
-	 * of inverse index text files that exist in the project's directory.
+	 * This method will populate the list in the current JFrame with the names of the countries
+	 * people have been found from, as recorded in the index shared by all crawlers.
 	 */
 	public void setListData(){
 
-		// Search in current directory using the empty string.
-		File[] fileArray = this.finder(System.getProperty("user.dir"));
-		String[] names = new String[fileArray.length];
-
-		// Iterate through the extracted file objects and retrieve their names.
-		for (int i = 0; i < fileArray.length; i++) {
-
-			names[i] = fileArray[i].getName();
-
-		}
-
-		this.list.setListData(names);
-
-	}
-
-	/**
-	 * A method that will extract file objects based on the presence of country inverse index files in a given
-	 * directory (within project to avoid hard-coding)
-	 * @param dirPath The directory within which to search files for.
-	 * @return A file array with inverse index files.
-	 */
-	public File[] finder(String dirPath){
-
-		File dir = new File(dirPath);
-
-		return dir.listFiles(new FilenameFilter() { 
-
-			public boolean accept(File dir, String filename){
-
-				return (filename.endsWith("_index.tsv") && !filename.startsWith("Generic_")); 
-
-			}
-		} );
+		this.list.setListData(new PersonCrawler(1, true).getIndexedCountries().toArray(new String[0]));
 
 	}
 	
@@ -0,0 +1,60 @@
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
+import com.hp.hpl.jena.sparql.engine.http.QueryEngineHTTP;
+
+/**
+ * Sends queries over HTTP to a remote SPARQL endpoint, such as the public DBpedia one or a mirror of it.
+ * All queries share the pooled keep-alive client of SparqlHttpClient and ask for compressed responses.
+ */
+public class RemoteSparqlEndpoint implements SparqlEndpoint {
+
+	/**
+	 * The URL of the remote SPARQL service.
+	 */
+	private String sparqlEndpointURL;
+
+	/**
+	 * @param sparqlEndpointURL The URL of the remote SPARQL service.
+	 * @param maxConnections Maximum number of connections kept open to the service.
+	 * @param timeout Connection and socket timeout in milliseconds, zero for none.
+	 */
+	public RemoteSparqlEndpoint(String sparqlEndpointURL, int maxConnections, int timeout){
+
+		this.sparqlEndpointURL = sparqlEndpointURL;
+
+		SparqlHttpClient.getClient(maxConnections, maxConnections, timeout);
+
+	}
+
+	public ResultSet select(String query){
+
+		QueryEngineHTTP qexec = QueryExecutionFactory.createServiceRequest(this.sparqlEndpointURL, QueryFactory.create(query));
+
+		qexec.setAllowGZip(true);
+		qexec.setAllowDeflate(true);
+
+		try {
+
+			/*
+			 *  Read the whole response so that the execution can be closed straight away and the connection
+			 *  handed back to the pool.
+			 */
+			return ResultSetFactory.copyResults(qexec.execSelect());
+
+		} finally {
+			qexec.close();
+		}
+
+	}
+
+	public String getStatistics(){
+		return SparqlHttpClient.getStatistics();
+	}
+
+	public String toString(){
+		return "remote endpoint " + this.sparqlEndpointURL;
+	}
+
+}
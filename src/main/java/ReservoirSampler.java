@@ -0,0 +1,65 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Picks a uniform random sample of fixed size from a stream of unknown length in a single pass
+ * (reservoir sampling), holding no more than the sample itself in memory.
+ * @param <T> Type of the sampled elements.
+ */
+public class ReservoirSampler<T> {
+
+	private int sampleSize;
+
+	private Random random;
+
+	private List<T> reservoir;
+
+	/**
+	 * Number of elements offered so far.
+	 */
+	private long seen = 0;
+
+	/**
+	 * @param sampleSize Number of elements to keep.
+	 * @param random Source of randomness, used by a single thread. Pass a seeded one to make samples reproducible.
+	 */
+	public ReservoirSampler(int sampleSize, Random random){
+
+		this.sampleSize = Math.max(0, sampleSize);
+		this.random = random;
+		this.reservoir = new ArrayList<T>(this.sampleSize);
+
+	}
+
+	/**
+	 * Offer the next element of the stream.
+	 * @param element The element.
+	 */
+	public void offer(T element){
+
+		this.seen++;
+
+		if(this.reservoir.size() < this.sampleSize){
+
+			this.reservoir.add(element);
+
+		} else if(this.sampleSize > 0){
+
+			// Keep the new element with probability sampleSize/seen, in place of a random one.
+			long slot = (long)(this.random.nextDouble() * this.seen);
+
+			if(slot < this.sampleSize)
+				this.reservoir.set((int)slot, element);
+		}
+
+	}
+
+	/**
+	 * @return The sample of the elements offered so far.
+	 */
+	public List<T> getSample(){
+		return this.reservoir;
+	}
+
+}
@@ -0,0 +1,174 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import com.hp.hpl.jena.query.QueryParseException;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
+
+/**
+ * Protects an endpoint from being overwhelmed by the crawling workers and the crawl from the endpoint's
+ * hiccups. Queries pass through an adaptive concurrency limit, failed queries are retried with jittered
+ * exponential backoff and a circuit breaker pauses all queries while the endpoint keeps failing.
+ */
+public class ResilientSparqlEndpoint implements SparqlEndpoint {
+
+	/**
+	 * The endpoint that actually answers the queries.
+	 */
+	private SparqlEndpoint endpoint;
+
+	private AdaptiveConcurrencyLimiter limiter;
+
+	private CircuitBreaker breaker;
+
+	/**
+	 * Number of times a query is tried before giving up.
+	 */
+	private int maxAttempts;
+
+	/**
+	 * Base of the exponential backoff between attempts in milliseconds.
+	 */
+	private long backoff;
+
+	/**
+	 * Longest wait between two attempts in milliseconds.
+	 */
+	private long maxBackoff;
+
+	private AtomicLong retries = new AtomicLong(0);
+	private AtomicLong failures = new AtomicLong(0);
+
+	/**
+	 * @param endpoint The endpoint that answers the queries.
+	 * @param limiter Bounds the number of queries in flight.
+	 * @param breaker Pauses queries while the endpoint keeps failing.
+	 * @param maxAttempts Number of times a query is tried before giving up.
+	 * @param backoff Base of the exponential backoff between attempts in milliseconds.
+	 */
+	public ResilientSparqlEndpoint(SparqlEndpoint endpoint, AdaptiveConcurrencyLimiter limiter, CircuitBreaker breaker, int maxAttempts, long backoff){
+
+		this.endpoint = endpoint;
+		this.limiter = limiter;
+		this.breaker = breaker;
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.backoff = backoff;
+		this.maxBackoff = Math.max(backoff, 30000);
+
+	}
+
+	/**
+	 * Execute the query, retrying it if it fails.
+	 * @throws RuntimeException The last failure, once all attempts have failed or if the query cannot succeed at all.
+	 */
+	public ResultSet select(String query){
+
+		int attempt = 0;
+
+		try {
+
+			while(true){
+
+				long wait = this.breaker.tryAcquire();
+
+				if(wait > 0){
+					// Waiting for the breaker does not use up any attempts.
+					Thread.sleep(wait + ThreadLocalRandom.current().nextLong(wait / 10 + 1));
+					continue;
+				}
+
+				attempt++;
+				this.limiter.acquire();
+
+				long startTime = System.currentTimeMillis();
+				boolean released = false;
+
+				try {
+
+					ResultSet results = this.endpoint.select(query);
+
+					this.limiter.onSuccess(System.currentTimeMillis() - startTime);
+					this.breaker.onSuccess();
+					released = true;
+
+					return results;
+
+				} catch (RuntimeException ex) {
+
+					if(!isRetryable(ex)){
+
+						// The endpoint answered, the query is at fault.
+						this.limiter.onSuccess(System.currentTimeMillis() - startTime);
+						this.breaker.onSuccess();
+						released = true;
+
+						throw ex;
+					}
+
+					this.limiter.onError();
+					this.breaker.onFailure();
+					released = true;
+
+					if(attempt >= this.maxAttempts){
+						this.failures.incrementAndGet();
+						throw ex;
+					}
+
+					this.retries.incrementAndGet();
+
+					// Full jitter: wait a random time up to the exponential backoff.
+					long ceiling = Math.min(this.maxBackoff, this.backoff << Math.min(attempt - 1, 16));
+					Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+
+				} finally {
+
+					if(!released){
+						this.limiter.onError();
+						this.breaker.onFailure();
+					}
+				}
+			}
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new QueryExceptionHTTP("Interrupted while waiting for the endpoint", e);
+
+		}
+
+	}
+
+	/**
+	 * Decide whether a failed query is worth trying again. Malformed queries and client errors will fail the
+	 * same way every time, while timeouts, throttling and server errors are usually temporary.
+	 * @param ex The failure.
+	 * @return True if the query should be retried.
+	 */
+	public static boolean isRetryable(RuntimeException ex){
+
+		if(ex instanceof QueryParseException)
+			return false;
+
+		if(ex instanceof QueryExceptionHTTP){
+
+			int code = ((QueryExceptionHTTP)ex).getResponseCode();
+
+			if(code >= 400 && code < 500)
+				return code == 408 || code == 429;
+		}
+
+		return true;
+
+	}
+
+	public String getStatistics(){
+
+		return "Endpoint concurrency limit " + this.limiter.getLimit() + ", " + this.retries.get() + " retries, "
+				+ this.failures.get() + " failed queries, " + this.breaker.getTrips() + " pauses. " + this.endpoint.getStatistics();
+
+	}
+
+	public String toString(){
+		return this.endpoint.toString();
+	}
+
+}
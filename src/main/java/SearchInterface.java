@@ -1,7 +1,6 @@
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.File;
 import java.util.HashMap;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JButton;
@@ -155,13 +154,15 @@ public class SearchInterface extends JFrame {
 
 							try{
 
-								File f = new File(SearchInterface.this.comboBox.getSelectedItem().toString() + "_index.tsv");								
+								// Whether people have been found from the country before, in the index shared by all crawlers.
+								boolean indexed = SearchInterface.this.crawlerMap.containsKey(SearchInterface.this.comboBox.getSelectedItem().toString())
+										|| new PersonCrawler(1, true).isCountryIndexed(SearchInterface.this.comboBox.getSelectedItem().toString());
 
 								/*
 								 *  If the object exists from a previous execution of this code, do not ask for user input as to how many people
 								 *  need to be queried (this has already been assigned previously).
 								 */
-								if(!SearchInterface.this.crawlerMap.containsKey(SearchInterface.this.comboBox.getSelectedItem().toString()) && !f.exists()){
+								if(!SearchInterface.this.crawlerMap.containsKey(SearchInterface.this.comboBox.getSelectedItem().toString()) && !indexed){
 
 									/*
 									 *  NOTE: The number of users to hold assigned to an object for inverse index file creation purposes is FINAL unless the file is deleted
@@ -189,10 +190,10 @@ public class SearchInterface extends JFrame {
 									PersonCrawler crawler = new PersonCrawler(peopleToCrawl, true);
 									SearchInterface.this.crawlerMap.put(SearchInterface.this.comboBox.getSelectedItem().toString(), crawler);
 
-								} else if (!SearchInterface.this.crawlerMap.containsKey(SearchInterface.this.comboBox.getSelectedItem().toString()) && f.exists()){
+								} else if (!SearchInterface.this.crawlerMap.containsKey(SearchInterface.this.comboBox.getSelectedItem().toString()) && indexed){
 
 									/*
-									 *  File already exists but there is no object associated to it. Create a new object that will automatically pick
+									 *  The country is already indexed but there is no object associated to it. Create a new object that will automatically pick
 									 *  up indexes from the file. The value we assign to the person to crawl does not matter here and is only assigned
 									 *  to exit the loop.
 									 */
@@ -225,7 +226,7 @@ public class SearchInterface extends JFrame {
 						PersonCrawler currentCrawler = SearchInterface.this.crawlerMap.get(SearchInterface.this.comboBox.getSelectedItem().toString());
 						
 						String[] reportDetails = currentCrawler.crawlIntoCountry(SearchInterface.this.comboBox.getSelectedItem().toString(), 
-								SearchInterface.this.stopWords.removeStopWords(SearchInterface.this.textField.getText().trim().replaceAll(" +", " ")).split(" "));
+								SearchInterface.this.stopWords.removeStopWordsFromQuery(SearchInterface.this.textField.getText().trim().replaceAll(" +", " ")).split(" "));
 
 						SearchInterface.this.enableComponents();
 
@@ -283,14 +284,14 @@ public class SearchInterface extends JFrame {
 								System.out.println("Creating new generic crawler");
 								
 								boolean precomputeSuccess = SearchInterface.this.showPrecomputedData(currentCrawler, SearchInterface.this.stopWords
-										.removeStopWords(SearchInterface.this.textField.getText().trim()
+										.removeStopWordsFromQuery(SearchInterface.this.textField.getText().trim()
 										.replaceAll(" +", " ")).split(" "), true);
 								
 								SearchInterface.this.disableComponents();
 
 								// Initiate a crawler to 
 								RunnableCrawl threadCrawl = new RunnableCrawl(currentCrawler, SearchInterface.this.stopWords
-										.removeStopWords(SearchInterface.this.textField.getText().trim()
+										.removeStopWordsFromQuery(SearchInterface.this.textField.getText().trim()
 										.replaceAll(" +", " ")).split(" "), true, precomputeSuccess, SearchInterface.this);
 								
 								Thread t = new Thread(threadCrawl);
@@ -302,13 +303,13 @@ public class SearchInterface extends JFrame {
 								System.out.println("Using existing crawler");
 								
 								boolean precomputeSuccess = SearchInterface.this.showPrecomputedData(currentCrawler, SearchInterface.this.stopWords
-										.removeStopWords(SearchInterface.this.textField.getText().trim()
+										.removeStopWordsFromQuery(SearchInterface.this.textField.getText().trim()
 										.replaceAll(" +", " ")).split(" "), false);
 								
 								SearchInterface.this.disableComponents();
 
 								RunnableCrawl threadCrawl = new RunnableCrawl(currentCrawler, SearchInterface.this.stopWords
-										.removeStopWords(SearchInterface.this.textField.getText().trim()
+										.removeStopWordsFromQuery(SearchInterface.this.textField.getText().trim()
 										.replaceAll(" +", " ")).split(" "), false, precomputeSuccess, SearchInterface.this);
 								
 								Thread t = new Thread(threadCrawl);
@@ -360,8 +361,6 @@ public class SearchInterface extends JFrame {
 	 */
 	public void reconstructIndex(String countryName, PersonCrawler countryObject){
 
-		this.crawlerMap.put(countryName, countryObject);
-
 		/*
 		 *  Disable further interactions with the currently visible interface (which we assume here would be the
 		 *  reconstruction interface)
@@ -372,7 +371,11 @@ public class SearchInterface extends JFrame {
 		 *  No need to report back to user as we crawl just for the sake of re-populating the re-constructed file
 		 *  after user request (second method of re-constructing other than the automatic).
 		 */
-		countryObject.crawlIntoCountry(countryName, SearchInterface.this.stopWords.removeStopWords(SearchInterface.this.textField.getText().trim().replaceAll(" +", " ")).split(" "));
+		if(countryObject.reconstructCountryIndex(countryName)){
+
+			// Searches carry on using the current index file until the new one replaces it.
+			this.crawlerMap.put(countryName, countryObject);
+		}
 
 		this.reconstructScreen.setListData();
 
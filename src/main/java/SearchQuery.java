@@ -0,0 +1,936 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A search query over the inverse index. Keywords are all required by default, keywords joined by OR match
+ * documents with any of them, and a keyword, or keywords joined by OR, after NOT exclude the documents with any of
+ * them. A keyword of several words joined by underscores is a phrase, matching the documents with the words one
+ * right after the other, e.g. "new_york", and keywords joined by NEAR, or NEAR/n, match the documents with at
+ * most 5, or n, other words between them, in either order. A keyword with wildcards, * for any characters and ?
+ * for a single one, stands for the word tokens of the index matching it, joined by OR, e.g. "foot*". The operators
+ * are only recognised in capitals, e.g. "singer football OR rugby NOT actor" or "new_york NEAR/3 mayor".
+ * A query is evaluated against the postings of a single numbering of documents, smallest group of keywords first,
+ * and stops as soon as no document is left, so that the postings of the other keywords are not even read. The
+ * documents matching it are ranked by the BM25 score of the keywords of the required groups they have.
+ */
+public class SearchQuery {
+
+	public static final String OR = "OR";
+	public static final String NOT = "NOT";
+	public static final String NEAR = "NEAR";
+
+	/**
+	 * Largest number of words between keywords joined by NEAR, unless given.
+	 */
+	public static final int NEAR_DISTANCE = 5;
+
+	/**
+	 * Largest number of word tokens a keyword with wildcards stands for, the first ones in their order.
+	 */
+	public static final int MAX_EXPANSIONS = 1024;
+
+	/**
+	 * Postings of word tokens, all numbering the documents the same way.
+	 */
+	public interface PostingsSource {
+
+		/**
+		 * @param term A word token, in lower case.
+		 * @return Number of documents in which it appears, without reading its postings.
+		 */
+		int getDocumentFrequency(String term);
+
+		/**
+		 * @param term A word token, in lower case, with a document frequency above 0.
+		 * @return The documents in which it appears.
+		 */
+		Postings getPostings(String term);
+
+		/**
+		 * @param term A word token, in lower case, with a document frequency above 0.
+		 * @return The documents in which it appears, along with the positions it appears at in them, where known.
+		 */
+		Postings getPositionalPostings(String term);
+
+		/**
+		 * @param term A word token, in lower case, with a document frequency above 0.
+		 * @return No less than the largest number of times it appears in a document.
+		 */
+		int getMaxFrequency(String term);
+
+		/**
+		 * @param term A word token, in lower case, with a document frequency above 0.
+		 * @return No more than the number of word tokens of the shortest document in which it appears, 0 if the
+		 * lengths of the documents are unknown.
+		 */
+		int getMinLength(String term);
+
+		/**
+		 * @param document A document number.
+		 * @return Number of word tokens of the document, 0 if unknown.
+		 */
+		int getDocumentLength(int document);
+
+		/**
+		 * @param document A document number.
+		 * @return False if the document has been replaced by a newer version held elsewhere.
+		 */
+		boolean isCurrent(int document);
+
+		/**
+		 * @param document A document number.
+		 * @return The URI of the document.
+		 */
+		String getUri(int document);
+
+	}
+
+	/**
+	 * Groups of keywords of which every document matched has at least one.
+	 */
+	private final List<List<String>> required;
+
+	/**
+	 * Groups of keywords of which no document matched has any.
+	 */
+	private final List<List<String>> excluded;
+
+	private SearchQuery(List<List<String>> required, List<List<String>> excluded){
+		this.required = required;
+		this.excluded = excluded;
+	}
+
+	/**
+	 * @param keyWords The keywords of a search and the operators between them.
+	 * @return The query.
+	 */
+	public static SearchQuery parse(String[] keyWords){
+
+		List<List<String>> required = new ArrayList<List<String>>();
+		List<List<String>> excluded = new ArrayList<List<String>>();
+		List<String> group = null;
+		boolean negated = false;
+		boolean joined = false;
+		int distance = -1;
+
+		for(String keyWord : keyWords){
+
+			keyWord = keyWord.trim();
+
+			if(keyWord.equals(OR)){
+
+				joined = group != null;
+				distance = -1;
+
+			} else if(keyWord.equals(NOT)){
+
+				negated = true;
+				joined = false;
+				distance = -1;
+
+			} else if(isNear(keyWord)){
+
+				distance = group != null ? getDistance(keyWord) : -1;
+				joined = false;
+
+			} else if(!keyWord.isEmpty()){
+
+				if(distance >= 0){
+
+					// Kept as a single keyword, with the distance always given.
+					int last = group.size() - 1;
+
+					group.set(last, group.get(last) + " " + NEAR + "/" + distance + " " + keyWord.toLowerCase());
+
+				} else if(joined){
+
+					group.add(keyWord.toLowerCase());
+
+				} else {
+
+					group = new ArrayList<String>();
+					group.add(keyWord.toLowerCase());
+					(negated ? excluded : required).add(group);
+				}
+
+				negated = false;
+				joined = false;
+				distance = -1;
+			}
+		}
+
+		return new SearchQuery(required, excluded);
+
+	}
+
+	/**
+	 * @param keyWord A keyword of a search.
+	 * @return True if it is an operator rather than a keyword.
+	 */
+	public static boolean isOperator(String keyWord){
+		return keyWord.equals(OR) || keyWord.equals(NOT) || isNear(keyWord);
+	}
+
+	/**
+	 * @return True if the keyword is NEAR, or NEAR/n for a distance n.
+	 */
+	private static boolean isNear(String keyWord){
+		return keyWord.equals(NEAR) || keyWord.matches(NEAR + "/[1-9][0-9]{0,3}");
+	}
+
+	/**
+	 * @return The distance of a NEAR operator.
+	 */
+	private static int getDistance(String near){
+		return near.equals(NEAR) ? NEAR_DISTANCE : Integer.parseInt(near.substring(NEAR.length() + 1));
+	}
+
+	/**
+	 * @param term A keyword of a query.
+	 * @return True if it is a single word with wildcards.
+	 */
+	public static boolean isWildcard(String term){
+		return (term.indexOf('*') >= 0 || term.indexOf('?') >= 0) && Phrase.parse(term) == null;
+	}
+
+	/**
+	 * @param term A keyword of a query, a single word token or a phrase.
+	 * @return The word tokens of the keyword.
+	 */
+	public static List<String> getWords(String term){
+
+		Phrase phrase = Phrase.parse(term);
+
+		return phrase == null ? Arrays.asList(term) : Arrays.asList(phrase.words);
+
+	}
+
+	/**
+	 * @return Every keyword of the query, in lower case.
+	 */
+	public List<String> getTerms(){
+
+		List<String> terms = new ArrayList<String>();
+
+		for(List<String> group : this.required)
+			terms.addAll(group);
+
+		for(List<String> group : this.excluded)
+			terms.addAll(group);
+
+		return terms;
+
+	}
+
+	/**
+	 * @return Every word token of the keywords of the query, each once.
+	 */
+	public List<String> getWords(){
+
+		List<String> words = new ArrayList<String>();
+
+		for(String term : this.getTerms()){
+			for(String word : getWords(term)){
+				if(!words.contains(word))
+					words.add(word);
+			}
+		}
+
+		return words;
+
+	}
+
+	/**
+	 * @param expansions The word tokens of the index matching every keyword with wildcards, in their order.
+	 * @return The query with every keyword with wildcards replaced by the word tokens matching it, which join the
+	 * other keywords of its group. A keyword matching none is dropped, like a word found nowhere in the index.
+	 */
+	public SearchQuery expandWildcards(Map<String, ? extends Collection<String>> expansions){
+		return new SearchQuery(expandWildcards(this.required, expansions), expandWildcards(this.excluded, expansions));
+	}
+
+	private static List<List<String>> expandWildcards(List<List<String>> groups, Map<String, ? extends Collection<String>> expansions){
+
+		List<List<String>> expanded = new ArrayList<List<String>>();
+
+		for(List<String> group : groups){
+
+			List<String> expandedGroup = new ArrayList<String>();
+
+			for(String term : group){
+
+				Collection<String> matches = isWildcard(term) ? expansions.get(term) : Collections.singletonList(term);
+				int count = 0;
+
+				for(String match : matches == null ? Collections.<String>emptyList() : matches){
+
+					if(count++ == MAX_EXPANSIONS)
+						break;
+
+					if(!expandedGroup.contains(match))
+						expandedGroup.add(match);
+				}
+			}
+
+			if(!expandedGroup.isEmpty())
+				expanded.add(expandedGroup);
+		}
+
+		return expanded;
+
+	}
+
+	/**
+	 * @param terms Word tokens, or phrases.
+	 * @return The query without the keywords other than the given ones, e.g. the ones found nowhere in the index,
+	 * which would otherwise leave no document to match. A group left with no keyword is dropped.
+	 */
+	public SearchQuery retainTerms(Collection<String> terms){
+		return new SearchQuery(retainTerms(this.required, terms), retainTerms(this.excluded, terms));
+	}
+
+	private static List<List<String>> retainTerms(List<List<String>> groups, Collection<String> terms){
+
+		List<List<String>> retained = new ArrayList<List<String>>();
+
+		for(List<String> group : groups){
+
+			List<String> retainedGroup = new ArrayList<String>(group);
+
+			retainedGroup.retainAll(terms);
+
+			if(!retainedGroup.isEmpty())
+				retained.add(retainedGroup);
+		}
+
+		return retained;
+
+	}
+
+	/**
+	 * @return True if the query has no keyword a document is required to have, in which case it matches nothing.
+	 */
+	public boolean isEmpty(){
+		return this.required.isEmpty();
+	}
+
+	/**
+	 * Match the documents of a source of postings.
+	 * @param source The postings.
+	 * @return The documents matching the query.
+	 */
+	public Postings evaluate(PostingsSource source){
+
+		if(this.required.isEmpty())
+			return Postings.EMPTY;
+
+		source = this.matchPhrases(source);
+
+		final int[] frequencies = new int[this.required.size()];
+		Integer[] order = new Integer[frequencies.length];
+
+		for(int g = 0; g < frequencies.length; g++){
+
+			for(String term : this.required.get(g))
+				frequencies[g] += source.getDocumentFrequency(term);
+
+			// A group no document has leaves nothing to intersect.
+			if(frequencies[g] == 0)
+				return Postings.EMPTY;
+
+			order[g] = g;
+		}
+
+		// The rarest first, so that every intersection is as small as it gets.
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Integer.compare(frequencies[a], frequencies[b]);
+			}
+		});
+
+		Postings documents = null;
+
+		for(int g : order){
+
+			Postings groupDocuments = union(source, this.required.get(g));
+
+			documents = documents == null ? groupDocuments : documents.intersect(groupDocuments);
+
+			if(documents.size() == 0)
+				return Postings.EMPTY;
+		}
+
+		for(List<String> group : this.excluded){
+
+			for(String term : group){
+
+				if(source.getDocumentFrequency(term) == 0)
+					continue;
+
+				documents = documents.andNot(source.getPostings(term));
+
+				if(documents.size() == 0)
+					return Postings.EMPTY;
+			}
+		}
+
+		return documents;
+
+	}
+
+	/**
+	 * Score the documents of a source of postings matching the query and keep the best ones, by MaxScore. The
+	 * keywords are ordered by the highest score they can add to a document; once the ones with the lowest cannot
+	 * add up to the threshold of the documents kept, they no longer bring up documents to score, only add to the
+	 * score of those the others bring up. A document is dropped as soon as its score so far and the highest the
+	 * keywords not searched for yet could add, given its length, fall short of the threshold, before their
+	 * postings are searched for it. Documents are also only brought up by the required group with the fewest
+	 * documents, so that a query of several required keywords scores no document missing one of them.
+	 * @param source The postings.
+	 * @param scorer The scorer of the whole index.
+	 * @param top The best documents found so far, in this source and others.
+	 */
+	public void rank(PostingsSource source, Bm25Scorer scorer, TopDocuments top){
+
+		if(this.required.isEmpty())
+			return;
+
+		source = this.matchPhrases(source);
+
+		// Keywords found in the source, each once, and the groups as positions among them.
+		List<String> terms = new ArrayList<String>();
+		int[][] groups = new int[this.required.size()][];
+		int lead = 0;
+		long leadFrequency = Long.MAX_VALUE;
+
+		for(int g = 0; g < groups.length; g++){
+
+			List<String> group = this.required.get(g);
+			int[] members = new int[group.size()];
+			int count = 0;
+			long frequency = 0;
+
+			for(String term : group){
+
+				int documentFrequency = source.getDocumentFrequency(term);
+
+				if(documentFrequency == 0)
+					continue;
+
+				if(!terms.contains(term))
+					terms.add(term);
+
+				members[count++] = terms.indexOf(term);
+				frequency += documentFrequency;
+			}
+
+			// A group no document has leaves nothing to match.
+			if(count == 0)
+				return;
+
+			groups[g] = Arrays.copyOf(members, count);
+
+			if(frequency < leadFrequency){
+				lead = g;
+				leadFrequency = frequency;
+			}
+		}
+
+		int termCount = terms.size();
+		Postings.Cursor[] cursors = new Postings.Cursor[termCount];
+		double[] weights = new double[termCount];
+		int[] maxFrequencies = new int[termCount];
+		final double[] bounds = new double[termCount];
+
+		for(int t = 0; t < termCount; t++){
+
+			String term = terms.get(t);
+
+			cursors[t] = source.getPostings(term).cursor();
+			weights[t] = scorer.getWeight(term);
+			maxFrequencies[t] = source.getMaxFrequency(term);
+			bounds[t] = scorer.score(weights[t], maxFrequencies[t], source.getMinLength(term));
+		}
+
+		List<Postings.Cursor> exclusions = new ArrayList<Postings.Cursor>();
+
+		for(List<String> group : this.excluded){
+			for(String term : group){
+				if(source.getDocumentFrequency(term) > 0)
+					exclusions.add(source.getPostings(term).cursor());
+			}
+		}
+
+		// Lowest bound first.
+		Integer[] sorted = new Integer[termCount];
+
+		for(int t = 0; t < termCount; t++)
+			sorted[t] = t;
+
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(bounds[a], bounds[b]);
+			}
+		});
+
+		int[] order = new int[termCount];
+
+		for(int k = 0; k < termCount; k++)
+			order[k] = sorted[k];
+
+		int[] pending = new int[termCount];
+		double[] remaining = new double[termCount + 1];
+		int target = 0;
+
+		while(target != Postings.NO_MORE_DOCUMENTS){
+
+			double threshold = top.getThreshold();
+			int essential = 0;
+			double nonEssential = 0;
+
+			while(essential < termCount && nonEssential + bounds[order[essential]] <= threshold)
+				nonEssential += bounds[order[essential++]];
+
+			// Not even a document with every keyword could be one of the best any more.
+			if(essential == termCount)
+				return;
+
+			int document = nextCandidate(cursors, groups[lead], order, essential, target);
+
+			if(document == Postings.NO_MORE_DOCUMENTS)
+				return;
+
+			target = document + 1;
+
+			if(!source.isCurrent(document))
+				continue;
+
+			int length = source.getDocumentLength(document);
+			double score = 0;
+			int pendingCount = 0;
+
+			// The keywords whose cursors are on the document or past it are known to be in it or not.
+			for(int k = termCount - 1; k >= 0; k--){
+
+				int t = order[k];
+
+				if(cursors[t].document() == document)
+					score += scorer.score(weights[t], cursors[t].frequency(), length);
+				else if(cursors[t].document() < document)
+					pending[pendingCount++] = t;
+			}
+
+			if(missesGroup(groups, cursors, document))
+				continue;
+
+			remaining[pendingCount] = 0;
+
+			for(int p = pendingCount - 1; p >= 0; p--)
+				remaining[p] = remaining[p + 1] + scorer.score(weights[pending[p]], maxFrequencies[pending[p]], length);
+
+			boolean dropped = false;
+
+			for(int p = 0; p < pendingCount && !dropped; p++){
+
+				int t = pending[p];
+
+				if(score + remaining[p] <= threshold)
+					dropped = true;
+				else if(cursors[t].advance(document) == document)
+					score += scorer.score(weights[t], cursors[t].frequency(), length);
+				else
+					dropped = missesGroup(groups, cursors, document);
+			}
+
+			if(dropped || score <= threshold)
+				continue;
+
+			for(Postings.Cursor exclusion : exclusions)
+				dropped |= exclusion.advance(document) == document;
+
+			if(!dropped)
+				top.add(score, source, document);
+		}
+
+	}
+
+	/**
+	 * @return The first document from the target on with a keyword of the lead group and an essential keyword,
+	 * or NO_MORE_DOCUMENTS if there is none.
+	 */
+	private static int nextCandidate(Postings.Cursor[] cursors, int[] lead, int[] order, int essential, int target){
+
+		while(true){
+
+			int inLead = Postings.NO_MORE_DOCUMENTS;
+
+			for(int t : lead)
+				inLead = Math.min(inLead, cursors[t].advance(target));
+
+			if(inLead == Postings.NO_MORE_DOCUMENTS)
+				return inLead;
+
+			int inEssential = Postings.NO_MORE_DOCUMENTS;
+
+			for(int k = essential; k < order.length; k++)
+				inEssential = Math.min(inEssential, cursors[order[k]].advance(inLead));
+
+			if(inEssential == inLead || inEssential == Postings.NO_MORE_DOCUMENTS)
+				return inEssential;
+
+			target = inEssential;
+		}
+
+	}
+
+	/**
+	 * @return True if the cursors of all the keywords of a required group are past the document.
+	 */
+	private static boolean missesGroup(int[][] groups, Postings.Cursor[] cursors, int document){
+
+		for(int[] group : groups){
+
+			boolean missed = true;
+
+			for(int t : group)
+				missed &= cursors[t].document() > document;
+
+			if(missed)
+				return true;
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Match the phrases of the query against a source of postings before they are searched like word tokens.
+	 * @param source The postings.
+	 * @return The postings, along with those of the phrases of the query, which hold the number of times a
+	 * phrase appears in every document as its frequency.
+	 */
+	private PostingsSource matchPhrases(PostingsSource source){
+
+		Map<String, Postings> phrasePostings = new HashMap<String, Postings>();
+
+		for(String term : this.getTerms()){
+
+			Phrase phrase = Phrase.parse(term);
+
+			if(phrase != null && !phrasePostings.containsKey(term))
+				phrasePostings.put(term, phrase.match(source));
+		}
+
+		return phrasePostings.isEmpty() ? source : new PhraseSource(source, phrasePostings);
+
+	}
+
+	/**
+	 * The word tokens of a phrase, and how close each has to be to the one before it.
+	 */
+	private static class Phrase {
+
+		final String[] words;
+
+		/**
+		 * For every word token but the first, 0 if it comes right after the one before it, otherwise the
+		 * largest number of other words between the two, which come in either order.
+		 */
+		final int[] distances;
+
+		private Phrase(String[] words, int[] distances){
+			this.words = words;
+			this.distances = distances;
+		}
+
+		/**
+		 * @param term A keyword of a query.
+		 * @return The phrase, or null if the keyword is a single word token.
+		 */
+		static Phrase parse(String term){
+
+			if(term.indexOf('_') < 0 && term.indexOf(' ') < 0)
+				return null;
+
+			List<String> words = new ArrayList<String>();
+			List<Integer> distances = new ArrayList<Integer>();
+			int distance = 0;
+
+			for(String part : term.split(" ")){
+
+				if(part.startsWith(NEAR + "/")){
+					distance = getDistance(part);
+					continue;
+				}
+
+				for(String word : part.split("_")){
+
+					if(word.isEmpty())
+						continue;
+
+					words.add(word);
+					distances.add(distance);
+					distance = 0;
+				}
+			}
+
+			int[] wordDistances = new int[distances.size()];
+
+			for(int i = 0; i < wordDistances.length; i++)
+				wordDistances[i] = distances.get(i);
+
+			return new Phrase(words.toArray(new String[words.size()]), wordDistances);
+
+		}
+
+		/**
+		 * Find the documents with every word token of the phrase, rarest first, and then count how many times
+		 * the phrase appears in each from the positions of the word tokens. A document of which the positions
+		 * are unknown, e.g. indexed before they were recorded, matches by its word tokens alone, once.
+		 * @param source The postings of the word tokens.
+		 * @return The documents in which the phrase appears.
+		 */
+		Postings match(PostingsSource source){
+
+			Postings.Cursor[] cursors = new Postings.Cursor[this.words.length];
+			int rarest = 0;
+
+			for(int w = 0; w < this.words.length; w++){
+
+				int documentFrequency = source.getDocumentFrequency(this.words[w]);
+
+				if(documentFrequency == 0)
+					return Postings.EMPTY;
+
+				cursors[w] = source.getPositionalPostings(this.words[w]).cursor();
+
+				if(documentFrequency < source.getDocumentFrequency(this.words[rarest]))
+					rarest = w;
+			}
+
+			int[] documents = new int[16];
+			int[] frequencies = new int[16];
+			int length = 0;
+			int document = cursors[rarest].next();
+
+			while(document != Postings.NO_MORE_DOCUMENTS){
+
+				int next = document;
+
+				for(Postings.Cursor cursor : cursors)
+					next = Math.max(next, cursor.advance(document));
+
+				// Some word token is missing from the document, so go on from the next document with it.
+				if(next != document){
+					document = cursors[rarest].advance(next);
+					continue;
+				}
+
+				int frequency = this.count(cursors);
+
+				if(frequency > 0){
+
+					if(length == documents.length){
+						documents = Arrays.copyOf(documents, 2 * length);
+						frequencies = Arrays.copyOf(frequencies, 2 * length);
+					}
+
+					documents[length] = document;
+					frequencies[length++] = frequency;
+				}
+
+				document = cursors[rarest].next();
+			}
+
+			return Postings.of(documents, frequencies, length);
+
+		}
+
+		/**
+		 * @return Number of times the phrase appears in the document the cursors of its word tokens are all on.
+		 */
+		private int count(Postings.Cursor[] cursors){
+
+			int[][] positions = new int[cursors.length][];
+
+			for(int w = 0; w < cursors.length; w++){
+				if((positions[w] = cursors[w].positions()) == null)
+					return 1;
+			}
+
+			int count = 0;
+
+			for(int position : positions[0]){
+				if(this.follows(positions, 1, position))
+					count++;
+			}
+
+			return count;
+
+		}
+
+		/**
+		 * @return True if the word tokens of the phrase from the given one on appear at positions following on
+		 * from the position of the one before it.
+		 */
+		private boolean follows(int[][] positions, int word, int previous){
+
+			if(word == this.words.length)
+				return true;
+
+			int[] candidates = positions[word];
+
+			if(this.distances[word] == 0)
+				return Arrays.binarySearch(candidates, previous + 1) >= 0 && this.follows(positions, word + 1, previous + 1);
+
+			// At most the distance of other words between the two.
+			int i = Arrays.binarySearch(candidates, previous - this.distances[word] - 1);
+
+			for(i = i < 0 ? -i - 1 : i; i < candidates.length && candidates[i] <= previous + this.distances[word] + 1; i++){
+				if(candidates[i] != previous && this.follows(positions, word + 1, candidates[i]))
+					return true;
+			}
+
+			return false;
+
+		}
+
+	}
+
+	/**
+	 * The postings of a source, along with those of the phrases matched against it.
+	 */
+	private static class PhraseSource implements PostingsSource {
+
+		private final PostingsSource source;
+		private final Map<String, Postings> phrasePostings;
+
+		PhraseSource(PostingsSource source, Map<String, Postings> phrasePostings){
+			this.source = source;
+			this.phrasePostings = phrasePostings;
+		}
+
+		public int getDocumentFrequency(String term){
+
+			Postings postings = this.phrasePostings.get(term);
+
+			return postings != null ? postings.size() : this.source.getDocumentFrequency(term);
+
+		}
+
+		public Postings getPostings(String term){
+
+			Postings postings = this.phrasePostings.get(term);
+
+			return postings != null ? postings : this.source.getPostings(term);
+
+		}
+
+		public Postings getPositionalPostings(String term){
+
+			Postings postings = this.phrasePostings.get(term);
+
+			return postings != null ? postings : this.source.getPositionalPostings(term);
+
+		}
+
+		public int getMaxFrequency(String term){
+
+			Postings postings = this.phrasePostings.get(term);
+
+			if(postings == null)
+				return this.source.getMaxFrequency(term);
+
+			int maxFrequency = 0;
+
+			for(int frequency : postings.toFrequencyArray())
+				maxFrequency = Math.max(maxFrequency, frequency);
+
+			return maxFrequency;
+
+		}
+
+		public int getMinLength(String term){
+
+			Postings postings = this.phrasePostings.get(term);
+
+			if(postings == null)
+				return this.source.getMinLength(term);
+
+			int minLength = Integer.MAX_VALUE;
+
+			for(int document : postings.toArray())
+				minLength = Math.min(minLength, this.source.getDocumentLength(document));
+
+			return minLength;
+
+		}
+
+		public int getDocumentLength(int document){
+			return this.source.getDocumentLength(document);
+		}
+
+		public boolean isCurrent(int document){
+			return this.source.isCurrent(document);
+		}
+
+		public String getUri(int document){
+			return this.source.getUri(document);
+		}
+
+	}
+
+	/**
+	 * @return The documents with any of the keywords of a group.
+	 */
+	private static Postings union(PostingsSource source, List<String> group){
+
+		Postings documents = null;
+
+		for(String term : group){
+
+			if(source.getDocumentFrequency(term) == 0)
+				continue;
+
+			Postings postings = source.getPostings(term);
+
+			documents = documents == null ? postings : documents.union(postings);
+		}
+
+		return documents == null ? Postings.EMPTY : documents;
+
+	}
+
+	@Override
+	public String toString(){
+
+		StringBuilder query = new StringBuilder();
+
+		for(List<String> group : this.required)
+			query.append(query.length() > 0 ? " " : "").append(join(group));
+
+		for(List<String> group : this.excluded)
+			query.append(query.length() > 0 ? " " : "").append(NOT).append(" ").append(join(group));
+
+		return query.toString();
+
+	}
+
+	private static String join(List<String> group){
+
+		StringBuilder joined = new StringBuilder();
+
+		for(String term : group)
+			joined.append(joined.length() > 0 ? " " + OR + " " : "").append(term);
+
+		return joined.toString();
+
+	}
+
+}
@@ -0,0 +1,1511 @@
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The inverse index of an index file, kept on disk as a series of immutable segments so that saving a crawl only
+ * writes the documents indexed since the last save, instead of the whole index again. The index file itself is
+ * the oldest segment; every later one is written next to it as &lt;index file&gt;.&lt;generation&gt;.seg. A
+ * document found in several segments is taken from the newest one. Whenever the newest segments pile up, a
+ * background thread merges them: a run of at least mergeFactor segments of similar size at the end of the series
+ * is written out again as a single segment, so that a document is rewritten about log(documents) times over the
+ * life of the index file.
+ * Every file records the generation of the newest segment it covers. Segments of a generation no newer than the
+ * one recorded by the index file are already part of it, so writing a merged index file over the old one is enough
+ * to supersede them all at once, even if the segments are left behind by a crash.
+ * Every segment numbers its documents by itself, in the order of their URIs, so that opening an index file does
+ * not read its URIs: a document is looked up by a binary search of each segment, newest first, and a query is
+ * answered segment by segment, as each document has a single current version held in a single segment. Only
+ * segments written since the index file was last merged are checked for older versions of their documents when
+ * opened, so that opening a merged index file takes the same time whatever its size.
+ * Documents belong to facets, e.g. the countries they have been found from, so that a single index holds every
+ * document once whichever facets it belongs to, and a query is answered within a facet by checking the bitmap of
+ * the facet in every segment. A new version of a document keeps the facets of the one it replaces. A segment may
+ * replace a facet as a whole, e.g. once its documents have been crawled again from scratch, in which case the
+ * facet of that name is ignored in every older segment.
+ * A document removed by a writer, e.g. a crawler holding a newer version of it in memory, is only dropped from the
+ * segments once the writer flushes, along with the segment of its new documents. Until then the saved version is
+ * only hidden from the queries of that writer, so that everyone else keeps finding it.
+ */
+public class SegmentedIndex {
+
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	/**
+	 * The indexes opened by getIndex, by the absolute path of their index file.
+	 */
+	private static final Map<String, SegmentedIndex> indexes = new HashMap<String, SegmentedIndex>();
+
+	private final String indexFile;
+	private final UriDictionary uris;
+	private final int mergeFactor;
+
+	/**
+	 * The segments, oldest first.
+	 */
+	private List<Segment> segments = new ArrayList<Segment>();
+
+	/**
+	 * Number of current documents in the segments, and of their word tokens.
+	 */
+	private int size = 0;
+	private long totalLength = 0;
+
+	private int nextGeneration = 1;
+
+	/**
+	 * The URIs of the documents removed by every writer since it last flushed, by writer.
+	 */
+	private final Map<Object, Set<String>> pending = new WeakHashMap<Object, Set<String>>();
+
+	private boolean merging = false;
+
+	/**
+	 * Set once the index has been imported into another index file, after which it is no longer merged.
+	 */
+	private boolean closed = false;
+
+	private static final ExecutorService merger = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "index-merger");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Open the segments of an index file. An empty or missing index file has no segments.
+	 * @param indexFile The index file.
+	 * @param uris The dictionary numbering the documents saved to the index.
+	 * @param mergeFactor Number of segments of similar size merged together.
+	 */
+	public SegmentedIndex(String indexFile, UriDictionary uris, int mergeFactor){
+
+		this.indexFile = indexFile;
+		this.uris = uris;
+		this.mergeFactor = Math.max(2, mergeFactor);
+
+		File base = new File(indexFile);
+		long baseGeneration = 0;
+
+		if(base.length() > 0 && this.open(base))
+			baseGeneration = this.segments.get(0).generation;
+
+		this.nextGeneration = (int)baseGeneration + 1;
+
+		for(File segmentFile : segmentFiles(indexFile)){
+
+			// Left behind by a crash right after the index file covering it was written.
+			if(generation(segmentFile) <= baseGeneration){
+				segmentFile.delete();
+				continue;
+			}
+
+			this.open(segmentFile);
+			this.nextGeneration = Math.max(this.nextGeneration, generation(segmentFile) + 1);
+		}
+
+		// Oldest first, so that the segments before the one at hand hold a single version of every document.
+		for(int s = 1; s < this.segments.size(); s++){
+
+			Segment segment = this.segments.get(s);
+
+			for(String facet : segment.index.getFacetNames()){
+				if(segment.index.replacesFacet(facet))
+					this.replaceFacet(facet, s);
+			}
+
+			for(int i = 0; i < segment.index.getUriCount(); i++){
+				if(!segment.dead.get(i))
+					this.drop(segment.index.getUri(i), s);
+			}
+		}
+
+		if(this.segments.size() > 1)
+			System.out.println(indexFile + ": " + this.segments.size() + " segments, " + this.size + " documents.");
+
+		this.scheduleMerge();
+
+	}
+
+	/**
+	 * Get the index of the given index file shared by the whole application, opening it if needed, so that every
+	 * document is held by a single version in a single index.
+	 * @param indexFile The index file.
+	 * @param uris The dictionary numbering the documents saved to the index, if it is opened.
+	 * @param mergeFactor Number of segments of similar size merged together, if it is opened.
+	 * @return The index.
+	 */
+	public static synchronized SegmentedIndex getIndex(String indexFile, UriDictionary uris, int mergeFactor){
+
+		String path = new File(indexFile).getAbsolutePath();
+		SegmentedIndex index = indexes.get(path);
+
+		if(index == null){
+			index = new SegmentedIndex(indexFile, uris, mergeFactor);
+			indexes.put(path, index);
+		}
+
+		return index;
+
+	}
+
+	/**
+	 * @return The index file.
+	 */
+	public String getIndexFile(){
+		return this.indexFile;
+	}
+
+	/**
+	 * @return When a segment of the index file was last written, in milliseconds since the epoch, 0 if the index
+	 * file has no segments.
+	 */
+	public synchronized long getLastUpdate(){
+
+		long lastUpdate = 0;
+
+		for(Segment segment : this.segments)
+			lastUpdate = Math.max(lastUpdate, segment.index.getCreated());
+
+		return lastUpdate;
+
+	}
+
+	/**
+	 * @param facet The name of a facet, null for all documents.
+	 * @return When documents were last added to the facet, in milliseconds since the epoch, 0 if never.
+	 */
+	public synchronized long getFacetLastUpdate(String facet){
+
+		if(facet == null)
+			return this.getLastUpdate();
+
+		long lastUpdate = 0;
+
+		for(Segment segment : this.segments){
+
+			BinaryIndexFile.Facet documents = segment.getFacet(facet);
+
+			if(documents != null)
+				lastUpdate = Math.max(lastUpdate, documents.updated);
+		}
+
+		return lastUpdate;
+
+	}
+
+	/**
+	 * Delete the index file and all of its segments.
+	 * @param indexFile The index file.
+	 * @return True if the index file itself could be deleted.
+	 */
+	public static boolean delete(String indexFile){
+
+		for(File segmentFile : segmentFiles(indexFile))
+			segmentFile.delete();
+
+		return new File(indexFile).delete();
+
+	}
+
+	/**
+	 * @return Number of documents in the segments.
+	 */
+	public synchronized int size(){
+		return this.size;
+	}
+
+	/**
+	 * @param facet The name of a facet, null for all documents.
+	 * @param writer A writer, e.g. a crawler, the documents of which removed since it last flushed are left out.
+	 * @return Number of documents of the facet in the segments.
+	 */
+	public synchronized int size(String facet, Object writer){
+
+		int size = facet == null ? this.size : 0;
+
+		for(Segment segment : this.segments){
+
+			BitSet hidden = segment.hidden.get(writer);
+
+			if(facet == null){
+
+				if(hidden == null)
+					continue;
+
+				BitSet current = (BitSet)hidden.clone();
+
+				current.andNot(segment.dead);
+				size -= current.cardinality();
+
+			} else if(segment.getFacet(facet) != null){
+
+				BitSet current = (BitSet)segment.getFacet(facet).documents.clone();
+
+				current.andNot(segment.dead);
+
+				if(hidden != null)
+					current.andNot(hidden);
+
+				size += current.cardinality();
+			}
+		}
+
+		return size;
+
+	}
+
+	/**
+	 * @param facet The name of a facet, null for all documents.
+	 * @return True if a segment has documents of the facet, even if only replaced ones.
+	 */
+	public synchronized boolean hasFacet(String facet){
+
+		for(Segment segment : this.segments){
+			if(facet == null || segment.getFacet(facet) != null)
+				return true;
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * @return The names of the facets of the segments, in order.
+	 */
+	public synchronized SortedSet<String> getFacets(){
+
+		SortedSet<String> facets = new TreeSet<String>();
+
+		for(Segment segment : this.segments)
+			facets.addAll(segment.getFacetNames());
+
+		return facets;
+
+	}
+
+	/**
+	 * @param writer A writer, e.g. a crawler, the documents of which removed since it last flushed are left out.
+	 * @return Number of word tokens of the documents in the segments, as far as their lengths are known.
+	 */
+	public synchronized long getTotalLength(Object writer){
+
+		long totalLength = this.totalLength;
+
+		for(Segment segment : this.segments){
+
+			BitSet hidden = segment.hidden.get(writer);
+
+			for(int i = hidden != null ? hidden.nextSetBit(0) : -1; i >= 0; i = hidden.nextSetBit(i + 1)){
+				if(!segment.dead.get(i))
+					totalLength -= segment.index.getDocumentLength(i);
+			}
+		}
+
+		return totalLength;
+
+	}
+
+	/**
+	 * @param uri The URI of a document.
+	 * @param facet The name of a facet, null for all documents.
+	 * @param writer A writer, e.g. a crawler, the documents of which removed since it last flushed are left out.
+	 * @return True if a segment holds the current version of the document, in the facet.
+	 */
+	public synchronized boolean contains(String uri, String facet, Object writer){
+
+		for(int s = this.segments.size() - 1; s >= 0; s--){
+
+			Segment segment = this.segments.get(s);
+			int document = segment.index.findUri(uri);
+
+			// Any older version has been replaced by this one.
+			if(document >= 0)
+				return !segment.dead.get(document) && !segment.isHidden(writer, document) 
+						&& (facet == null || segment.hasFacet(facet, document));
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Remove a document from the segments, e.g. once a newer version of it is held in memory by a crawler. The
+	 * saved version is only dropped once the writer removing it next flushes, the new version then keeping its
+	 * facets, and is until then hidden from the queries of that writer alone.
+	 * @param uri The URI of the document.
+	 * @param writer The writer removing it.
+	 */
+	public synchronized void remove(String uri, Object writer){
+
+		Set<String> removed = this.pending.get(writer);
+
+		if(removed == null){
+			removed = new HashSet<String>();
+			this.pending.put(writer, removed);
+		}
+
+		if(!removed.add(uri))
+			return;
+
+		for(int s = this.segments.size() - 1; s >= 0; s--){
+
+			Segment segment = this.segments.get(s);
+			int document = segment.index.findUri(uri);
+
+			if(document >= 0){
+
+				if(!segment.dead.get(document))
+					segment.hide(writer, document);
+
+				return;
+			}
+		}
+
+	}
+
+	/**
+	 * Drop the current version of a document from the segments older than the given one.
+	 */
+	private void drop(String uri, int newer){
+
+		for(int s = newer - 1; s >= 0; s--){
+
+			Segment segment = this.segments.get(s);
+			int document = segment.index.findUri(uri);
+
+			if(document >= 0 && !segment.dead.get(document)){
+				segment.dead.set(document);
+				segment.deadFrequencies.clear();
+				this.size--;
+				this.totalLength -= segment.index.getDocumentLength(document);
+				return;
+			}
+		}
+
+	}
+
+	/**
+	 * Ignore a facet in the segments older than the given one.
+	 */
+	private void replaceFacet(String facet, int newer){
+
+		for(int s = 0; s < newer; s++)
+			this.segments.get(s).voided.add(facet);
+
+	}
+
+	/**
+	 * @param term A word token.
+	 * @return True if a segment has the word token, even if only in documents replaced since.
+	 */
+	public synchronized boolean hasTerm(String term){
+
+		for(Segment segment : this.segments){
+			if(segment.index.findTerm(term) >= 0)
+				return true;
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * @param pattern A pattern of word tokens, in which * stands for any characters and ? for a single one.
+	 * @return The word tokens of the segments matching it, in order, even if only in documents replaced since.
+	 */
+	public synchronized SortedSet<String> findTerms(String pattern){
+
+		SortedSet<String> terms = new TreeSet<String>();
+
+		for(Segment segment : this.segments)
+			terms.addAll(segment.index.findTerms(pattern));
+
+		return terms;
+
+	}
+
+	/**
+	 * @param term A word token.
+	 * @param maxEdits Number of bytes inserted, deleted, replaced or swapped.
+	 * @param prefixLength Number of first bytes of the word token the others must start with.
+	 * @return The word tokens of the segments within that number of edits of it, in order, even if only in
+	 * documents replaced since.
+	 */
+	public synchronized SortedSet<String> findSimilar(String term, int maxEdits, int prefixLength){
+
+		SortedSet<String> terms = new TreeSet<String>();
+
+		for(Segment segment : this.segments)
+			terms.addAll(segment.index.findSimilar(term, maxEdits, prefixLength));
+
+		return terms;
+
+	}
+
+	/**
+	 * @param term A word token.
+	 * @param writer A writer, e.g. a crawler, the documents of which removed since it last flushed are left out.
+	 * @return Number of current documents of all segments in which it appears, so that it is counted among the
+	 * same documents as size(null, writer).
+	 */
+	public synchronized int getDocumentFrequency(String term, Object writer){
+
+		int documentFrequency = 0;
+
+		for(Segment segment : this.segments)
+			documentFrequency += segment.getCurrentDocumentFrequency(term, segment.hidden.get(writer));
+
+		return documentFrequency;
+
+	}
+
+	/**
+	 * Score the current documents of a facet of all segments matching a query, keeping the best ones.
+	 * @param query A search query.
+	 * @param scorer The scorer of the whole index.
+	 * @param top The best documents found so far.
+	 * @param facet The name of the facet, null for all documents.
+	 * @param writer A writer, e.g. a crawler, the documents of which removed since it last flushed are left out.
+	 */
+	public synchronized void rank(SearchQuery query, Bm25Scorer scorer, TopDocuments top, String facet, Object writer){
+
+		for(Segment segment : this.segments){
+
+			Postings documents = null;
+
+			if(facet != null && (documents = segment.getFacetDocuments(facet)) == null)
+				continue;
+
+			BitSet hidden = segment.hidden.get(writer);
+
+			query.rank(documents == null && hidden == null ? segment : new SegmentView(segment, documents, hidden), 
+					scorer, top);
+		}
+
+	}
+
+	/**
+	 * Write the given documents of a writer as a new segment, replacing any version of them in older segments,
+	 * and drop the documents it has removed since it last flushed. The documents keep the facets of the versions
+	 * they replace, and are added to the given facet.
+	 * @param termPostings The postings of every word token of the documents.
+	 * @param documents The document numbers, in ascending order.
+	 * @param lengths The number of word tokens of every document, in the same order.
+	 * @param facet The name of the facet the documents are added to, null for none.
+	 * @param replaceFacet True if the documents replace the facet as a whole: the documents of older segments no
+	 * longer belong to it.
+	 * @param writer The writer of the documents, e.g. a crawler, null for none.
+	 * @throws IOException If the segment cannot be written, in which case the documents removed by the writer are
+	 * still removed on its next flush.
+	 */
+	public void flush(Map<String, Postings> termPostings, int[] documents, int[] lengths, String facet, 
+			boolean replaceFacet, Object writer) throws IOException {
+
+		if(documents.length == 0){
+
+			synchronized(this){
+				this.dropRemoved(writer);
+			}
+
+			return;
+		}
+
+		File segmentFile;
+		long generation;
+		long created = System.currentTimeMillis();
+
+		// Numbered by the position of the documents in the segment written.
+		Map<String, BitSet> facetDocuments = new HashMap<String, BitSet>();
+
+		synchronized(this){
+
+			generation = this.nextGeneration++;
+			segmentFile = this.segments.isEmpty() && !this.merging ? new File(this.indexFile)
+					: new File(this.indexFile + "." + generation + SEGMENT_SUFFIX);
+
+			// The versions replaced are still current until the segment is written.
+			for(int i = 0; i < documents.length; i++){
+				for(String name : this.getFacetNames(this.uris.getInBrackets(documents[i])))
+					addFacet(facetDocuments, name, i);
+			}
+		}
+
+		if(facet != null){
+			for(int i = 0; i < documents.length; i++)
+				addFacet(facetDocuments, facet, i);
+		}
+
+		Map<String, BinaryIndexFile.Facet> facets = new HashMap<String, BinaryIndexFile.Facet>();
+
+		// Only the given facet is updated by the segment. The others are carried over from older versions.
+		for(Map.Entry<String, BitSet> name : facetDocuments.entrySet())
+			facets.put(name.getKey(), name.getKey().equals(facet) ? new BinaryIndexFile.Facet(name.getValue(), created, replaceFacet)
+					: new BinaryIndexFile.Facet(name.getValue(), 0, false));
+
+		writeSegment(segmentFile, created, generation, termPostings, documents, lengths, facets, this.uris);
+
+		synchronized(this){
+
+			Segment segment = new Segment(segmentFile);
+
+			for(int document : documents)
+				this.drop(this.uris.getInBrackets(document), this.segments.size());
+
+			this.dropRemoved(writer);
+
+			// Other writers holding newer versions of the documents keep them hidden from their queries.
+			for(Map.Entry<Object, Set<String>> other : this.pending.entrySet()){
+				for(String uri : other.getValue()){
+
+					int document = segment.index.findUri(uri);
+
+					if(document >= 0)
+						segment.hide(other.getKey(), document);
+				}
+			}
+
+			if(facet != null && replaceFacet)
+				this.replaceFacet(facet, this.segments.size());
+
+			this.segments.add(segment);
+			this.size += documents.length;
+			this.totalLength += segment.index.getTotalLength();
+		}
+
+		this.scheduleMerge();
+
+	}
+
+	/**
+	 * Drop the documents removed by a writer since it last flushed from the segments.
+	 */
+	private void dropRemoved(Object writer){
+
+		Set<String> removed = writer != null ? this.pending.remove(writer) : null;
+
+		if(removed != null){
+			for(String uri : removed)
+				this.drop(uri, this.segments.size());
+		}
+
+		for(Segment segment : this.segments)
+			segment.hidden.remove(writer);
+
+	}
+
+	/**
+	 * Add the documents of another index file to this one, in a facet, and delete the other index file, e.g. to
+	 * bring an index file built for a single facet into an index shared by all of them.
+	 * @param otherFile The other index file.
+	 * @param facet The name of the facet the documents are added to, replacing the facet of that name as a whole,
+	 * or null for none.
+	 * @throws IOException If the documents cannot be written, in which case the other index file is left as it was.
+	 */
+	public void importIndex(String otherFile, String facet) throws IOException {
+
+		// An index file that cannot be read, e.g. of another format version, is not imported as if it were empty.
+		if(new File(otherFile).length() > 0)
+			new BinaryIndexFile(new File(otherFile));
+
+		SegmentedIndex other = new SegmentedIndex(otherFile, this.uris, this.mergeFactor);
+		List<Segment> all = other.close();
+
+		Map<String, PostingsBuilder> termPostings = new HashMap<String, PostingsBuilder>();
+		int[] lengths = new int[0];
+		BitSet documents = new BitSet();
+
+		for(Segment segment : all){
+
+			int[] numbers = new int[segment.index.getUriCount()];
+
+			for(int i = 0; i < numbers.length; i++){
+
+				numbers[i] = segment.dead.get(i) ? -1 : this.uris.intern(segment.index.getUri(i));
+
+				if(numbers[i] < 0)
+					continue;
+
+				if(numbers[i] >= lengths.length)
+					lengths = Arrays.copyOf(lengths, Math.max(numbers[i] + 1, 2 * lengths.length));
+
+				lengths[numbers[i]] = segment.index.getDocumentLength(i);
+				documents.set(numbers[i]);
+			}
+
+			for(int t = 0; t < segment.index.getTermCount(); t++){
+
+				String term = segment.index.getTerm(t);
+				PostingsBuilder postings = termPostings.get(term);
+				Postings.Cursor cursor = segment.index.getPositionalPostings(t).cursor();
+
+				for(int local = cursor.next(); local != Postings.NO_MORE_DOCUMENTS; local = cursor.next()){
+
+					if(numbers[local] < 0)
+						continue;
+
+					if(postings == null){
+						postings = new PostingsBuilder();
+						termPostings.put(term, postings);
+					}
+
+					postings.add(numbers[local], cursor.frequency(), cursor.positions());
+				}
+			}
+		}
+
+		Map<String, Postings> builtPostings = new HashMap<String, Postings>(termPostings.size() * 2);
+
+		for(Map.Entry<String, PostingsBuilder> term : termPostings.entrySet())
+			builtPostings.put(term.getKey(), term.getValue().build());
+
+		int[] documentNumbers = documents.stream().toArray();
+		int[] documentLengths = new int[documentNumbers.length];
+
+		for(int i = 0; i < documentNumbers.length; i++)
+			documentLengths[i] = lengths[documentNumbers[i]];
+
+		this.flush(builtPostings, documentNumbers, documentLengths, facet, facet != null, null);
+
+		for(Segment segment : all)
+			segment.release();
+
+		delete(otherFile);
+
+		System.out.println("Imported " + otherFile + " into " + this.indexFile + ": " + documentNumbers.length + " documents.");
+
+	}
+
+	/**
+	 * @return The facets of the current version of a document, none if the segments do not hold it.
+	 */
+	private Set<String> getFacetNames(String uri){
+
+		for(int s = this.segments.size() - 1; s >= 0; s--){
+
+			Segment segment = this.segments.get(s);
+			int document = segment.index.findUri(uri);
+
+			if(document >= 0)
+				return segment.dead.get(document) ? Collections.<String>emptySet() : segment.getFacetNames(document);
+		}
+
+		return Collections.emptySet();
+
+	}
+
+	private static void addFacet(Map<String, BitSet> facets, String name, int document){
+
+		BitSet documents = facets.get(name);
+
+		if(documents == null){
+			documents = new BitSet();
+			facets.put(name, documents);
+		}
+
+		documents.set(document);
+
+	}
+
+	/**
+	 * Write postings numbered by a dictionary to an index file, numbering the documents anew in the file.
+	 * @param file The index file to write.
+	 * @param created The creation time to record.
+	 * @param generation The generation to record.
+	 * @param termPostings The postings of every word token.
+	 * @param documents The document numbers, in ascending order.
+	 * @param lengths The number of word tokens of every document, in the same order.
+	 * @param uris The dictionary numbering the documents.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public static void writeSegment(File file, long created, long generation, Map<String, Postings> termPostings, 
+			int[] documents, int[] lengths, UriDictionary uris) throws IOException {
+		writeSegment(file, created, generation, termPostings, documents, lengths, 
+				Collections.<String, BinaryIndexFile.Facet>emptyMap(), uris);
+	}
+
+	/**
+	 * Write postings numbered by a dictionary to an index file, along with facets of the documents.
+	 * @param facets Every facet, by name, its documents numbered by their position in the documents given.
+	 * @see #writeSegment(File, long, long, Map, int[], int[], UriDictionary)
+	 */
+	public static void writeSegment(File file, long created, long generation, Map<String, Postings> termPostings, 
+			int[] documents, int[] lengths, Map<String, BinaryIndexFile.Facet> facets, UriDictionary uris) throws IOException {
+
+		Map<String, Postings> localPostings = new HashMap<String, Postings>(termPostings.size() * 2);
+
+		// Position of every document in the file, by dictionary number less the smallest one.
+		int[] positions = new int[documents.length > 0 ? documents[documents.length - 1] - documents[0] + 1 : 0];
+
+		for(int i = 0; i < documents.length; i++)
+			positions[documents[i] - documents[0]] = i;
+
+		for(Map.Entry<String, Postings> term : termPostings.entrySet()){
+
+			int[] termDocuments = term.getValue().toArray();
+
+			// Both are sorted, so the positions of the documents come out sorted too.
+			for(int i = 0; i < termDocuments.length; i++)
+				termDocuments[i] = positions[termDocuments[i] - documents[0]];
+
+			localPostings.put(term.getKey(), Postings.of(termDocuments, term.getValue().toFrequencyArray(), 
+					term.getValue().toPositionArrays(), termDocuments.length));
+		}
+
+		List<String> documentURIs = new ArrayList<String>(documents.length);
+
+		for(int document : documents)
+			documentURIs.add(uris.getInBrackets(document));
+
+		// Numbered once more in the order of their URIs.
+		BinaryIndexFile.write(file, created, generation, localPostings, documentURIs, lengths, facets);
+
+	}
+
+	/**
+	 * Stop merging the segments, once the merge under way is over.
+	 * @return The segments.
+	 * @throws InterruptedIOException If interrupted while waiting for the merge.
+	 */
+	private synchronized List<Segment> close() throws InterruptedIOException {
+
+		try {
+
+			while(this.merging)
+				this.wait();
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the segments to be merged");
+		}
+
+		this.closed = true;
+
+		return new ArrayList<Segment>(this.segments);
+
+	}
+
+	/**
+	 * @return True if the segment could be opened.
+	 */
+	private boolean open(File segmentFile){
+
+		try {
+
+			Segment segment = new Segment(segmentFile);
+
+			this.segments.add(segment);
+			this.size += segment.index.getUriCount();
+			this.totalLength += segment.index.getTotalLength();
+
+			return true;
+
+		} catch (IOException e) {
+			System.out.println("Skipping unreadable index segment " + segmentFile.getName() + ": " + e.getMessage());
+			return false;
+		}
+
+	}
+
+	private void scheduleMerge(){
+
+		synchronized(this){
+
+			if(this.merging || this.closed || this.findMergeRun() == null)
+				return;
+
+			this.merging = true;
+		}
+
+		merger.execute(new Runnable() {
+			public void run() {
+				SegmentedIndex.this.merge();
+			}
+		});
+
+	}
+
+	/**
+	 * @return The positions of the first and last segments of the run of segments to merge, or null if the
+	 * segments do not need merging.
+	 */
+	private synchronized int[] findMergeRun(){
+
+		int last = this.segments.size() - 1;
+		int first = last;
+
+		while(first > 0 && this.segments.get(first - 1).tier(this.mergeFactor) == this.segments.get(last).tier(this.mergeFactor))
+			first--;
+
+		return last - first + 1 >= this.mergeFactor ? new int[] {first, last} : null;
+
+	}
+
+	/**
+	 * Merge runs of segments until none is left to merge.
+	 */
+	private void merge(){
+
+		try {
+
+			int[] run;
+
+			while((run = this.findMergeRun()) != null)
+				this.merge(run[0], run[1]);
+
+		} catch (IOException e) {
+			System.out.println("Could not merge the segments of " + this.indexFile + ": " + e.getMessage());
+		} finally {
+
+			synchronized(this){
+				this.merging = false;
+				this.notifyAll();
+			}
+		}
+
+	}
+
+	/**
+	 * Merge a run of segments into a single one, written under the name of the newest of them (or of the index
+	 * file itself if the run starts with it), then delete the others oldest first. A crash meanwhile leaves
+	 * either the old segments or newer versions of the same documents.
+	 */
+	private void merge(int first, int last) throws IOException {
+
+		List<Segment> run;
+
+		synchronized(this){
+			run = new ArrayList<Segment>(this.segments.subList(first, last + 1));
+		}
+
+		File mergedFile = first == 0 ? new File(this.indexFile) : run.get(run.size() - 1).file;
+
+		int[][] numbers = this.writeMerged(run, mergedFile, run.get(run.size() - 1).generation);
+		Segment merged = new Segment(mergedFile);
+		int documents = merged.index.getUriCount();
+
+		synchronized(this){
+
+			// Documents replaced while the run was being merged are replaced in the merged segment as well.
+			for(int s = 0; s < run.size(); s++){
+				for(int i = run.get(s).dead.nextSetBit(0); i >= 0; i = run.get(s).dead.nextSetBit(i + 1)){
+					if(numbers[s][i] >= 0)
+						merged.dead.set(numbers[s][i]);
+				}
+			}
+
+			// So are the documents hidden from a writer.
+			for(int s = 0; s < run.size(); s++){
+				for(Map.Entry<Object, BitSet> writer : run.get(s).hidden.entrySet()){
+					for(int i = writer.getValue().nextSetBit(0); i >= 0; i = writer.getValue().nextSetBit(i + 1)){
+						if(numbers[s][i] >= 0)
+							merged.hide(writer.getKey(), numbers[s][i]);
+					}
+				}
+			}
+
+			// A facet replaced by a segment newer than the run is ignored in all of the run.
+			merged.voided.addAll(run.get(0).voided);
+
+			for(Segment segment : run)
+				merged.voided.retainAll(segment.voided);
+
+			int position = this.segments.indexOf(run.get(0));
+
+			this.segments.subList(position, position + run.size()).clear();
+			this.segments.add(position, merged);
+		}
+
+		for(Segment segment : run){
+
+			if(!segment.file.equals(mergedFile))
+				segment.file.delete();
+
+			segment.release();
+		}
+
+		System.out.println("Merged " + run.size() + " segments of " + this.indexFile + " into " + mergedFile.getName()
+				+ ": " + documents + " documents.");
+
+	}
+
+	/**
+	 * Write the documents of a run of segments not replaced by newer versions to a single file.
+	 * @return The number in the file written of every document of each segment of the run, -1 for the ones
+	 * left out.
+	 */
+	private int[][] writeMerged(List<Segment> run, File mergedFile, long generation) throws IOException {
+
+		List<BitSet> dead = new ArrayList<BitSet>();
+		List<Map<String, BinaryIndexFile.Facet>> runFacets = new ArrayList<Map<String, BinaryIndexFile.Facet>>();
+
+		synchronized(this){
+
+			for(Segment segment : run){
+
+				Map<String, BinaryIndexFile.Facet> facets = new HashMap<String, BinaryIndexFile.Facet>();
+
+				for(String name : segment.getFacetNames())
+					facets.put(name, segment.getFacet(name));
+
+				dead.add((BitSet)segment.dead.clone());
+				runFacets.add(facets);
+			}
+		}
+
+		long created = 0;
+		int[][] numbers = new int[run.size()][];
+		List<String> documentURIs = new ArrayList<String>();
+		int[] lengths = new int[16];
+		Map<String, PostingsBuilder> termPostings = new HashMap<String, PostingsBuilder>();
+
+		for(int s = 0; s < run.size(); s++){
+
+			Segment segment = run.get(s);
+
+			created = Math.max(created, segment.index.getCreated());
+			numbers[s] = new int[segment.index.getUriCount()];
+
+			// Numbered in the order they are met, until the file numbers them in the order of their URIs.
+			for(int i = 0; i < numbers[s].length; i++){
+
+				if(dead.get(s).get(i)){
+					numbers[s][i] = -1;
+					continue;
+				}
+
+				if(documentURIs.size() == lengths.length)
+					lengths = Arrays.copyOf(lengths, 2 * lengths.length);
+
+				numbers[s][i] = documentURIs.size();
+				lengths[numbers[s][i]] = segment.index.getDocumentLength(i);
+				documentURIs.add(segment.index.getUri(i));
+			}
+
+			for(int t = 0; t < segment.index.getTermCount(); t++){
+
+				String term = segment.index.getTerm(t);
+				PostingsBuilder postings = termPostings.get(term);
+				Postings.Cursor cursor = segment.index.getPositionalPostings(t).cursor();
+
+				for(int local = cursor.next(); local != Postings.NO_MORE_DOCUMENTS; local = cursor.next()){
+
+					if(numbers[s][local] < 0)
+						continue;
+
+					if(postings == null){
+						postings = new PostingsBuilder();
+						termPostings.put(term, postings);
+					}
+
+					postings.add(numbers[s][local], cursor.frequency(), cursor.positions());
+				}
+			}
+		}
+
+		Map<String, Postings> builtPostings = new HashMap<String, Postings>(termPostings.size() * 2);
+
+		for(Map.Entry<String, PostingsBuilder> term : termPostings.entrySet())
+			builtPostings.put(term.getKey(), term.getValue().build());
+
+		// The facets of the documents kept, numbered in the order they are met, replacing the facets of older
+		// segments if any segment of the run does.
+		Map<String, BitSet> facetDocuments = new HashMap<String, BitSet>();
+		Map<String, BinaryIndexFile.Facet> facets = new HashMap<String, BinaryIndexFile.Facet>();
+
+		for(int s = 0; s < run.size(); s++){
+			for(Map.Entry<String, BinaryIndexFile.Facet> facet : runFacets.get(s).entrySet()){
+
+				BinaryIndexFile.Facet merged = facets.get(facet.getKey());
+				BitSet documents = facet.getValue().documents;
+
+				for(int i = documents.nextSetBit(0); i >= 0; i = documents.nextSetBit(i + 1)){
+					if(numbers[s][i] >= 0)
+						addFacet(facetDocuments, facet.getKey(), numbers[s][i]);
+				}
+
+				facets.put(facet.getKey(), new BinaryIndexFile.Facet(null, 
+						Math.max(facet.getValue().updated, merged != null ? merged.updated : 0), 
+						facet.getValue().replaces || (merged != null && merged.replaces)));
+			}
+		}
+
+		for(Map.Entry<String, BinaryIndexFile.Facet> facet : facets.entrySet()){
+
+			BitSet documents = facetDocuments.get(facet.getKey());
+
+			facet.setValue(new BinaryIndexFile.Facet(documents != null ? documents : new BitSet(), 
+					facet.getValue().updated, facet.getValue().replaces));
+		}
+
+		int[] fileNumbers = BinaryIndexFile.write(mergedFile, created, generation, builtPostings, documentURIs, 
+				Arrays.copyOf(lengths, documentURIs.size()), facets);
+
+		for(int[] segmentNumbers : numbers){
+			for(int i = 0; i < segmentNumbers.length; i++){
+				if(segmentNumbers[i] >= 0)
+					segmentNumbers[i] = fileNumbers[segmentNumbers[i]];
+			}
+		}
+
+		return numbers;
+
+	}
+
+	/**
+	 * @return The segment files of an index file other than the index file itself, oldest first.
+	 */
+	private static List<File> segmentFiles(String indexFile){
+
+		final File base = new File(indexFile).getAbsoluteFile();
+		List<File> files = new ArrayList<File>();
+
+		// Only <index file>.<generation>.seg, not the segments of another index file named after this one.
+		File[] found = base.getParentFile().listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String filename) {
+				return filename.startsWith(base.getName() + ".") && filename.endsWith(SEGMENT_SUFFIX)
+						&& filename.length() > base.getName().length() + 1 + SEGMENT_SUFFIX.length()
+						&& filename.substring(base.getName().length() + 1, filename.length() - SEGMENT_SUFFIX.length()).matches("[0-9]+");
+			}
+		});
+
+		if(found != null)
+			Collections.addAll(files, found);
+
+		Collections.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				return Integer.compare(generation(a), generation(b));
+			}
+		});
+
+		return files;
+
+	}
+
+	/**
+	 * @return The generation of a segment file, or -1 if its name has none.
+	 */
+	private static int generation(File segmentFile){
+
+		String name = segmentFile.getName();
+		String generation = name.substring(name.lastIndexOf('.', name.length() - SEGMENT_SUFFIX.length() - 1) + 1,
+				name.length() - SEGMENT_SUFFIX.length());
+
+		try {
+			return Integer.parseInt(generation);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+
+	}
+
+	/**
+	 * A segment file, along with the documents of it replaced by newer versions.
+	 */
+	private static class Segment implements SearchQuery.PostingsSource {
+
+		final File file;
+		final BinaryIndexFile index;
+
+		/**
+		 * Generation of the newest segment the file covers.
+		 */
+		final long generation;
+
+		/**
+		 * Numbers in the file of the documents replaced by a newer version.
+		 */
+		final BitSet dead = new BitSet();
+
+		/**
+		 * Names of the facets of the file replaced by a newer segment.
+		 */
+		final Set<String> voided = new HashSet<String>();
+
+		/**
+		 * Numbers in the file of the documents removed by a writer since it last flushed, by writer.
+		 */
+		final Map<Object, BitSet> hidden = new WeakHashMap<Object, BitSet>();
+
+		/**
+		 * Number of replaced documents in which every word token counted so far appears. Cleared whenever a
+		 * document of the segment is replaced.
+		 */
+		final Map<String, Integer> deadFrequencies = new HashMap<String, Integer>();
+
+		/**
+		 * The facets of the file read so far, by name, and their documents as postings.
+		 */
+		private final Map<String, BinaryIndexFile.Facet> facets = new HashMap<String, BinaryIndexFile.Facet>();
+		private final Map<String, Postings> facetDocuments = new HashMap<String, Postings>();
+
+		Segment(File file) throws IOException {
+
+			this.file = file;
+			this.index = new BinaryIndexFile(file);
+			this.generation = Math.max(this.index.getGeneration(), generation(file));
+
+		}
+
+		public int getDocumentFrequency(String term){
+
+			int position = this.index.findTerm(term);
+
+			return position < 0 ? 0 : this.index.getDocumentFrequency(position);
+
+		}
+
+		/**
+		 * @param hidden The documents hidden from a writer, null for none.
+		 * @return Number of documents of the segment in which a word token appears, leaving out the replaced and
+		 * the hidden ones.
+		 */
+		int getCurrentDocumentFrequency(String term, BitSet hidden){
+
+			int documentFrequency = this.getDocumentFrequency(term);
+
+			if(documentFrequency == 0)
+				return 0;
+
+			if(!this.dead.isEmpty()){
+
+				Integer deadFrequency = this.deadFrequencies.get(term);
+
+				if(deadFrequency == null){
+					deadFrequency = count(this.getPostings(term), this.dead);
+					this.deadFrequencies.put(term, deadFrequency);
+				}
+
+				documentFrequency -= deadFrequency;
+			}
+
+			if(hidden != null){
+
+				BitSet current = (BitSet)hidden.clone();
+
+				current.andNot(this.dead);
+				documentFrequency -= count(this.getPostings(term), current);
+			}
+
+			return documentFrequency;
+
+		}
+
+		/**
+		 * @return Number of the given documents found in the postings.
+		 */
+		private static int count(Postings postings, BitSet documents){
+
+			Postings.Cursor cursor = postings.cursor();
+			int count = 0;
+
+			for(int document = documents.nextSetBit(0); document >= 0; document = documents.nextSetBit(document + 1)){
+
+				int found = cursor.advance(document);
+
+				if(found == Postings.NO_MORE_DOCUMENTS)
+					break;
+
+				if(found == document)
+					count++;
+				else
+					document = found - 1;
+			}
+
+			return count;
+
+		}
+
+		/**
+		 * @return The postings of a word token of the segment, including replaced documents.
+		 */
+		public Postings getPostings(String term){
+			return PostingsCache.getShared().getPostings(this.index, this.index.findTerm(term));
+		}
+
+		/**
+		 * @return The postings of a word token of the segment with its positions, read from the file every time.
+		 */
+		public Postings getPositionalPostings(String term){
+			return this.index.getPositionalPostings(this.index.findTerm(term));
+		}
+
+		public int getMaxFrequency(String term){
+			return this.index.getMaxFrequency(this.index.findTerm(term));
+		}
+
+		public int getMinLength(String term){
+			return this.index.getMinLength(this.index.findTerm(term));
+		}
+
+		public int getDocumentLength(int document){
+			return this.index.getDocumentLength(document);
+		}
+
+		public boolean isCurrent(int document){
+			return !this.dead.get(document);
+		}
+
+		public String getUri(int document){
+			return this.index.getUri(document);
+		}
+
+		/**
+		 * @return The facet of the segment, or null if it has none or it has been replaced by a newer segment.
+		 */
+		synchronized BinaryIndexFile.Facet getFacet(String name){
+
+			if(this.voided.contains(name))
+				return null;
+
+			BinaryIndexFile.Facet facet = this.facets.get(name);
+
+			if(facet == null && (facet = this.index.getFacet(name)) != null)
+				this.facets.put(name, facet);
+
+			return facet;
+
+		}
+
+		/**
+		 * @return The documents of a facet of the segment, or null if it has none or it has been replaced by a
+		 * newer segment.
+		 */
+		synchronized Postings getFacetDocuments(String name){
+
+			BinaryIndexFile.Facet facet = this.getFacet(name);
+
+			if(facet == null)
+				return null;
+
+			Postings documents = this.facetDocuments.get(name);
+
+			if(documents == null){
+
+				int[] numbers = facet.documents.stream().toArray();
+
+				documents = Postings.of(numbers, numbers.length);
+				this.facetDocuments.put(name, documents);
+			}
+
+			return documents;
+
+		}
+
+		/**
+		 * @return The names of the facets of the segment not replaced by a newer segment.
+		 */
+		Set<String> getFacetNames(){
+
+			Set<String> names = new HashSet<String>(this.index.getFacetNames());
+
+			names.removeAll(this.voided);
+
+			return names;
+
+		}
+
+		/**
+		 * @return The names of the facets of a document of the segment not replaced by a newer segment.
+		 */
+		Set<String> getFacetNames(int document){
+
+			Set<String> names = new HashSet<String>();
+
+			for(String name : this.index.getFacetNames()){
+				if(this.hasFacet(name, document))
+					names.add(name);
+			}
+
+			return names;
+
+		}
+
+		boolean hasFacet(String name, int document){
+
+			BinaryIndexFile.Facet facet = this.getFacet(name);
+
+			return facet != null && facet.documents.get(document);
+
+		}
+
+		void hide(Object writer, int document){
+
+			BitSet documents = this.hidden.get(writer);
+
+			if(documents == null){
+				documents = new BitSet();
+				this.hidden.put(writer, documents);
+			}
+
+			documents.set(document);
+
+		}
+
+		boolean isHidden(Object writer, int document){
+
+			BitSet documents = this.hidden.get(writer);
+
+			return documents != null && documents.get(document);
+
+		}
+
+		/**
+		 * Drop the postings of the segment held in memory, once it is no longer part of the index.
+		 */
+		void release(){
+			PostingsCache.getShared().remove(this.index);
+		}
+
+		/**
+		 * @return Tier of the segment by its size: segments with between mergeFactor^k and mergeFactor^(k+1)
+		 * documents are in tier k.
+		 */
+		int tier(int mergeFactor){
+
+			int documents = this.index.getUriCount() - this.dead.cardinality();
+			int tier = 0;
+
+			while(documents >= mergeFactor){
+				documents /= mergeFactor;
+				tier++;
+			}
+
+			return tier;
+
+		}
+
+	}
+
+	/**
+	 * The documents of a segment in a facet, if any, other than the ones hidden from a writer. The postings of
+	 * the segment are restricted to the facet, so that a query is answered from the documents of the facet only,
+	 * its words taken rarest in the facet first and the bounds of their scores those of the facet.
+	 */
+	private static class SegmentView implements SearchQuery.PostingsSource {
+
+		final Segment segment;
+
+		/**
+		 * The documents of the facet, null for all of the segment.
+		 */
+		final Postings documents;
+
+		/**
+		 * The documents hidden from the writer, null for none.
+		 */
+		final BitSet hidden;
+
+		/**
+		 * The postings of the word tokens restricted to the facet so far, without and with positions.
+		 */
+		private final Map<String, Postings> postings = new HashMap<String, Postings>();
+		private final Map<String, Postings> positionalPostings = new HashMap<String, Postings>();
+
+		SegmentView(Segment segment, Postings documents, BitSet hidden){
+
+			this.segment = segment;
+			this.documents = documents;
+			this.hidden = hidden;
+
+		}
+
+		public int getDocumentFrequency(String term){
+			return this.documents == null ? this.segment.getDocumentFrequency(term) : this.getPostings(term).size();
+		}
+
+		public Postings getPostings(String term){
+
+			if(this.documents == null)
+				return this.segment.getPostings(term);
+
+			Postings restricted = this.postings.get(term);
+
+			if(restricted == null){
+				restricted = this.segment.getPostings(term).retain(this.documents);
+				this.postings.put(term, restricted);
+			}
+
+			return restricted;
+
+		}
+
+		public Postings getPositionalPostings(String term){
+
+			if(this.documents == null)
+				return this.segment.getPositionalPostings(term);
+
+			Postings restricted = this.positionalPostings.get(term);
+
+			if(restricted == null){
+				restricted = this.segment.getPositionalPostings(term).retain(this.documents);
+				this.positionalPostings.put(term, restricted);
+			}
+
+			return restricted;
+
+		}
+
+		public int getMaxFrequency(String term){
+
+			if(this.documents == null)
+				return this.segment.getMaxFrequency(term);
+
+			int maxFrequency = 0;
+			Postings.Cursor cursor = this.getPostings(term).cursor();
+
+			while(cursor.next() != Postings.NO_MORE_DOCUMENTS)
+				maxFrequency = Math.max(maxFrequency, cursor.frequency());
+
+			return maxFrequency;
+
+		}
+
+		public int getMinLength(String term){
+
+			if(this.documents == null)
+				return this.segment.getMinLength(term);
+
+			int minLength = Integer.MAX_VALUE;
+			Postings.Cursor cursor = this.getPostings(term).cursor();
+
+			for(int document = cursor.next(); document != Postings.NO_MORE_DOCUMENTS; document = cursor.next())
+				minLength = Math.min(minLength, this.segment.getDocumentLength(document));
+
+			return minLength == Integer.MAX_VALUE ? 0 : minLength;
+
+		}
+
+		public int getDocumentLength(int document){
+			return this.segment.getDocumentLength(document);
+		}
+
+		public boolean isCurrent(int document){
+			return this.segment.isCurrent(document) && (this.hidden == null || !this.hidden.get(document));
+		}
+
+		public String getUri(int document){
+			return this.segment.getUri(document);
+		}
+
+	}
+
+}
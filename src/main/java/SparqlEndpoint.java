@@ -0,0 +1,21 @@
+import com.hp.hpl.jena.query.ResultSet;
+
+/**
+ * A SPARQL endpoint the crawlers can send their queries to. Implementations return results that are fully
+ * read and no longer tied to the underlying query execution, so they can be iterated at leisure.
+ */
+public interface SparqlEndpoint {
+
+	/**
+	 * Execute the given SELECT query and return the results.
+	 * @param query The SPARQL query to be executed.
+	 * @return Results set.
+	 */
+	public ResultSet select(String query);
+
+	/**
+	 * @return Counters describing how the endpoint has been used, for reporting after a crawl.
+	 */
+	public String getStatistics();
+
+}
@@ -0,0 +1,147 @@
+import java.util.Map;
+import java.util.TreeMap;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Builds the SPARQL endpoint selected in the properties XML file. Endpoints are shared between all crawlers
+ * using the same settings, so that a local dataset is only loaded once per application run.
+ *
+ * The following tags are recognised, all optional:
+ * <ul>
+ * <li>endpoint_type: "remote" (default) or "local"</li>
+ * <li>endpoint_url: URL of the remote endpoint (defaults to http://dbpedia.org/sparql)</li>
+ * <li>endpoint_data_file: N-Triples file a local dataset is loaded from</li>
+ * <li>endpoint_tdb_directory: TDB directory backing a local dataset (held in memory if missing)</li>
+ * <li>endpoint_max_connections: connections kept open to a remote endpoint (defaults to 32)</li>
+ * <li>endpoint_timeout_ms: connection and socket timeout of a remote endpoint (defaults to 60000)</li>
+ * <li>endpoint_latency_ms, endpoint_jitter_ms: delay injected in every query</li>
+ * <li>endpoint_max_concurrency: highest number of queries in flight the adaptive limit can reach (defaults to 32)</li>
+ * <li>endpoint_max_attempts, endpoint_backoff_ms: retries of failed queries and the base of their backoff</li>
+ * <li>endpoint_breaker_failures, endpoint_breaker_cooldown_ms: consecutive failures that pause all queries and for how long</li>
+ * <li>cache_directory: directory of the response cache, "none" to disable it (defaults to sparql_cache)</li>
+ * <li>cache_memory_rows: number of result rows the cache keeps in memory</li>
+ * <li>cache_disk_mb: megabytes of responses the cache keeps on disk (defaults to 1024)</li>
+ * <li>cache_ttl_&lt;type&gt;: days a cached response stays fresh, per query type (see CachingSparqlEndpoint)</li>
+ * </ul>
+ */
+public class SparqlEndpointFactory {
+
+	public static final String DEFAULT_ENDPOINT_URL = "http://dbpedia.org/sparql";
+
+	/**
+	 * Endpoints already built, keyed by their settings.
+	 */
+	private static Map<String, SparqlEndpoint> endpoints = new TreeMap<String, SparqlEndpoint>();
+
+	/**
+	 * @return The public DBpedia endpoint, with the default settings.
+	 */
+	public static SparqlEndpoint getDefault(){
+
+		return getEndpoint(new TreeMap<String, String>());
+
+	}
+
+	/**
+	 * Build the endpoint described by the given properties document.
+	 * @param doc The parsed properties XML file.
+	 * @return The endpoint to send queries to.
+	 */
+	public static SparqlEndpoint fromProperties(Document doc){
+
+		Map<String, String> settings = new TreeMap<String, String>();
+		org.w3c.dom.NodeList listOfElements = doc.getDocumentElement().getChildNodes();
+
+		for(int i = 0; i < listOfElements.getLength(); i++){
+
+			Node element = listOfElements.item(i);
+
+			if(element.getNodeType() == Node.ELEMENT_NODE && (element.getNodeName().startsWith("endpoint_") 
+					|| element.getNodeName().startsWith("cache_")))
+				settings.put(element.getNodeName(), element.getTextContent().trim());
+		}
+
+		return getEndpoint(settings);
+
+	}
+
+	/**
+	 * Get the endpoint for the given settings, building it if it has not been used before.
+	 * @param settings Endpoint and cache settings keyed by their tag name.
+	 * @return The endpoint.
+	 */
+	public static synchronized SparqlEndpoint getEndpoint(Map<String, String> settings){
+
+		String key = settings.toString();
+
+		SparqlEndpoint endpoint = endpoints.get(key);
+
+		if(endpoint == null){
+
+			if(getSetting(settings, "endpoint_type", "remote").equalsIgnoreCase("local")){
+				endpoint = new LocalDatasetEndpoint(getSetting(settings, "endpoint_data_file", ""), 
+						getSetting(settings, "endpoint_tdb_directory", ""));
+			} else {
+				endpoint = new RemoteSparqlEndpoint(getSetting(settings, "endpoint_url", DEFAULT_ENDPOINT_URL), 
+						Integer.parseInt(getSetting(settings, "endpoint_max_connections", "32")), 
+						Integer.parseInt(getSetting(settings, "endpoint_timeout_ms", "60000")));
+			}
+
+			long latency = Long.parseLong(getSetting(settings, "endpoint_latency_ms", "0"));
+			long jitter = Long.parseLong(getSetting(settings, "endpoint_jitter_ms", "0"));
+
+			if(latency > 0 || jitter > 0)
+				endpoint = new LatencyInjectingEndpoint(endpoint, latency, jitter);
+
+			int maxConcurrency = Integer.parseInt(getSetting(settings, "endpoint_max_concurrency", "32"));
+
+			endpoint = new ResilientSparqlEndpoint(endpoint, 
+					new AdaptiveConcurrencyLimiter(Math.min(4, maxConcurrency), 1, maxConcurrency), 
+					new CircuitBreaker(Integer.parseInt(getSetting(settings, "endpoint_breaker_failures", "5")), 
+							Long.parseLong(getSetting(settings, "endpoint_breaker_cooldown_ms", "30000"))), 
+					Integer.parseInt(getSetting(settings, "endpoint_max_attempts", "4")), 
+					Long.parseLong(getSetting(settings, "endpoint_backoff_ms", "500")));
+
+			String cacheDirectory = getSetting(settings, "cache_directory", "sparql_cache");
+
+			if(!cacheDirectory.equalsIgnoreCase("none")){
+
+				CachingSparqlEndpoint cache = new CachingSparqlEndpoint(endpoint, cacheDirectory, 
+						Integer.parseInt(getSetting(settings, "cache_memory_rows", "200000")), 
+						Long.parseLong(getSetting(settings, "cache_disk_mb", "1024")) * 1048576);
+
+				for(Map.Entry<String, String> setting : settings.entrySet()){
+					if(setting.getKey().startsWith("cache_ttl_"))
+						cache.setTimeToLive(setting.getKey().substring("cache_ttl_".length()), Double.parseDouble(setting.getValue()));
+				}
+
+				endpoint = cache;
+			}
+
+			System.out.println("Using " + endpoint);
+			endpoints.put(key, endpoint);
+		}
+
+		return endpoint;
+
+	}
+
+	/**
+	 * @param settings Endpoint and cache settings keyed by their tag name.
+	 * @param tag The tag name.
+	 * @param defaultValue Returned if the setting is missing or empty.
+	 * @return The value of the setting.
+	 */
+	private static String getSetting(Map<String, String> settings, String tag, String defaultValue){
+
+		String value = settings.get(tag);
+
+		if(value == null || value.equals(""))
+			return defaultValue;
+
+		return value;
+
+	}
+
+}
@@ -0,0 +1,101 @@
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.jena.riot.web.HttpOp;
+
+/**
+ * Holds the single pooled HTTP client used for all SPARQL traffic. Connections are kept alive and reused
+ * between queries instead of opening a new socket for every query, and are bounded both in total and per
+ * endpoint host. The client is installed as Jena's default so that every remote query execution uses it.
+ */
+public class SparqlHttpClient {
+
+	/**
+	 * Connections idle for longer than this are closed, so that we do not hold on to sockets the endpoint
+	 * has already given up on.
+	 */
+	private static final long IDLE_TIMEOUT_SECONDS = 30;
+
+	private static PoolingClientConnectionManager connectionManager = null;
+
+	private static HttpClient client = null;
+
+	/**
+	 * Create the shared client on first use and install it as the default for Jena's remote query executions.
+	 * Later calls return the existing client and only ever raise its connection limits.
+	 * @param maxConnections Maximum number of open connections in total.
+	 * @param maxConnectionsPerRoute Maximum number of open connections to a single endpoint host.
+	 * @param timeout Connection and socket timeout in milliseconds, zero for none.
+	 * @return The shared client.
+	 */
+	public static synchronized HttpClient getClient(int maxConnections, int maxConnectionsPerRoute, int timeout){
+
+		if(client == null){
+
+			connectionManager = new PoolingClientConnectionManager(SchemeRegistryFactory.createSystemDefault());
+
+			DefaultHttpClient pooledClient = new DefaultHttpClient(connectionManager);
+			HttpParams params = pooledClient.getParams();
+
+			HttpConnectionParams.setConnectionTimeout(params, timeout);
+			HttpConnectionParams.setSoTimeout(params, timeout);
+			HttpConnectionParams.setTcpNoDelay(params, true);
+
+			client = pooledClient;
+			HttpOp.setDefaultHttpClient(client);
+
+			Thread evictor = new Thread(new Runnable() {
+				public void run() {
+					SparqlHttpClient.evictIdleConnections();
+				}
+			}, "sparql-connection-evictor");
+
+			evictor.setDaemon(true);
+			evictor.start();
+		}
+
+		connectionManager.setMaxTotal(Math.max(connectionManager.getMaxTotal(), maxConnections));
+		connectionManager.setDefaultMaxPerRoute(Math.max(connectionManager.getDefaultMaxPerRoute(), maxConnectionsPerRoute));
+
+		return client;
+
+	}
+
+	/**
+	 * Periodically close expired and idle connections of the pool.
+	 */
+	private static void evictIdleConnections(){
+
+		try {
+
+			while(true){
+
+				Thread.sleep(TimeUnit.SECONDS.toMillis(IDLE_TIMEOUT_SECONDS));
+
+				connectionManager.closeExpiredConnections();
+				connectionManager.closeIdleConnections(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+	/**
+	 * @return Leased, available and maximum connections of the pool.
+	 */
+	public static synchronized String getStatistics(){
+
+		if(connectionManager == null)
+			return "No HTTP connections opened.";
+
+		return "HTTP connections: " + connectionManager.getTotalStats();
+
+	}
+
+}
@@ -538,6 +538,25 @@ public class StopWords {
 
 
     public String removeStopWords(String input) {
+        return removeStopWords(input, false);
+    }
+
+    /**
+     * Remove stop words from the text of a search, keeping its operators (OR, NOT and NEAR, in capitals) and
+     * wildcards (* and ?). The words of a phrase in double quotes are joined by underscores into a single keyword.
+     */
+    public String removeStopWordsFromQuery(String input) {
+        Matcher phrases = Pattern.compile("\"([^\"]*)\"").matcher(input);
+        StringBuffer output = new StringBuffer();
+        while (phrases.find()) {
+            String phrase = removeStopWords(phrases.group(1), false).trim().replaceAll(" +", "_");
+            phrases.appendReplacement(output, Matcher.quoteReplacement(" " + phrase + " "));
+        }
+        phrases.appendTail(output);
+        return removeStopWords(output.toString(), true);
+    }
+
+    private String removeStopWords(String input, boolean keepOperators) {
         HashSet<String> stopwords = getStopWords();
         String output = "";
 
@@ -550,7 +569,10 @@ public class StopWords {
         // compare each token from the input
         String[] tokens = input.split(" ");
         for (String token : tokens) {
-            if(!stopwords.contains(token.toLowerCase())) {
+            // Search operators, in capitals, are kept as they are.
+            if(keepOperators && SearchQuery.isOperator(token)) {
+                output += token + " ";
+            } else if(!stopwords.contains(token.toLowerCase())) {
                 // clean trailing punctuation from the token
                 Pattern p = Pattern.compile(".+\\.$");
                 Matcher m = p.matcher(token);
@@ -558,7 +580,8 @@ public class StopWords {
                     token = token.replaceAll("\\W","");
                 }
                 
-                token = token.replaceAll("\\W","");
+                // Wildcards of a search are kept too.
+                token = token.replaceAll(keepOperators ? "[^\\w*?]" : "\\W","");
                 
                 // An addition to output the token to lower case.
                 output += token.toLowerCase() + " ";
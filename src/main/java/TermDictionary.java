@@ -0,0 +1,575 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The word tokens of an index, sorted in UTF-8 byte order and front coded: they are stored in blocks of 16, the
+ * first of a block whole and every other one as the number of leading bytes it shares with the one before it and
+ * the bytes that follow, so that the many word tokens starting alike take little more than their endings. The
+ * dictionary is laid out as
+ * <ol>
+ * <li>the number of word tokens and of blocks</li>
+ * <li>where every block starts, after the table</li>
+ * <li>the blocks, with every length as a variable length integer (7 bits a byte)</li>
+ * </ol>
+ * and read in place, from the mapping of an index file or from a byte array. A word token is found by a binary
+ * search of the first ones of the blocks and a scan of a single block; the word tokens with a prefix, by finding
+ * the first one and reading on from it until one does not start with it.
+ */
+public class TermDictionary {
+
+	private static final int BLOCK_SIZE = 16;
+
+	private final ByteBuffer buffer;
+	private final int termCount;
+	private final int blockCount;
+	private final int blockTable;
+	private final int blocks;
+
+	/**
+	 * @param buffer The bytes holding the dictionary.
+	 * @param offset Where it starts.
+	 */
+	public TermDictionary(ByteBuffer buffer, int offset){
+
+		this.buffer = buffer;
+		this.termCount = buffer.getInt(offset);
+		this.blockCount = buffer.getInt(offset + 4);
+		this.blockTable = offset + 8;
+		this.blocks = this.blockTable + 4 * this.blockCount;
+
+	}
+
+	/**
+	 * @param terms Word tokens, in any order, each once.
+	 * @return A dictionary of them held in memory.
+	 */
+	public static TermDictionary of(Collection<String> terms){
+
+		List<byte[]> sorted = new ArrayList<byte[]>(terms.size());
+
+		for(String term : terms)
+			sorted.add(term.getBytes(StandardCharsets.UTF_8));
+
+		Collections.sort(sorted, new Comparator<byte[]>() {
+			public int compare(byte[] a, byte[] b) {
+				return compareBytes(a, a.length, b);
+			}
+		});
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try {
+			write(sorted, new DataOutputStream(out));
+		} catch (IOException e) {
+			// Not thrown by a stream in memory.
+		}
+
+		return new TermDictionary(ByteBuffer.wrap(out.toByteArray()), 0);
+
+	}
+
+	/**
+	 * Write a dictionary.
+	 * @param terms Word tokens in UTF-8, sorted as unsigned bytes, each once.
+	 * @param out Where to write it.
+	 * @throws IOException If writing fails.
+	 */
+	public static void write(List<byte[]> terms, DataOutputStream out) throws IOException {
+
+		int blockCount = (terms.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+		int[] blockStarts = new int[blockCount];
+
+		for(int i = 0; i < terms.size(); i++){
+
+			byte[] term = terms.get(i);
+			int shared = 0;
+
+			if(i % BLOCK_SIZE == 0){
+				blockStarts[i / BLOCK_SIZE] = blocks.size();
+			} else {
+
+				byte[] previous = terms.get(i - 1);
+
+				while(shared < Math.min(previous.length, term.length) && previous[shared] == term[shared])
+					shared++;
+
+				writeVarInt(blocks, shared);
+			}
+
+			writeVarInt(blocks, term.length - shared);
+			blocks.write(term, shared, term.length - shared);
+		}
+
+		out.writeInt(terms.size());
+		out.writeInt(blockCount);
+
+		for(int start : blockStarts)
+			out.writeInt(start);
+
+		blocks.writeTo(out);
+		out.flush();
+
+	}
+
+	/**
+	 * @return Number of word tokens.
+	 */
+	public int size(){
+		return this.termCount;
+	}
+
+	/**
+	 * @param ordinal The number of a word token in the order of the dictionary, from 0 to size() - 1.
+	 * @return The word token.
+	 */
+	public String getTerm(int ordinal){
+
+		Reader reader = new Reader(ordinal / BLOCK_SIZE);
+
+		while(reader.ordinal < ordinal)
+			reader.next();
+
+		return reader.term();
+
+	}
+
+	/**
+	 * @param term A word token.
+	 * @return Its number in the order of the dictionary, or -1 if it is not in it.
+	 */
+	public int find(String term){
+
+		byte[] key = term.getBytes(StandardCharsets.UTF_8);
+		Reader reader = this.seek(key);
+
+		return reader.ordinal < this.termCount && compareBytes(reader.term, reader.length, key) == 0 ? reader.ordinal : -1;
+
+	}
+
+	/**
+	 * @param prefix The start of word tokens.
+	 * @return The word tokens starting with it, in the order of the dictionary.
+	 */
+	public List<String> findPrefix(String prefix){
+		return this.findTerms(prefix + "*");
+	}
+
+	/**
+	 * Enumerate the word tokens matching a pattern in which * stands for any characters, and ? for a single one.
+	 * Only the word tokens starting with the characters before the first wildcard are read, so a pattern that
+	 * starts with one reads them all.
+	 * @param pattern The pattern.
+	 * @return The word tokens matching it, in the order of the dictionary.
+	 */
+	public List<String> findTerms(String pattern){
+
+		int wildcard = 0;
+
+		while(wildcard < pattern.length() && pattern.charAt(wildcard) != '*' && pattern.charAt(wildcard) != '?')
+			wildcard++;
+
+		byte[] prefix = pattern.substring(0, wildcard).getBytes(StandardCharsets.UTF_8);
+		boolean prefixOnly = wildcard == pattern.length() - 1 && pattern.charAt(wildcard) == '*';
+		List<String> terms = new ArrayList<String>();
+
+		for(Reader reader = this.seek(prefix); reader.ordinal < this.termCount && reader.startsWith(prefix); reader.next()){
+
+			String term = reader.term();
+
+			if(prefixOnly || matches(pattern, term))
+				terms.add(term);
+		}
+
+		return terms;
+
+	}
+
+	/**
+	 * Enumerate the word tokens within a number of edits of a word token, an edit being a byte inserted, deleted,
+	 * replaced, or swapped with the next one. This runs a Levenshtein automaton over the dictionary: the word tokens
+	 * are read in order, keeping a row of edit distances for every byte of the current one, so that the rows of the
+	 * bytes it shares with the word token before it are kept as they are. Once a row has no distance within the
+	 * number of edits, no word token starting with those bytes can match, and the reader seeks to the next bytes that
+	 * the automaton can still accept, passing over every word token in between. Only the word tokens starting with
+	 * the same first bytes as the given one are read, which narrows the search down the most for edits close to its
+	 * start, where the automaton accepts almost any byte.
+	 * @param term A word token.
+	 * @param maxEdits The number of edits.
+	 * @param prefixLength Number of first bytes of the word token the others must start with, edited or not.
+	 * @return The word tokens within that number of edits of it, in the order of the dictionary.
+	 */
+	public List<String> findSimilar(String term, int maxEdits, int prefixLength){
+
+		byte[] key = term.getBytes(StandardCharsets.UTF_8);
+		byte[] prefix = Arrays.copyOf(key, Math.min(prefixLength, key.length));
+		List<String> terms = new ArrayList<String>();
+
+		// A word token longer than the key by more than the edits cannot match.
+		int[][] rows = new int[key.length + maxEdits + 1][key.length + 1];
+
+		// Only the distances of a band around the diagonal can be within the edits; the others stay past them.
+		for(int i = 0; i < rows.length; i++){
+			Arrays.fill(rows[i], maxEdits + 1);
+			rows[i][0] = i;
+		}
+
+		for(int j = 0; j <= key.length; j++)
+			rows[0][j] = j;
+
+		// Number of bytes of the current word token whose rows are up to date.
+		int computed = 0;
+		Reader reader = this.seek(prefix);
+
+		read:
+		while(reader.ordinal < this.termCount && reader.startsWith(prefix)){
+
+			computed = Math.min(computed, reader.shared);
+
+			int length = Math.min(reader.length, rows.length - 1);
+
+			for(int i = computed + 1; i <= length; i++){
+
+				int[] row = rows[i];
+				int[] previous = rows[i - 1];
+				byte b = reader.term[i - 1];
+				int best = maxEdits + 1;
+
+				for(int j = Math.max(1, i - maxEdits); j <= Math.min(key.length, i + maxEdits); j++){
+
+					int distance = Math.min(previous[j - 1] + (key[j - 1] == b ? 0 : 1), Math.min(previous[j], row[j - 1]) + 1);
+
+					if(i > 1 && j > 1 && key[j - 1] == reader.term[i - 2] && key[j - 2] == b)
+						distance = Math.min(distance, rows[i - 2][j - 2] + 1);
+
+					row[j] = distance;
+					best = Math.min(best, distance);
+				}
+
+				if(best > maxEdits && row[0] > maxEdits){
+					reader = this.seekAccepted(reader, i, key, rows, maxEdits);
+					computed = 0;
+					continue read;
+				}
+
+				computed = i;
+			}
+
+			if(reader.length < rows.length){
+
+				if(rows[reader.length][key.length] <= maxEdits)
+					terms.add(reader.term());
+
+				reader.next();
+
+			} else {
+				reader = this.seekAccepted(reader, rows.length, key, rows, maxEdits);
+				computed = 0;
+			}
+		}
+
+		return terms;
+
+	}
+
+	/**
+	 * Seek past the word tokens starting with the first bytes of the given one, which the Levenshtein automaton
+	 * rejects, to the smallest bytes it accepts after them: the same bytes but the last one, followed by the smallest
+	 * larger byte that leaves a distance within the edits, or, if there is none, by backing off a byte.
+	 * @param reader A reader on the rejected word token.
+	 * @param length Number of its first bytes rejected, whose rows but the last are up to date.
+	 * @return A reader on the first word token not smaller than those bytes, or past the last one if there are none.
+	 */
+	private Reader seekAccepted(Reader reader, int length, byte[] key, int[][] rows, int maxEdits){
+
+		byte[] term = reader.term;
+
+		for(int i = length; i > 0; i--){
+
+			int[] previous = rows[i - 1];
+			int lowest = term[i - 1] & 0xFF;
+			int next = 0x100;
+			int best = previous[0];
+
+			for(int j = 0; j <= key.length; j++)
+				best = Math.min(best, previous[j]);
+
+			if(best + 1 <= maxEdits || i <= maxEdits){
+				// Any byte is within the edits, so the next one is.
+				next = lowest + 1;
+			} else {
+
+				// Only a byte matching the key where the distance before it is within the edits, or swapped with the byte before it.
+				for(int j = 1; j <= key.length; j++){
+
+					int candidate = key[j - 1] & 0xFF;
+
+					if(candidate > lowest && candidate < next && previous[j - 1] <= maxEdits)
+						next = candidate;
+
+					candidate = j > 1 ? key[j - 2] & 0xFF : 0x100;
+
+					if(candidate > lowest && candidate < next && i > 1 && key[j - 1] == term[i - 2] && rows[i - 2][j - 2] < maxEdits)
+						next = candidate;
+				}
+			}
+
+			if(next < 0x100){
+
+				byte[] accepted = Arrays.copyOf(term, i);
+				accepted[i - 1] = (byte) next;
+
+				return this.seek(accepted, reader);
+			}
+		}
+
+		return new Reader(this.blockCount);
+
+	}
+
+	/**
+	 * @return A reader on the first word token not smaller than the key, or past the last one if there is none.
+	 */
+	private Reader seek(byte[] key){
+		return this.seek(key, null);
+	}
+
+	/**
+	 * @param from A reader on a word token smaller than the key, to read on from, or null to search all the blocks.
+	 * @return A reader on the first word token not smaller than the key, or past the last one if there is none.
+	 */
+	private Reader seek(byte[] key, Reader from){
+
+		// The last block starting with a word token not larger than the key holds it if any block does.
+		int low = from != null ? from.ordinal / BLOCK_SIZE : 0;
+		int high = this.blockCount - 1;
+		int block = low;
+
+		// Reading on, the key is most often in one of the next few blocks, so their number is doubled until one is past it.
+		if(from != null){
+
+			int step = 1;
+
+			while(low + step <= high && this.compareBlock(low + step, key) <= 0){
+				low += step;
+				step <<= 1;
+			}
+
+			block = low;
+			high = Math.min(high, low + step - 1);
+		}
+
+		while(low <= high){
+
+			int middle = (low + high) >>> 1;
+
+			if(this.compareBlock(middle, key) <= 0){
+				block = middle;
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		Reader reader = from != null && from.ordinal / BLOCK_SIZE == block ? from : new Reader(block);
+
+		while(reader.ordinal < this.termCount && compareBytes(reader.term, reader.length, key) < 0)
+			reader.next();
+
+		return reader;
+
+	}
+
+	/**
+	 * Compare the first word token of a block with the given bytes, as unsigned bytes.
+	 */
+	private int compareBlock(int block, byte[] key){
+
+		int start = this.blocks + this.buffer.getInt(this.blockTable + 4 * block);
+		int length = 0;
+		int shift = 0;
+		byte b;
+
+		do {
+			b = this.buffer.get(start++);
+			length |= (b & 0x7F) << shift;
+			shift += 7;
+		} while(b < 0);
+
+		return this.compare(start, length, key);
+
+	}
+
+	/**
+	 * Compare bytes of the dictionary with the given ones, as unsigned bytes.
+	 */
+	private int compare(int offset, int length, byte[] key){
+
+		int common = Math.min(length, key.length);
+
+		for(int i = 0; i < common; i++){
+
+			int difference = (this.buffer.get(offset + i) & 0xFF) - (key[i] & 0xFF);
+
+			if(difference != 0)
+				return difference;
+		}
+
+		return length - key.length;
+
+	}
+
+	private static int compareBytes(byte[] bytes, int length, byte[] key){
+
+		int common = Math.min(length, key.length);
+
+		for(int i = 0; i < common; i++){
+
+			int difference = (bytes[i] & 0xFF) - (key[i] & 0xFF);
+
+			if(difference != 0)
+				return difference;
+		}
+
+		return length - key.length;
+
+	}
+
+	/**
+	 * @return True if the word token matches the pattern, * standing for any characters and ? for a single one.
+	 */
+	static boolean matches(String pattern, String term){
+
+		int p = 0;
+		int t = 0;
+		int star = -1;
+		int starMatch = 0;
+
+		while(t < term.length()){
+
+			if(p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == term.charAt(t))){
+				p++;
+				t++;
+			} else if(p < pattern.length() && pattern.charAt(p) == '*'){
+				star = p++;
+				starMatch = t;
+			} else if(star >= 0){
+				// The last * takes one more character.
+				p = star + 1;
+				t = ++starMatch;
+			} else {
+				return false;
+			}
+		}
+
+		while(p < pattern.length() && pattern.charAt(p) == '*')
+			p++;
+
+		return p == pattern.length();
+
+	}
+
+	private static void writeVarInt(ByteArrayOutputStream out, int value){
+
+		while((value & ~0x7F) != 0){
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		out.write(value);
+
+	}
+
+	/**
+	 * Reads the word tokens one after the other from the start of a block, each rebuilt from the one before it.
+	 */
+	private class Reader {
+
+		int ordinal;
+		int offset;
+
+		byte[] term = new byte[32];
+		int length = 0;
+
+		// Number of leading bytes the word token shares with the one before it, 0 for the first of a block.
+		int shared = 0;
+
+		Reader(int block){
+
+			this.ordinal = block * BLOCK_SIZE;
+			this.offset = TermDictionary.this.blocks + (block < TermDictionary.this.blockCount ?
+					TermDictionary.this.buffer.getInt(TermDictionary.this.blockTable + 4 * block) : 0);
+
+			if(this.ordinal < TermDictionary.this.termCount)
+				this.read(0);
+
+		}
+
+		void next(){
+
+			if(++this.ordinal < TermDictionary.this.termCount)
+				this.read(this.ordinal % BLOCK_SIZE == 0 ? 0 : this.readVarInt());
+
+		}
+
+		private void read(int shared){
+
+			int suffix = this.readVarInt();
+
+			if(this.term.length < shared + suffix)
+				this.term = Arrays.copyOf(this.term, 2 * (shared + suffix));
+
+			for(int i = 0; i < suffix; i++)
+				this.term[shared + i] = TermDictionary.this.buffer.get(this.offset++);
+
+			this.length = shared + suffix;
+			this.shared = shared;
+
+		}
+
+		private int readVarInt(){
+
+			int value = 0;
+			int shift = 0;
+			byte b;
+
+			do {
+				b = TermDictionary.this.buffer.get(this.offset++);
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0);
+
+			return value;
+
+		}
+
+		boolean startsWith(byte[] prefix){
+
+			if(this.length < prefix.length)
+				return false;
+
+			for(int i = 0; i < prefix.length; i++){
+				if(this.term[i] != prefix[i])
+					return false;
+			}
+
+			return true;
+
+		}
+
+		String term(){
+			return new String(this.term, 0, this.length, StandardCharsets.UTF_8);
+		}
+
+	}
+
+}
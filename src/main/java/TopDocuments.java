@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The best scoring documents found so far for a search query, up to a number of them, kept in a heap with the
+ * worst of them on top. Once it is full, the score of that one is the threshold a document has to beat to be
+ * kept, which the evaluation of a query uses to skip the documents that cannot beat it.
+ */
+public class TopDocuments {
+
+	private final int size;
+
+	private PriorityQueue<Entry> entries = new PriorityQueue<Entry>(11, new Comparator<Entry>() {
+		public int compare(Entry a, Entry b) {
+			return Double.compare(a.score, b.score);
+		}
+	});
+
+	/**
+	 * @param size Number of documents to keep.
+	 */
+	public TopDocuments(int size){
+		this.size = Math.max(1, size);
+	}
+
+	/**
+	 * @return True once the number of documents to keep has been found.
+	 */
+	public boolean isFull(){
+		return this.entries.size() >= this.size;
+	}
+
+	/**
+	 * @return The score a document has to beat to be kept, negative infinity until the heap is full.
+	 */
+	public double getThreshold(){
+		return this.isFull() ? this.entries.peek().score : Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Keep a document if it scores higher than the worst one kept, which is then dropped.
+	 * @param score The score of the document.
+	 * @param source The postings numbering the document.
+	 * @param document The document number.
+	 */
+	public void add(double score, SearchQuery.PostingsSource source, int document){
+
+		if(this.isFull()){
+
+			if(score <= this.entries.peek().score)
+				return;
+
+			this.entries.poll();
+		}
+
+		this.entries.add(new Entry(score, source, document));
+
+	}
+
+	/**
+	 * @return The URIs of the documents kept, highest score first, and in the order of their URIs for equal scores.
+	 */
+	public List<String> getURIs(){
+
+		List<Entry> sorted = new ArrayList<Entry>(this.entries);
+
+		for(Entry entry : sorted)
+			entry.uri = entry.source.getUri(entry.document);
+
+		Collections.sort(sorted, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+
+				int comparison = Double.compare(b.score, a.score);
+
+				return comparison != 0 ? comparison : a.uri.compareTo(b.uri);
+			}
+		});
+
+		List<String> uris = new ArrayList<String>(sorted.size());
+
+		for(Entry entry : sorted)
+			uris.add(entry.uri);
+
+		return uris;
+
+	}
+
+	private static class Entry {
+
+		final double score;
+		final SearchQuery.PostingsSource source;
+		final int document;
+
+		String uri;
+
+		Entry(double score, SearchQuery.PostingsSource source, int document){
+			this.score = score;
+			this.source = source;
+			this.document = document;
+		}
+
+	}
+
+}
@@ -0,0 +1,296 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns resource URIs, giving each one a small integer id. A URI is stored only once, as the UTF-8 bytes
+ * left after stripping a well-known prefix, in one large byte array. This takes a fraction of the memory
+ * needed to keep the same URIs as strings in hash sets, and lets the crawl refer to resources by id. Ids are
+ * given out in order from zero, so a dictionary also serves as the numbering of the documents of an index,
+ * turning an id back into its URI without searching. A URI in angle brackets, as index files keep resource URIs,
+ * is the same resource as the URI without them, and gets the same id.
+ */
+public class UriDictionary {
+
+	/**
+	 * Prefixes stripped from the URIs, once out of their angle brackets, before storing them. The last one
+	 * matches every URI.
+	 */
+	private static final String[] PREFIXES = {"http://dbpedia.org/resource/", "http://dbpedia.org/ontology/", 
+			"http://dbpedia.org/property/", "http://", ""};
+
+	private static final byte[][] PREFIX_BYTES = new byte[PREFIXES.length][];
+
+	static {
+		for(int i = 0; i < PREFIXES.length; i++)
+			PREFIX_BYTES[i] = PREFIXES[i].getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Dictionary shared by all the crawlers of the application.
+	 */
+	private static final UriDictionary shared = new UriDictionary();
+
+	/**
+	 * Stored URIs, one after the other: the index of the stripped prefix followed by the UTF-8 remainder.
+	 */
+	private byte[] data = new byte[1 << 16];
+
+	/**
+	 * Where each URI starts in the data array. The URI with id i ends where URI i + 1 starts.
+	 */
+	private int[] offsets = new int[1024];
+
+	private int size = 0;
+
+	/**
+	 * Buffer a URI given in UTF-8 is encoded into.
+	 */
+	private byte[] scratch = new byte[256];
+
+	/**
+	 * Open addressing hash table of id + 1 (0 marks an empty slot), with linear probing.
+	 */
+	private int[] table = new int[2048];
+
+	/**
+	 * @return The dictionary shared by all the crawlers of the application.
+	 */
+	public static UriDictionary getShared(){
+		return shared;
+	}
+
+	/**
+	 * Get the id of a URI, adding it to the dictionary if needed.
+	 * @param uri The URI, in angle brackets or not.
+	 * @return Its id.
+	 */
+	public synchronized int intern(String uri){
+
+		byte[] encoded = encode(uri);
+
+		return this.intern(encoded, encoded.length);
+
+	}
+
+	/**
+	 * Get the id of a URI encoded in UTF-8, adding it to the dictionary if needed, without decoding it.
+	 * @param utf8 Bytes holding the URI, in angle brackets or not.
+	 * @param start Where the URI starts.
+	 * @param end Where the URI ends.
+	 * @return Its id.
+	 */
+	public synchronized int intern(byte[] utf8, int start, int end){
+
+		if(end - start >= 2 && utf8[start] == '<' && utf8[end - 1] == '>'){
+			start++;
+			end--;
+		}
+
+		int prefix = 0;
+
+		while(!startsWith(utf8, start, end, PREFIX_BYTES[prefix]))
+			prefix++;
+
+		int length = end - start - PREFIX_BYTES[prefix].length + 1;
+
+		if(this.scratch.length < length)
+			this.scratch = new byte[Math.max(length, this.scratch.length * 2)];
+
+		this.scratch[0] = (byte)prefix;
+		System.arraycopy(utf8, start + PREFIX_BYTES[prefix].length, this.scratch, 1, length - 1);
+
+		return this.intern(this.scratch, length);
+
+	}
+
+	private int intern(byte[] encoded, int length){
+
+		int slot = this.findSlot(encoded, length);
+
+		if(this.table[slot] != 0)
+			return this.table[slot] - 1;
+
+		int id = this.size;
+
+		this.append(encoded, length);
+		this.table[slot] = id + 1;
+
+		// Keep the table at most half full.
+		if(this.size * 2 > this.table.length)
+			this.rehash();
+
+		return id;
+
+	}
+
+	/**
+	 * @param uri The URI, in angle brackets or not.
+	 * @return Its id, or -1 if it is not in the dictionary.
+	 */
+	public synchronized int lookup(String uri){
+
+		byte[] encoded = encode(uri);
+		int slot = this.findSlot(encoded, encoded.length);
+
+		return this.table[slot] - 1;
+
+	}
+
+	/**
+	 * @param id An id given by the dictionary.
+	 * @return The URI with that id, without angle brackets.
+	 */
+	public synchronized String get(int id){
+
+		if(id < 0 || id >= this.size)
+			throw new IndexOutOfBoundsException("No URI with id " + id);
+
+		int start = this.offsets[id];
+		int end = this.offsets[id + 1];
+
+		return PREFIXES[this.data[start]] + new String(this.data, start + 1, end - start - 1, StandardCharsets.UTF_8);
+
+	}
+
+	/**
+	 * @param id An id given by the dictionary.
+	 * @return The URI with that id in angle brackets, as index files keep it.
+	 */
+	public String getInBrackets(int id){
+		return "<" + this.get(id) + ">";
+	}
+
+	/**
+	 * @return Number of URIs in the dictionary.
+	 */
+	public synchronized int size(){
+		return this.size;
+	}
+
+	/**
+	 * @return Approximate number of bytes used by the dictionary.
+	 */
+	public synchronized long getMemoryFootprint(){
+		return this.data.length + 4L * (this.offsets.length + this.table.length);
+	}
+
+	/**
+	 * Strip the angle brackets and the longest known prefix, and encode the rest of the URI.
+	 */
+	private static byte[] encode(String uri){
+
+		if(uri.length() >= 2 && uri.charAt(0) == '<' && uri.charAt(uri.length() - 1) == '>')
+			uri = uri.substring(1, uri.length() - 1);
+
+		int prefix = 0;
+
+		while(!uri.startsWith(PREFIXES[prefix]))
+			prefix++;
+
+		byte[] remainder = uri.substring(PREFIXES[prefix].length()).getBytes(StandardCharsets.UTF_8);
+		byte[] encoded = new byte[remainder.length + 1];
+
+		encoded[0] = (byte)prefix;
+		System.arraycopy(remainder, 0, encoded, 1, remainder.length);
+
+		return encoded;
+
+	}
+
+	private static boolean startsWith(byte[] bytes, int start, int end, byte[] prefix){
+
+		if(end - start < prefix.length)
+			return false;
+
+		for(int i = 0; i < prefix.length; i++){
+			if(bytes[start + i] != prefix[i])
+				return false;
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * @return The slot of the table holding the given encoded URI, or the empty slot where it would go.
+	 */
+	private int findSlot(byte[] encoded, int length){
+
+		int mask = this.table.length - 1;
+		int slot = hash(encoded, 0, length) & mask;
+
+		while(this.table[slot] != 0 && !this.matches(this.table[slot] - 1, encoded, length))
+			slot = (slot + 1) & mask;
+
+		return slot;
+
+	}
+
+	private boolean matches(int id, byte[] encoded, int length){
+
+		int start = this.offsets[id];
+
+		if(this.offsets[id + 1] - start != length)
+			return false;
+
+		for(int i = 0; i < length; i++){
+			if(this.data[start + i] != encoded[i])
+				return false;
+		}
+
+		return true;
+
+	}
+
+	private void append(byte[] encoded, int length){
+
+		int start = this.offsets[this.size];
+
+		if(start + length > this.data.length)
+			this.data = Arrays.copyOf(this.data, Math.max(this.data.length * 2, start + length));
+
+		if(this.size + 2 > this.offsets.length)
+			this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+
+		System.arraycopy(encoded, 0, this.data, start, length);
+
+		this.size++;
+		this.offsets[this.size] = start + length;
+
+	}
+
+	private void rehash(){
+
+		this.table = new int[this.table.length * 2];
+		int mask = this.table.length - 1;
+
+		for(int id = 0; id < this.size; id++){
+
+			int start = this.offsets[id];
+			int slot = hash(this.data, start, this.offsets[id + 1] - start) & mask;
+
+			while(this.table[slot] != 0)
+				slot = (slot + 1) & mask;
+
+			this.table[slot] = id + 1;
+		}
+
+	}
+
+	/**
+	 * FNV-1a hash of a range of bytes, with the bits mixed so that the low ones can be used as a table index.
+	 */
+	private static int hash(byte[] bytes, int start, int length){
+
+		int h = 0x811c9dc5;
+
+		for(int i = start; i < start + length; i++){
+			h ^= bytes[i];
+			h *= 0x01000193;
+		}
+
+		return h ^ (h >>> 16);
+
+	}
+
+}
@@ -0,0 +1,245 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Remembers which resources a crawler has already scheduled for a visit. By default resources are interned
+ * in a URI dictionary and marked in a bit set indexed by their id. For very large crawls a Bloom filter
+ * can be used instead: it takes a fixed amount of memory whatever the number of resources, at the cost of
+ * occasionally taking an unvisited resource for a visited one (which only means it is skipped).
+ */
+public class VisitedSet {
+
+	/**
+	 * Dictionary the resources are interned in, when the set is exact.
+	 */
+	private UriDictionary dictionary;
+
+	private BitSet visited;
+
+	/**
+	 * Bits of the Bloom filter, when the set is approximate.
+	 */
+	private long[] bloomBits;
+
+	private long bloomSize;
+
+	private int bloomHashes;
+
+	private int size = 0;
+
+	/**
+	 * Create an exact set backed by the given dictionary.
+	 * @param dictionary The dictionary to intern the resources in.
+	 */
+	public VisitedSet(UriDictionary dictionary){
+
+		this.dictionary = dictionary;
+		this.visited = new BitSet();
+
+	}
+
+	/**
+	 * Create an approximate set backed by a Bloom filter sized for the given number of resources.
+	 * @param expectedResources Number of resources the filter is sized for.
+	 * @param falsePositiveRate Acceptable chance of taking an unvisited resource for a visited one.
+	 */
+	public VisitedSet(long expectedResources, double falsePositiveRate){
+
+		expectedResources = Math.max(1, expectedResources);
+
+		// Optimal number of bits and hash functions of a Bloom filter.
+		this.bloomSize = Math.max(64, (long)Math.ceil(-expectedResources * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+		this.bloomHashes = Math.max(1, (int)Math.round((double)this.bloomSize / expectedResources * Math.log(2)));
+		this.bloomBits = new long[(int)((this.bloomSize + 63) / 64)];
+
+	}
+
+	/**
+	 * Mark a resource as visited.
+	 * @param uri The resource URI.
+	 * @return True if the resource had not been visited before.
+	 */
+	public synchronized boolean add(String uri){
+
+		boolean added;
+
+		if(this.bloomBits == null){
+
+			int id = this.dictionary.intern(uri);
+
+			added = !this.visited.get(id);
+			this.visited.set(id);
+
+		} else {
+
+			added = false;
+			long h = hash64(uri);
+			int h1 = (int)h;
+			int h2 = (int)(h >>> 32);
+
+			// Derive all the hash functions from two (Kirsch and Mitzenmacher).
+			for(int i = 0; i < this.bloomHashes; i++){
+
+				long bit = ((h1 + (long)i * h2) & Long.MAX_VALUE) % this.bloomSize;
+				long mask = 1L << (bit & 63);
+
+				if((this.bloomBits[(int)(bit >>> 6)] & mask) == 0){
+					this.bloomBits[(int)(bit >>> 6)] |= mask;
+					added = true;
+				}
+			}
+		}
+
+		if(added)
+			this.size++;
+
+		return added;
+
+	}
+
+	/**
+	 * @param uri The resource URI.
+	 * @return True if the resource has (probably, for a Bloom filter) been visited.
+	 */
+	public synchronized boolean contains(String uri){
+
+		if(this.bloomBits == null){
+
+			int id = this.dictionary.lookup(uri);
+
+			return id >= 0 && this.visited.get(id);
+		}
+
+		long h = hash64(uri);
+		int h1 = (int)h;
+		int h2 = (int)(h >>> 32);
+
+		for(int i = 0; i < this.bloomHashes; i++){
+
+			long bit = ((h1 + (long)i * h2) & Long.MAX_VALUE) % this.bloomSize;
+
+			if((this.bloomBits[(int)(bit >>> 6)] & (1L << (bit & 63))) == 0)
+				return false;
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * @return Number of resources marked as visited.
+	 */
+	public synchronized int size(){
+		return this.size;
+	}
+
+	/**
+	 * @return The resources marked as visited.
+	 * @throws UnsupportedOperationException If the set is a Bloom filter, which does not keep the resources.
+	 */
+	public synchronized List<String> getURIs(){
+
+		if(this.bloomBits != null)
+			throw new UnsupportedOperationException("A Bloom filter cannot list its resources");
+
+		List<String> uris = new ArrayList<String>(this.size);
+
+		for(int id = this.visited.nextSetBit(0); id >= 0; id = this.visited.nextSetBit(id + 1))
+			uris.add(this.dictionary.get(id));
+
+		return uris;
+
+	}
+
+	/**
+	 * Save the set. Exact sets are saved as the list of their resources, since ids are only valid within
+	 * the dictionary that gave them out, and Bloom filters as their bits.
+	 * @param out The stream to write to.
+	 * @throws IOException If writing fails.
+	 */
+	public synchronized void write(DataOutputStream out) throws IOException {
+
+		out.writeBoolean(this.bloomBits != null);
+		out.writeInt(this.size);
+
+		if(this.bloomBits == null){
+
+			for(String uri : this.getURIs())
+				out.writeUTF(uri);
+
+		} else {
+
+			out.writeLong(this.bloomSize);
+			out.writeInt(this.bloomHashes);
+
+			for(long bits : this.bloomBits)
+				out.writeLong(bits);
+		}
+
+	}
+
+	/**
+	 * Read a set saved with write.
+	 * @param in The stream to read from.
+	 * @param dictionary The dictionary to intern the resources of an exact set in.
+	 * @return The set read.
+	 * @throws IOException If reading fails.
+	 */
+	public static VisitedSet read(DataInputStream in, UriDictionary dictionary) throws IOException {
+
+		boolean bloom = in.readBoolean();
+		int size = in.readInt();
+		VisitedSet set;
+
+		if(!bloom){
+
+			set = new VisitedSet(dictionary);
+
+			for(int i = 0; i < size; i++)
+				set.add(in.readUTF());
+
+		} else {
+
+			set = new VisitedSet(1, 0.5);
+			set.bloomSize = in.readLong();
+			set.bloomHashes = in.readInt();
+			set.bloomBits = new long[(int)((set.bloomSize + 63) / 64)];
+
+			for(int i = 0; i < set.bloomBits.length; i++)
+				set.bloomBits[i] = in.readLong();
+
+			set.size = size;
+		}
+
+		return set;
+
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the UTF-8 bytes of a string, with the bits mixed (MurmurHash3 finaliser).
+	 */
+	private static long hash64(String uri){
+
+		long h = 0xcbf29ce484222325L;
+
+		for(byte b : uri.getBytes(StandardCharsets.UTF_8)){
+			h ^= b;
+			h *= 0x100000001b3L;
+		}
+
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+
+		return h;
+
+	}
+
+}
@@ -0,0 +1,297 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writes index files and reads them back, checking every table of the file against what was written.
+ */
+public class BinaryIndexFileTest {
+
+	private static final int DOCUMENTS = 300;
+	private static final int TERMS = 80;
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		this.directory = Files.createTempDirectory("index").toFile();
+	}
+
+	@After
+	public void deleteDirectory(){
+
+		for(File file : this.directory.listFiles())
+			file.delete();
+
+		this.directory.delete();
+
+	}
+
+	@Test
+	public void readsBackWhatWasWritten() throws IOException {
+
+		for(int seed = 0; seed < 5; seed++){
+
+			Random random = new Random(seed);
+			File file = new File(this.directory, "index" + seed + ".idx");
+
+			// Written in no particular order, so that the file numbers the documents in its own way.
+			List<String> uris = new ArrayList<String>();
+
+			for(int d = 0; d < DOCUMENTS; d++)
+				uris.add("<http://dbpedia.org/resource/Person_" + d + (d % 7 == 0 ? "_\u00e9" : "") + ">");
+
+			Collections.shuffle(uris, random);
+
+			Map<String, int[]> termDocuments = new HashMap<String, int[]>();
+			Map<String, int[][]> termPositions = new HashMap<String, int[][]>();
+			Map<String, Postings> termPostings = new HashMap<String, Postings>();
+
+			for(int t = 0; t < TERMS; t++){
+
+				String term = randomTerm(random, t);
+				BitSet chosen = new BitSet();
+				int count = 1 + random.nextInt(t % 10 == 0 ? DOCUMENTS : 20);
+
+				for(int i = 0; i < count; i++)
+					chosen.set(random.nextInt(DOCUMENTS));
+
+				int[] documents = chosen.stream().toArray();
+				int[][] positions = new int[documents.length][];
+
+				for(int i = 0; i < documents.length; i++){
+
+					positions[i] = new int[1 + random.nextInt(3)];
+
+					for(int p = 0, position = -1; p < positions[i].length; p++)
+						positions[i][p] = position += 1 + random.nextInt(200);
+				}
+
+				termDocuments.put(term, documents);
+				termPositions.put(term, positions);
+				termPostings.put(term, Postings.of(documents, frequencies(positions), positions, documents.length));
+			}
+
+			int[] lengths = new int[DOCUMENTS];
+
+			for(int d = 0; d < DOCUMENTS; d++)
+				lengths[d] = 1 + random.nextInt(500);
+
+			// A facet few documents belong to, written as gaps, and one most belong to, written as a bitmap.
+			Map<String, BinaryIndexFile.Facet> facets = new LinkedHashMap<String, BinaryIndexFile.Facet>();
+			BitSet few = new BitSet();
+			BitSet most = new BitSet();
+
+			for(int d = 0; d < DOCUMENTS; d++){
+
+				if(random.nextInt(30) == 0)
+					few.set(d);
+
+				if(random.nextInt(10) != 0)
+					most.set(d);
+			}
+
+			facets.put("Testland", new BinaryIndexFile.Facet(few, 1234, false));
+			facets.put("C\u00f4te d'Ivoire", new BinaryIndexFile.Facet(most, 5678, true));
+
+			int[] numbers = BinaryIndexFile.write(file, 42, 7, termPostings, uris, lengths, facets);
+			BinaryIndexFile index = new BinaryIndexFile(file);
+
+			assertEquals(42, index.getCreated());
+			assertEquals(7, index.getGeneration());
+			assertEquals(DOCUMENTS, index.getUriCount());
+			assertEquals(TERMS, index.getTermCount());
+
+			long totalLength = 0;
+
+			for(int d = 0; d < DOCUMENTS; d++){
+
+				assertEquals(uris.get(d), index.getUri(numbers[d]));
+				assertEquals(numbers[d], index.findUri(uris.get(d)));
+				assertEquals(lengths[d], index.getDocumentLength(numbers[d]));
+				totalLength += lengths[d];
+			}
+
+			assertEquals(totalLength, index.getTotalLength());
+			assertTrue(index.findUri("<http://dbpedia.org/resource/Nobody>") < 0);
+
+			// The terms are in the order of their UTF-8 bytes.
+			for(int position = 1; position < TERMS; position++)
+				assertTrue(compareUtf8(index.getTerm(position - 1), index.getTerm(position)) < 0);
+
+			for(Map.Entry<String, int[]> term : termDocuments.entrySet()){
+
+				int position = index.findTerm(term.getKey());
+
+				assertTrue(position >= 0);
+				assertEquals(term.getKey(), index.getTerm(position));
+
+				// Numbered as in the file, and sorted again in that order.
+				TreeMap<Integer, int[]> expected = new TreeMap<Integer, int[]>();
+				int[][] positions = termPositions.get(term.getKey());
+
+				for(int i = 0; i < term.getValue().length; i++)
+					expected.put(numbers[term.getValue()[i]], positions[i]);
+
+				int[] documents = new int[expected.size()];
+				int[][] expectedPositions = expected.values().toArray(new int[0][]);
+				int maxFrequency = 0;
+				int minLength = Integer.MAX_VALUE;
+				int i = 0;
+
+				for(Map.Entry<Integer, int[]> document : expected.entrySet()){
+					documents[i++] = document.getKey();
+					maxFrequency = Math.max(maxFrequency, document.getValue().length);
+					minLength = Math.min(minLength, index.getDocumentLength(document.getKey()));
+				}
+
+				Postings postings = index.getPostings(position);
+				Postings positional = index.getPositionalPostings(position);
+
+				assertEquals(documents.length, index.getDocumentFrequency(position));
+				assertEquals(maxFrequency, index.getMaxFrequency(position));
+				assertEquals(minLength, index.getMinLength(position));
+				assertArrayEquals(documents, postings.toArray());
+				assertArrayEquals(frequencies(expectedPositions), postings.toFrequencyArray());
+				assertArrayEquals(documents, positional.toArray());
+				assertArrayEquals(expectedPositions, positional.toPositionArrays());
+				assertArrayEquals(documents, index.getPostings(term.getKey()).toArray());
+			}
+
+			assertEquals(-1, index.findTerm("nowhere"));
+			assertNull(index.getPostings("nowhere"));
+
+			assertEquals(facets.keySet(), index.getFacetNames());
+			assertNull(index.getFacet("Nowhere"));
+
+			for(Map.Entry<String, BinaryIndexFile.Facet> facet : facets.entrySet()){
+
+				BinaryIndexFile.Facet read = index.getFacet(facet.getKey());
+				BitSet expected = new BitSet();
+
+				for(int d = facet.getValue().documents.nextSetBit(0); d >= 0; d = facet.getValue().documents.nextSetBit(d + 1))
+					expected.set(numbers[d]);
+
+				assertEquals(expected, read.documents);
+				assertEquals(facet.getValue().updated, read.updated);
+				assertEquals(facet.getValue().replaces, read.replaces);
+				assertEquals(facet.getValue().replaces, index.replacesFacet(facet.getKey()));
+			}
+		}
+
+	}
+
+	@Test
+	public void readsAnEmptyIndex() throws IOException {
+
+		File file = new File(this.directory, "empty.idx");
+
+		BinaryIndexFile.write(file, 1, new HashMap<String, Postings>(), new ArrayList<String>());
+
+		BinaryIndexFile index = new BinaryIndexFile(file);
+
+		assertEquals(0, index.getTermCount());
+		assertEquals(0, index.getUriCount());
+		assertEquals(-1, index.findTerm("anything"));
+		assertTrue(index.findUri("<http://dbpedia.org/resource/Nobody>") < 0);
+
+	}
+
+	@Test
+	public void rejectsOtherVersions() throws IOException {
+
+		File file = new File(this.directory, "other.idx");
+
+		BinaryIndexFile.write(file, 1, new HashMap<String, Postings>(), new ArrayList<String>());
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+		try {
+			raf.seek(4);
+			raf.writeInt(BinaryIndexFile.VERSION + 1);
+		} finally {
+			raf.close();
+		}
+
+		try {
+			new BinaryIndexFile(file);
+			fail("An index file of another version was read");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("version"));
+		}
+
+	}
+
+	@Test
+	public void rejectsOtherFiles() throws IOException {
+
+		File file = new File(this.directory, "index.tsv");
+
+		Files.write(file.toPath(), "<http://dbpedia.org/resource/Person_1>\tword\n".getBytes("UTF-8"));
+
+		try {
+			new BinaryIndexFile(file);
+			fail("A tab separated file was read as an index file");
+		} catch (IOException e) {
+			// Expected.
+		}
+
+	}
+
+	/**
+	 * @return A word token, sometimes sharing a prefix with others and sometimes not ASCII.
+	 */
+	private static String randomTerm(Random random, int number){
+
+		String[] stems = {"foot", "football", "singer", "sing", "z\u00fcrich", "\u00e9mile", "a"};
+
+		return stems[random.nextInt(stems.length)] + number;
+
+	}
+
+	private static int[] frequencies(int[][] positions){
+
+		int[] frequencies = new int[positions.length];
+
+		for(int i = 0; i < positions.length; i++)
+			frequencies[i] = positions[i].length;
+
+		return frequencies;
+
+	}
+
+	private static int compareUtf8(String a, String b) throws IOException {
+
+		byte[] left = a.getBytes("UTF-8");
+		byte[] right = b.getBytes("UTF-8");
+
+		for(int i = 0; i < Math.min(left.length, right.length); i++){
+			if(left[i] != right[i])
+				return (left[i] & 0xFF) - (right[i] & 0xFF);
+		}
+
+		return left.length - right.length;
+
+	}
+
+}
@@ -0,0 +1,296 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Checks the postings against plain sorted arrays of document numbers, with blocks held both as arrays and as
+ * bitmaps.
+ */
+public class PostingsTest {
+
+	private static final int SEEDS = 20;
+
+	@Test
+	public void keepsDocumentsAndFrequencies(){
+
+		for(int seed = 0; seed < SEEDS; seed++){
+
+			Random random = new Random(seed);
+			int[] documents = randomDocuments(random);
+			int[] frequencies = randomFrequencies(random, documents.length);
+			Postings postings = Postings.of(documents, frequencies, documents.length);
+
+			assertEquals(documents.length, postings.size());
+			assertArrayEquals(documents, postings.toArray());
+			assertArrayEquals(frequencies, postings.toFrequencyArray());
+			assertNull(postings.toPositionArrays());
+
+			for(int i = 0; i < 1000; i++){
+
+				int document = random.nextInt(8 << 16);
+
+				assertEquals(Arrays.binarySearch(documents, document) >= 0, postings.contains(document));
+			}
+		}
+
+	}
+
+	@Test
+	public void takesPartOfTheArrays(){
+
+		int[] documents = {3, 7, 70000, 70001};
+		Postings postings = Postings.of(documents, 2);
+
+		assertArrayEquals(new int[]{3, 7}, postings.toArray());
+		assertArrayEquals(new int[]{1, 1}, postings.toFrequencyArray());
+
+	}
+
+	@Test
+	public void keepsPositions(){
+
+		for(int seed = 0; seed < SEEDS; seed++){
+
+			Random random = new Random(seed);
+			int[] documents = randomDocuments(random);
+			int[][] positions = randomPositions(random, documents.length);
+			Postings postings = Postings.of(documents, frequencies(positions), positions, documents.length);
+
+			assertArrayEquals(documents, postings.toArray());
+			assertArrayEquals(frequencies(positions), postings.toFrequencyArray());
+			assertArrayEquals(positions, postings.toPositionArrays());
+		}
+
+	}
+
+	@Test
+	public void walksThroughTheDocuments(){
+
+		for(int seed = 0; seed < SEEDS; seed++){
+
+			Random random = new Random(seed);
+			int[] documents = randomDocuments(random);
+			int[][] positions = randomPositions(random, documents.length);
+			Postings.Cursor cursor = Postings.of(documents, frequencies(positions), positions, documents.length).cursor();
+
+			assertEquals(-1, cursor.document());
+
+			for(int i = 0; i < documents.length; i++){
+
+				assertEquals(documents[i], cursor.next());
+				assertEquals(positions[i].length, cursor.frequency());
+				assertArrayEquals(positions[i], cursor.positions());
+			}
+
+			assertEquals(Postings.NO_MORE_DOCUMENTS, cursor.next());
+			assertEquals(Postings.NO_MORE_DOCUMENTS, cursor.next());
+		}
+
+	}
+
+	@Test
+	public void skipsAheadLikeABinarySearch(){
+
+		for(int seed = 0; seed < SEEDS; seed++){
+
+			Random random = new Random(seed);
+			int[] documents = randomDocuments(random);
+			int[] frequencies = randomFrequencies(random, documents.length);
+			Postings.Cursor cursor = Postings.of(documents, frequencies, documents.length).cursor();
+			int target = 0;
+
+			while(true){
+
+				int i = firstFrom(documents, target);
+				int found = cursor.advance(target);
+
+				if(i == documents.length){
+					assertEquals(Postings.NO_MORE_DOCUMENTS, found);
+					break;
+				}
+
+				assertEquals(documents[i], found);
+				assertEquals(frequencies[i], cursor.frequency());
+
+				// A target behind the cursor does not move it.
+				assertEquals(found, cursor.advance(target - 1));
+
+				// Small steps within a block, and large ones over whole blocks.
+				target = found + 1 + (random.nextBoolean() ? random.nextInt(64) : random.nextInt(1 << 17));
+			}
+		}
+
+	}
+
+	@Test
+	public void combinesLikeSets(){
+
+		for(int seed = 0; seed < SEEDS; seed++){
+
+			Random random = new Random(seed);
+			int[] left = randomDocuments(random);
+			int[] right = randomDocuments(random);
+			Postings a = Postings.of(left, left.length);
+			Postings b = Postings.of(right, right.length);
+
+			TreeSet<Integer> both = toSet(left);
+			TreeSet<Integer> either = toSet(left);
+			TreeSet<Integer> onlyLeft = toSet(left);
+
+			both.retainAll(toSet(right));
+			either.addAll(toSet(right));
+			onlyLeft.removeAll(toSet(right));
+
+			assertArrayEquals(toArray(both), a.intersect(b).toArray());
+			assertArrayEquals(toArray(either), a.union(b).toArray());
+			assertArrayEquals(toArray(onlyLeft), a.andNot(b).toArray());
+		}
+
+	}
+
+	@Test
+	public void retainsFrequenciesAndPositions(){
+
+		for(int seed = 0; seed < SEEDS; seed++){
+
+			Random random = new Random(seed);
+			int[] documents = randomDocuments(random);
+			int[][] positions = randomPositions(random, documents.length);
+			int[] other = randomDocuments(random);
+			Postings postings = Postings.of(documents, frequencies(positions), positions, documents.length);
+			Postings retained = postings.retain(Postings.of(other, other.length));
+
+			TreeSet<Integer> expected = toSet(documents);
+
+			expected.retainAll(toSet(other));
+
+			int[] expectedDocuments = toArray(expected);
+			int[][] expectedPositions = new int[expectedDocuments.length][];
+
+			for(int i = 0; i < expectedDocuments.length; i++)
+				expectedPositions[i] = positions[Arrays.binarySearch(documents, expectedDocuments[i])];
+
+			assertArrayEquals(expectedDocuments, retained.toArray());
+			assertArrayEquals(frequencies(expectedPositions), retained.toFrequencyArray());
+
+			if(expectedDocuments.length > 0)
+				assertArrayEquals(expectedPositions, retained.toPositionArrays());
+		}
+
+	}
+
+	@Test
+	public void handlesEmptyPostings(){
+
+		Postings empty = Postings.of(new int[0], 0);
+
+		assertEquals(0, empty.size());
+		assertEquals(Postings.NO_MORE_DOCUMENTS, empty.cursor().next());
+		assertEquals(Postings.NO_MORE_DOCUMENTS, Postings.EMPTY.cursor().advance(5));
+		assertEquals(0, Postings.EMPTY.retain(Postings.of(new int[]{1}, 1)).size());
+		assertArrayEquals(new int[]{1}, Postings.EMPTY.union(Postings.of(new int[]{1}, 1)).toArray());
+
+	}
+
+	/**
+	 * @return Sorted document numbers spread over a few blocks, some of them sparse enough to be held as arrays,
+	 * and some dense enough to be held as bitmaps.
+	 */
+	private static int[] randomDocuments(Random random){
+
+		TreeSet<Integer> documents = new TreeSet<Integer>();
+		int[] densities = {1, 40, 4000, 4200, 30000};
+		int blocks = 1 + random.nextInt(4);
+
+		for(int b = 0; b < blocks; b++){
+
+			int key = random.nextInt(8);
+			int count = densities[random.nextInt(densities.length)];
+
+			for(int i = 0; i < count; i++)
+				documents.add(key << 16 | random.nextInt(1 << 16));
+		}
+
+		return toArray(documents);
+
+	}
+
+	private static int[] randomFrequencies(Random random, int length){
+
+		int[] frequencies = new int[length];
+
+		for(int i = 0; i < length; i++)
+			frequencies[i] = random.nextInt(10) == 0 ? 1 + random.nextInt(1000) : 1 + random.nextInt(3);
+
+		return frequencies;
+
+	}
+
+	private static int[][] randomPositions(Random random, int length){
+
+		int[][] positions = new int[length][];
+
+		for(int i = 0; i < length; i++){
+
+			positions[i] = new int[1 + random.nextInt(4)];
+
+			for(int p = 0, position = -1; p < positions[i].length; p++)
+				positions[i][p] = position += 1 + random.nextInt(random.nextBoolean() ? 5 : 500);
+		}
+
+		return positions;
+
+	}
+
+	private static int[] frequencies(int[][] positions){
+
+		int[] frequencies = new int[positions.length];
+
+		for(int i = 0; i < positions.length; i++)
+			frequencies[i] = positions[i].length;
+
+		return frequencies;
+
+	}
+
+	/**
+	 * @return Index of the first document from the target on, or the length of the array if there is none.
+	 */
+	private static int firstFrom(int[] documents, int target){
+
+		int i = Arrays.binarySearch(documents, target);
+
+		return i >= 0 ? i : -i - 1;
+
+	}
+
+	private static TreeSet<Integer> toSet(int[] documents){
+
+		TreeSet<Integer> set = new TreeSet<Integer>();
+
+		for(int document : documents)
+			set.add(document);
+
+		return set;
+
+	}
+
+	private static int[] toArray(TreeSet<Integer> set){
+
+		int[] documents = new int[set.size()];
+		int i = 0;
+
+		for(int document : set)
+			documents[i++] = document;
+
+		return documents;
+
+	}
+
+}